@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.spring.extension.aot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Properties;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.aot.generate.ClassNameGenerator;
+import org.springframework.aot.generate.DefaultGenerationContext;
+import org.springframework.aot.generate.FileSystemGeneratedFiles;
+import org.springframework.aot.generate.GeneratedFiles.Kind;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.aot.ApplicationContextAotGenerator;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.javapoet.ClassName;
+
+/**
+ * Build time generator of bean registrars, run by the spring-aot profile : this class is not part of the plugin jar. Each plugin context file is processed
+ * ahead of time by Spring : the generated initializer registers the same bean definitions programmatically, with constructors and factory methods resolved
+ * at build time. An index mapping each context file name to its initializer, along with the SHA-256 hash of the file, is written to
+ * {@value #PATH_REGISTRARS_INDEX} so that the registrars are picked up by the SpringContextService at startup, as long as the deployed file is unchanged.
+ * <p>
+ * The initializer of a context file is generated in a package derived from the file name (myplugin_context.xml gives fr.paris.lutece.plugins.myplugin.aot),
+ * and the classes Spring generates next to the bean classes are named after the file, so that the registrars of several plugin jars never clash.
+ * <p>
+ * Arguments : the context files directory, the generated sources directory, the generated resources directory and the classes directory.
+ */
+public final class ContextRegistrarGenerator
+{
+    /** Index of the generated registrars, read at runtime by AotContextRegistrars */
+    private static final String PATH_REGISTRARS_INDEX = "META-INF/spring-extension/aot-registrars.properties";
+    private static final String SUFFIX_HASH = ".sha256";
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private static final String SUFFIX_CONTEXT_FILE = "_context.xml";
+    private static final String PACKAGE_PREFIX = "fr.paris.lutece.plugins.";
+    private static final String PACKAGE_SUFFIX = ".aot";
+    private static final String SUFFIX_REGISTRAR = "Context";
+    private static final Logger LOGGER = LogManager.getLogger( ContextRegistrarGenerator.class );
+
+    /** Private constructor */
+    private ContextRegistrarGenerator( )
+    {
+    }
+
+    /**
+     * Generates the registrars
+     * 
+     * @param args
+     *            context files directory, generated sources directory, generated resources directory, classes directory
+     * @throws IOException
+     *             if the generated files cannot be written
+     */
+    public static void main( String [ ] args ) throws IOException
+    {
+        if ( args.length != 4 )
+        {
+            throw new IllegalArgumentException( "Usage : ContextRegistrarGenerator <contextDir> <sourcesDir> <resourcesDir> <classesDir>" );
+        }
+
+        Path pathSources = Paths.get( args [1] );
+        Path pathResources = Paths.get( args [2] );
+        Path pathClasses = Paths.get( args [3] );
+        File [ ] filesContext = new File( args [0] ).listFiles( ( dir, strName ) -> strName.endsWith( SUFFIX_CONTEXT_FILE ) );
+
+        FileSystemGeneratedFiles generatedFiles = new FileSystemGeneratedFiles( kind -> getRoot( kind, pathSources, pathResources, pathClasses ) );
+        Properties registrars = new Properties( );
+
+        if ( filesContext != null )
+        {
+            Arrays.sort( filesContext );
+
+            for ( File fileContext : filesContext )
+            {
+                try
+                {
+                    String strRegistrar = generate( fileContext, generatedFiles );
+                    registrars.setProperty( fileContext.getName( ), strRegistrar );
+                    registrars.setProperty( fileContext.getName( ) + SUFFIX_HASH, hash( fileContext ) );
+                    LOGGER.info( "Bean registrar generated for {} : {}", fileContext.getName( ), strRegistrar );
+                }
+                catch( Exception e )
+                {
+                    // The file will be parsed at runtime
+                    LOGGER.warn( "Unable to generate a bean registrar for {} : {}", fileContext.getName( ), e.getMessage( ), e );
+                }
+            }
+        }
+
+        Path pathIndex = pathClasses.resolve( PATH_REGISTRARS_INDEX );
+        Files.createDirectories( pathIndex.getParent( ) );
+
+        try ( OutputStream out = Files.newOutputStream( pathIndex ) )
+        {
+            registrars.store( out, "Generated by " + ContextRegistrarGenerator.class.getSimpleName( ) );
+        }
+    }
+
+    /**
+     * Processes a context file ahead of time
+     * 
+     * @param fileContext
+     *            the context file
+     * @param generatedFiles
+     *            the generated files
+     * @return the name of the generated initializer class
+     */
+    private static String generate( File fileContext, FileSystemGeneratedFiles generatedFiles )
+    {
+        try ( GenericApplicationContext context = new GenericApplicationContext( ) )
+        {
+            XmlBeanDefinitionReader xmlReader = new XmlBeanDefinitionReader( context );
+            xmlReader.loadBeanDefinitions( new FileSystemResource( fileContext ) );
+
+            String strBaseName = getBaseName( fileContext.getName( ) );
+            ClassName target = ClassName.get( getRegistrarPackage( strBaseName ), getRegistrarName( strBaseName ) );
+            // The feature prefix names the classes generated in the packages of the bean classes after the context file
+            DefaultGenerationContext generationContext = new DefaultGenerationContext( new ClassNameGenerator( target, getRegistrarName( strBaseName ) ),
+                    generatedFiles );
+            ClassName initializer = new ApplicationContextAotGenerator( ).processAheadOfTime( context, generationContext );
+            generationContext.writeGeneratedContent( );
+
+            return initializer.reflectionName( );
+        }
+    }
+
+    /**
+     * Computes the SHA-256 hash of a context file
+     * 
+     * @param fileContext
+     *            the context file
+     * @return the hexadecimal hash
+     * @throws IOException
+     *             if the file cannot be read
+     * @throws NoSuchAlgorithmException
+     *             if SHA-256 is not available
+     */
+    private static String hash( File fileContext ) throws IOException, NoSuchAlgorithmException
+    {
+        MessageDigest digest = MessageDigest.getInstance( HASH_ALGORITHM );
+
+        return HexFormat.of( ).formatHex( digest.digest( Files.readAllBytes( fileContext.toPath( ) ) ) );
+    }
+
+    /**
+     * Gets the base name of a context file. Ex : myplugin-sub_context.xml gives myplugin-sub
+     * 
+     * @param strFileName
+     *            the context file name
+     * @return the base name
+     */
+    private static String getBaseName( String strFileName )
+    {
+        return strFileName.substring( 0, strFileName.length( ) - SUFFIX_CONTEXT_FILE.length( ) );
+    }
+
+    /**
+     * Builds the package of the registrar of a context file. Ex : myplugin-sub gives fr.paris.lutece.plugins.myplugin_sub.aot
+     * 
+     * @param strBaseName
+     *            the base name of the context file
+     * @return the package name
+     */
+    private static String getRegistrarPackage( String strBaseName )
+    {
+        StringBuilder sbPackage = new StringBuilder( PACKAGE_PREFIX );
+
+        if ( !Character.isJavaIdentifierStart( strBaseName.charAt( 0 ) ) )
+        {
+            sbPackage.append( '_' );
+        }
+
+        for ( char c : strBaseName.toLowerCase( ).toCharArray( ) )
+        {
+            sbPackage.append( Character.isJavaIdentifierPart( c ) ? c : '_' );
+        }
+
+        return sbPackage.append( PACKAGE_SUFFIX ).toString( );
+    }
+
+    /**
+     * Builds the simple name of the registrar of a context file. Ex : myplugin-sub gives MypluginSubContext
+     * 
+     * @param strBaseName
+     *            the base name of the context file
+     * @return the registrar simple name
+     */
+    private static String getRegistrarName( String strBaseName )
+    {
+        StringBuilder sbName = new StringBuilder( );
+        boolean bUpper = true;
+
+        for ( char c : strBaseName.toCharArray( ) )
+        {
+            if ( Character.isLetterOrDigit( c ) )
+            {
+                sbName.append( bUpper ? Character.toUpperCase( c ) : c );
+                bUpper = false;
+            }
+            else
+            {
+                bUpper = true;
+            }
+        }
+
+        return sbName.append( SUFFIX_REGISTRAR ).toString( );
+    }
+
+    /**
+     * Gets the output directory of a kind of generated file. Resources (native image hints) are kept out of the packaged classes.
+     * 
+     * @param kind
+     *            the kind of file
+     * @param pathSources
+     *            the sources directory
+     * @param pathResources
+     *            the resources directory
+     * @param pathClasses
+     *            the classes directory
+     * @return the output directory
+     */
+    private static Path getRoot( Kind kind, Path pathSources, Path pathResources, Path pathClasses )
+    {
+        switch( kind )
+        {
+            case SOURCE:
+                return pathSources;
+            case CLASS:
+                return pathClasses;
+            default:
+                return pathResources;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.spring.extension.service;
+
+import java.lang.ref.WeakReference;
+
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import jakarta.enterprise.context.spi.CreationalContext;
+import jakarta.enterprise.inject.spi.BeanManager;
+import jakarta.enterprise.inject.spi.InjectionTarget;
+
+/**
+ * Lifecycle of a Spring bean exposed to CDI. Spring owns the beans : it creates them, runs their initialization callbacks and destroys them. CDI only
+ * injects its own injection points.
+ * <p>
+ * A singleton is injected once per Spring instance : a singleton mapped to a dependent CDI bean is not injected again on each resolution. The dependent
+ * objects injected in a singleton belong to a creational context of the lifecycle, released when the instance is replaced, not to the CDI instance which
+ * triggered the injection. The instances of the other scopes, prototype, request or session, are injected with the creational context of their CDI
+ * instance, released with it. The instances of prototype beans are destroyed by Spring when CDI disposes them, the other instances are destroyed by Spring
+ * with their scope.
+ */
+class SpringBeanLifecycle
+{
+    private final String _strBeanName;
+    private final Class<Object> _clazz;
+    private final InjectionTarget<Object> _injectionTarget;
+    private final boolean _bSingleton;
+    private final boolean _bPrototype;
+    private final BeanManager _beanManager;
+    private volatile WeakReference<Object> _lastInjected = new WeakReference<>( null );
+    private CreationalContext<Object> _injectionContext;
+
+    /**
+     * Constructor
+     * 
+     * @param strBeanName
+     *            the bean name
+     * @param clazz
+     *            the bean class
+     * @param injectionTarget
+     *            the CDI injection target of the bean class, or null if the class has no CDI injection points
+     * @param bSingleton
+     *            true if the bean is a Spring singleton
+     * @param bPrototype
+     *            true if the bean is a Spring prototype
+     * @param beanManager
+     *            the BeanManager of cdi
+     */
+    SpringBeanLifecycle( String strBeanName, Class<Object> clazz, InjectionTarget<Object> injectionTarget, boolean bSingleton, boolean bPrototype,
+            BeanManager beanManager )
+    {
+        _strBeanName = strBeanName;
+        _clazz = clazz;
+        _injectionTarget = injectionTarget;
+        _bSingleton = bSingleton;
+        _bPrototype = bPrototype;
+        _beanManager = beanManager;
+    }
+
+    /**
+     * Gets the Spring instance and injects the CDI injection points : once per instance for a singleton, on each creation for the other scopes
+     * 
+     * @param creationalContext
+     *            the CDI creational context
+     * @return the instance
+     */
+    Object create( CreationalContext<Object> creationalContext )
+    {
+        Object instance = getInstance( );
+
+        if ( _injectionTarget == null )
+        {
+            return instance;
+        }
+
+        if ( !_bSingleton )
+        {
+            _injectionTarget.inject( instance, creationalContext );
+        }
+        else
+            if ( _lastInjected.get( ) != instance )
+            {
+                synchronized( this )
+                {
+                    if ( _lastInjected.get( ) != instance )
+                    {
+                        if ( _injectionContext != null )
+                        {
+                            _injectionContext.release( );
+                        }
+
+                        _injectionContext = _beanManager.createCreationalContext( null );
+                        _injectionTarget.inject( instance, _injectionContext );
+                        _lastInjected = new WeakReference<>( instance );
+                    }
+                }
+            }
+
+        return instance;
+    }
+
+    /**
+     * Releases a CDI instance. Only the instances of prototype beans are destroyed, by Spring.
+     * 
+     * @param instance
+     *            the instance
+     * @param creationalContext
+     *            the CDI creational context
+     */
+    void destroy( Object instance, CreationalContext<Object> creationalContext )
+    {
+        if ( _bPrototype )
+        {
+            destroyInstance( instance );
+        }
+
+        creationalContext.release( );
+    }
+
+    /**
+     * Gets the Spring instance of the bean
+     * 
+     * @return the instance
+     */
+    Object getInstance( )
+    {
+        return SpringContextService.getBean( _strBeanName, _clazz );
+    }
+
+    /**
+     * Destroys a Spring instance of the bean
+     * 
+     * @param instance
+     *            the instance
+     */
+    void destroyInstance( Object instance )
+    {
+        SpringContextService.destroyBean( _strBeanName, instance );
+    }
+}
@@ -34,15 +34,31 @@
 package fr.paris.lutece.plugins.spring.extension.service;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.web.context.support.GenericWebApplicationContext;
 
 import fr.paris.lutece.portal.service.init.LuteceInitException;
+import fr.paris.lutece.portal.service.spring.BeanTypeClosure;
 import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.spring.StartupRecorder;
 import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
 import jakarta.annotation.Priority;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.context.Dependent;
@@ -51,13 +67,20 @@ import jakarta.enterprise.context.Initialized;
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.enterprise.context.SessionScoped;
 import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.inject.Instance;
 import jakarta.enterprise.inject.literal.NamedLiteral;
 import jakarta.enterprise.inject.spi.AfterBeanDiscovery;
 import jakarta.enterprise.inject.spi.AnnotatedType;
 import jakarta.enterprise.inject.spi.BeanManager;
+import jakarta.enterprise.inject.spi.BeforeBeanDiscovery;
 import jakarta.enterprise.inject.spi.Extension;
+import jakarta.enterprise.inject.spi.InjectionPoint;
 import jakarta.enterprise.inject.spi.InjectionTarget;
 import jakarta.enterprise.inject.spi.InjectionTargetFactory;
+import jakarta.enterprise.inject.spi.ProcessInjectionPoint;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Provider;
 import jakarta.inject.Singleton;
 import jakarta.servlet.ServletContext;
 
@@ -68,6 +91,8 @@ import jakarta.servlet.ServletContext;
  */
 public class SpringExtension implements Extension
 {
+    private static final String PROPERTY_INJECTED_ONLY_ENABLED = "spring-extension.cdi.injectedOnly.enabled";
+    private static final String PROPERTY_EXPORTS = "spring-extension.cdi.exports";
 	private static Map<String, Class<? extends Annotation>> scopes = Map.of(
 			"application",ApplicationScoped.class,
 			"session",SessionScoped.class,
@@ -75,8 +100,36 @@ public class SpringExtension implements Extension
 			"singleton",Singleton.class,
 			"prototype",Dependent.class
 			);
+    private final Set<Class<?>> _setRequiredTypes = ConcurrentHashMap.newKeySet( );
+    private final Set<String> _setRequiredNames = ConcurrentHashMap.newKeySet( );
+
     /**
-     * Registration of beans instantiated by the Spring container in the CDI container.
+     * Starts loading the Spring context files in background, so that XML parsing overlaps the CDI type discovery.
+     * 
+     * @param bbd
+     *            BeforeBeanDiscovery event
+     */
+    protected void startSpringContextLoading( @Observes final BeforeBeanDiscovery bbd )
+    {
+        StartupRecorder.start( );
+        SpringContextService.startParentContextLoading( );
+    }
+
+    /**
+     * Collects the types and names required by a CDI injection point, to register only the Spring beans that CDI injects
+     * 
+     * @param pip
+     *            ProcessInjectionPoint event
+     */
+    protected void collectInjectionPoint( @Observes final ProcessInjectionPoint<?, ?> pip )
+    {
+        addRequirement( pip.getInjectionPoint( ) );
+    }
+
+    /**
+     * Registration of beans instantiated by the Spring container in the CDI container. When only the injected beans are registered, a Spring bean is
+     * registered if it is exported, or if its name or one of its types is required by a CDI injection point, including the injection points of the Spring
+     * beans already registered.
      * 
      * @param abd
      *            AfterBeanDiscovery event
@@ -87,42 +140,69 @@ public class SpringExtension implements Extension
      */
     protected void addSpringBeansToCdi( @Observes final AfterBeanDiscovery abd, final BeanManager bm ) throws LuteceInitException
     {
+        long lStart = StartupRecorder.begin( );
         AppLogService.info( "Loading spring context files ..." );
         SpringContextService.initParentContext( );
         GenericWebApplicationContext ctx = (GenericWebApplicationContext) SpringContextService.getParentContext( );
         if ( ctx != null )
         {
-            for ( String id : ctx.getBeanDefinitionNames( ) )
+            boolean bInjectedOnly = AppPropertiesService.getPropertyBoolean( PROPERTY_INJECTED_ONLY_ENABLED, false );
+            Set<String> setExports = new HashSet<>( Arrays.asList( AppPropertiesService.getProperty( PROPERTY_EXPORTS, "" ).trim( ).split( "\\s*,\\s*" ) ) );
+            Map<Class<?>, Boolean> mapInjectionPoints = new HashMap<>( );
+            Map<String, Class<Object>> mapPending = new LinkedHashMap<>( );
+            int nBeans = 0;
+            int nPlainBeans = 0;
+            boolean bRegistered = true;
+
+            for ( String id : SpringContextService.getBeanDefinitionNames( ) )
+            {
+                final Class<Object> clazz = (Class<Object>) SpringContextService.getType( id );
+
+                if ( clazz != null )
+                {
+                    mapPending.put( id, clazz );
+                }
+                else
+                {
+                    AppLogService.error( "The type of the Spring bean {} cannot be determined, the bean is not registered in CDI", id );
+                }
+            }
+
+            // Registering a bean may require other beans through its own injection points : the pending beans are checked again until none is added
+            while ( bRegistered && !mapPending.isEmpty( ) )
             {
+                bRegistered = false;
+
+                for ( Iterator<Map.Entry<String, Class<Object>>> iterator = mapPending.entrySet( ).iterator( ); iterator.hasNext( ); )
+                {
+                    Map.Entry<String, Class<Object>> entry = iterator.next( );
+                    String id = entry.getKey( );
+                    Class<Object> clazz = entry.getValue( );
+                    long lBeanStart = StartupRecorder.begin( );
+
+                    if ( !bInjectedOnly || isRequired( id, clazz, setExports ) )
+                    {
+                        Set<InjectionPoint> injectionPoints = addSpringBean( abd, bm, id, clazz, mapInjectionPoints );
+                        injectionPoints.forEach( this::addRequirement );
+                        iterator.remove( );
+                        bRegistered = true;
+                        nBeans++;
+                        nPlainBeans += injectionPoints.isEmpty( ) ? 1 : 0;
+                        StartupRecorder.recordCdiRegistration( id, lBeanStart );
+                    }
+                }
+            }
 
-                final Class<Object> clazz = (Class<Object>) ctx.getType( id );
-                final AnnotatedType<Object> at = bm.createAnnotatedType( clazz );
-                final InjectionTargetFactory<Object> injectionTargetFactory = bm.getInjectionTargetFactory( at );
-                // final InjectionTarget<Object> injectionTarget= bm.createInjectionTarget(at);
-                final InjectionTarget<Object> injectionTarget = injectionTargetFactory.createInjectionTarget( null );
-	                // abd.addBean(new SpringBean<Object>(ctx, clazz, id, injectionTarget.configure()..createInjectionTarget(null)));
-                Class<? extends Annotation> scope= scopes.get(ctx.getBeanDefinition(id).getScope());
-                abd.addBean( )
-                		.beanClass( clazz )
-                		.name( id )
-                		.addInjectionPoints( injectionTarget.getInjectionPoints( ) )
-                		.addTypes( getAllSuperclasses( clazz ) )
-                        .addQualifier( NamedLiteral.of( id ) )
-                        .scope( scope!=null?scope:Dependent.class )
-                        .createWith( tCreationalContext -> {
-                            // Object instance = injectionTarget.produce(tCreationalContext);
-                            Object instance = SpringContextService.getBean( id, clazz );
-                            injectionTarget.inject( instance, tCreationalContext );
-                            injectionTarget.postConstruct( instance );
-                            return instance;
-                        } ).destroyWith( ( instance, tCreationalContext ) -> {
-                            injectionTarget.preDestroy( instance );
-                            injectionTarget.dispose( instance );
-                            tCreationalContext.release( );
-                        } );
-                // .produceWith(objet -> SpringContextService.getBean(id, clazz));
+            AppLogService.info( "{} Spring beans registered in CDI, {} of them without CDI injection points", nBeans, nPlainBeans );
+
+            if ( !mapPending.isEmpty( ) )
+            {
+                List<String> listPending = new ArrayList<>( mapPending.keySet( ) );
+                Collections.sort( listPending );
+                AppLogService.info( "{} Spring beans not injected by CDI, not registered : {}", listPending.size( ), listPending );
             }
 
+            StartupRecorder.recordPhase( StartupRecorder.PHASE_ADD_SPRING_BEANS_TO_CDI, lStart );
         }
         else
         {
@@ -130,6 +210,144 @@ public class SpringExtension implements Extension
         }
     }
 
+    /**
+     * Registers a Spring bean in the CDI container
+     * 
+     * @param abd
+     *            AfterBeanDiscovery event
+     * @param bm
+     *            the BeanManager of cdi
+     * @param id
+     *            the bean name
+     * @param clazz
+     *            the bean class
+     * @param mapInjectionPoints
+     *            the classes already checked for CDI injection points
+     * @return the CDI injection points of the bean
+     */
+    private Set<InjectionPoint> addSpringBean( AfterBeanDiscovery abd, BeanManager bm, String id, Class<Object> clazz,
+            Map<Class<?>, Boolean> mapInjectionPoints )
+    {
+        InjectionTarget<Object> injectionTarget = null;
+        Set<InjectionPoint> injectionPoints = Collections.emptySet( );
+
+        // The Weld metadata of the class is only built if CDI has something to inject in the Spring instances
+        if ( mapInjectionPoints.computeIfAbsent( clazz, SpringExtension::hasInjectionPoints ) )
+        {
+            final AnnotatedType<Object> at = bm.createAnnotatedType( clazz );
+            final InjectionTargetFactory<Object> injectionTargetFactory = bm.getInjectionTargetFactory( at );
+            // final InjectionTarget<Object> injectionTarget= bm.createInjectionTarget(at);
+            injectionTarget = injectionTargetFactory.createInjectionTarget( null );
+            injectionPoints = injectionTarget.getInjectionPoints( );
+        }
+	        // abd.addBean(new SpringBean<Object>(ctx, clazz, id, injectionTarget.configure()..createInjectionTarget(null)));
+        BeanDefinition beanDefinition = SpringContextService.getBeanDefinition( id );
+        Class<? extends Annotation> scope= scopes.get(beanDefinition.getScope());
+        final SpringBeanLifecycle lifecycle = new SpringBeanLifecycle( id, clazz, injectionTarget, beanDefinition.isSingleton( ), beanDefinition.isPrototype( ),
+                bm );
+        abd.addBean( )
+        		.beanClass( clazz )
+        		.name( id )
+        		.addInjectionPoints( injectionPoints )
+        		.addTypes( BeanTypeClosure.getTypes( clazz ) )
+                .addQualifier( NamedLiteral.of( id ) )
+                .scope( scope!=null?scope:Dependent.class )
+                .createWith( lifecycle::create ).destroyWith( lifecycle::destroy );
+        // .produceWith(objet -> SpringContextService.getBean(id, clazz));
+
+        return injectionPoints;
+    }
+
+    /**
+     * Indicates if a Spring bean must be registered in the CDI container : it is exported, by name or by type, or it satisfies a CDI injection point
+     * 
+     * @param id
+     *            the bean name
+     * @param clazz
+     *            the bean class
+     * @param setExports
+     *            the exported bean names and class names
+     * @return true if the bean must be registered
+     */
+    private boolean isRequired( String id, Class<?> clazz, Set<String> setExports )
+    {
+        if ( setExports.contains( id ) || _setRequiredNames.contains( id ) )
+        {
+            return true;
+        }
+
+        for ( Class<?> type : BeanTypeClosure.getClasses( clazz ) )
+        {
+            if ( _setRequiredTypes.contains( type ) || setExports.contains( type.getName( ) ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds the type and the name required by an injection point
+     * 
+     * @param injectionPoint
+     *            the injection point
+     */
+    private void addRequirement( InjectionPoint injectionPoint )
+    {
+        addRequiredType( injectionPoint.getType( ) );
+
+        for ( Annotation qualifier : injectionPoint.getQualifiers( ) )
+        {
+            if ( qualifier instanceof Named )
+            {
+                String strName = ( (Named) qualifier ).value( );
+
+                // A field annotated with @Named without value requires the name of the field
+                if ( strName.isEmpty( ) && injectionPoint.getMember( ) instanceof Field )
+                {
+                    strName = injectionPoint.getMember( ).getName( );
+                }
+
+                _setRequiredNames.add( strName );
+            }
+        }
+    }
+
+    /**
+     * Adds a required type. The type of an {@link Instance} or a {@link Provider} is the type it provides. {@link Object} is left out : an injection point
+     * of this type selects the bean by name.
+     * 
+     * @param type
+     *            the type of an injection point
+     */
+    private void addRequiredType( Type type )
+    {
+        if ( type instanceof WildcardType )
+        {
+            addRequiredType( ( (WildcardType) type ).getUpperBounds( ) [0] );
+        }
+        else
+            if ( type instanceof ParameterizedType )
+            {
+                ParameterizedType parameterizedType = (ParameterizedType) type;
+
+                if ( parameterizedType.getRawType( ) == Instance.class || parameterizedType.getRawType( ) == Provider.class )
+                {
+                    addRequiredType( parameterizedType.getActualTypeArguments( ) [0] );
+                }
+                else
+                {
+                    addRequiredType( parameterizedType.getRawType( ) );
+                }
+            }
+            else
+                if ( type instanceof Class && type != Object.class )
+                {
+                    _setRequiredTypes.add( (Class<?>) type );
+                }
+    }
+
     /**
      * Initialization of the Spring container.
      * 
@@ -153,33 +371,42 @@ public class SpringExtension implements Extension
     }
 
     /**
-     * Get a list type of the bean
+     * Indicates if CDI has something to inject in the instances of a class : a field or a method annotated with {@link Inject}, declared by the class or by
+     * a superclass. The lifecycle callbacks are left to Spring, so they do not need CDI metadata.
      * 
      * @param clazz
      *            the class of bean
-     * @return the list of beans type
+     * @return true if the class has CDI injection points, or if its members cannot be read
      */
-    private Set<Type> getAllSuperclasses( Class<?> clazz )
+    private static boolean hasInjectionPoints( Class<?> clazz )
     {
-        if ( clazz == null )
+        try
         {
-            return null;
-        }
-        Set<Type> classes = new HashSet<>( );
-        classes.add( clazz );
-        Class<?> superclass = clazz.getSuperclass( );
-        java.lang.reflect.AnnotatedType [ ] annotatedType = clazz.getAnnotatedInterfaces( );
+            for ( Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass( ) )
+            {
+                for ( Field field : current.getDeclaredFields( ) )
+                {
+                    if ( field.isAnnotationPresent( Inject.class ) )
+                    {
+                        return true;
+                    }
+                }
 
-        for ( java.lang.reflect.AnnotatedType type : annotatedType )
-        {
-            classes.add( type.getType( ) );
+                for ( Method method : current.getDeclaredMethods( ) )
+                {
+                    if ( method.isAnnotationPresent( Inject.class ) )
+                    {
+                        return true;
+                    }
+                }
+            }
+
+            return false;
         }
-        while ( superclass != null && superclass != Object.class )
+        catch( LinkageError e )
         {
-            classes.add( superclass );
-            superclass = superclass.getSuperclass( );
+            // Let Weld report the class if it cannot be introspected
+            return true;
         }
-        return classes;
     }
-
 }
@@ -41,6 +41,7 @@ import fr.paris.lutece.util.sql.TransactionManager;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 
 import java.io.PrintWriter;
@@ -56,7 +57,7 @@ import javax.sql.DataSource;
  * allow to use transaction in a given plugin, but does not influence other plugins. To create transactions throw multiple plugins, use
  * {@link LuteceTransactionManager}
  */
-public class DAOUtilTransactionManager extends DataSourceTransactionManager implements PluginEventListener
+public class DAOUtilTransactionManager extends DataSourceTransactionManager implements PluginEventListener, DisposableBean
 {
     private static final long serialVersionUID = -654531540978261621L;
     private transient Logger _logger = LogManager.getLogger( "lutece.debug.sql.tx" );
@@ -82,7 +83,7 @@ public class DAOUtilTransactionManager extends DataSourceTransactionManager impl
     }
 
     /**
-     * Sets the plugin name
+     * Sets the plugin name. The listener is registered again to only receive the events of this plugin.
      * 
      * @param strPluginName
      *            the plugin name
@@ -90,6 +91,17 @@ public class DAOUtilTransactionManager extends DataSourceTransactionManager impl
     public void setPluginName( String strPluginName )
     {
         _strPluginName = strPluginName;
+        LegacyPluginEventObserver.registerPluginEventListener( this, strPluginName, PluginEvent.PLUGIN_INSTALLED, PluginEvent.PLUGIN_UNINSTALLED,
+                PluginEvent.PLUGIN_POOL_CHANGED );
+    }
+
+    /**
+     * Unregisters the listener from {@link LegacyPluginEventObserver} when the context is closed.
+     */
+    @Override
+    public void destroy( )
+    {
+        LegacyPluginEventObserver.unregisterPluginEventListener( this );
     }
 
     /**
@@ -33,19 +33,40 @@
  */
 package fr.paris.lutece.portal.service.plugin;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Observes;
 
 /**
- * This class provides backward compatibility for plugin event listeners
+ * This class provides backward compatibility for plugin event listeners.
+ * <p>
+ * Listeners are weakly referenced : a listener which is no longer used elsewhere (a prototype transaction manager, a bean of a reloaded context) is
+ * dropped from the registry when it is garbage collected. A listener is registered only once : registering it again replaces its filter. The registry is
+ * copied on write, so that events are dispatched on a snapshot without locking.
+ * <p>
+ * A listener may filter the events on a plugin name and on event types. Listeners are indexed by plugin name, so that an event only reaches the listeners of
+ * its plugin and the listeners of all the plugins, in that order.
+ * <p>
+ * When the asynchronous dispatch is enabled, the events are delivered to the {@link BatchPluginEventListener}s by a {@link PluginEventPipeline}, coalesced
+ * by bursts. The other listeners are always called synchronously.
  */
 @ApplicationScoped
 public class LegacyPluginEventObserver
 {
-    private static List<PluginEventListener> _listPluginEventListeners = new ArrayList<>( );
+    private static final String PROPERTY_ASYNC_ENABLED = "spring-extension.pluginEvents.async.enabled";
+    private static final String PROPERTY_ASYNC_WINDOW = "spring-extension.pluginEvents.async.window";
+    private static final String PROPERTY_ASYNC_VIRTUAL_THREADS = "spring-extension.pluginEvents.async.virtualThreads";
+    private static final int ALL_EVENT_TYPES = -1;
+    private static final Object LOCK = new Object( );
+    private static volatile ListenerIndex _index = new ListenerIndex( new ListenerReference [ 0] );
+    private static volatile PluginEventPipeline _pipeline;
+    private static volatile boolean _bPipelineChecked;
 
     /**
      * Creates a new LegacyPluginEventObserver object.
@@ -55,21 +76,381 @@ public class LegacyPluginEventObserver
     }
 
     /**
-     * Register a Plugin Event Listener
+     * Register a Plugin Event Listener receiving the events of all the plugins. The listener is weakly referenced : it must be referenced elsewhere to keep
+     * receiving events. An anonymous listener or a lambda that is not kept by the caller silently stops receiving events once it is garbage collected.
      * 
      * @param listener
      *            The listener
      */
     public static void registerPluginEventListener( PluginEventListener listener )
     {
-        _listPluginEventListeners.add( listener );
+        register( new ListenerReference( listener, null, ALL_EVENT_TYPES ) );
     }
 
+    /**
+     * Register a Plugin Event Listener receiving the events of a plugin. The listener is weakly referenced : it must be referenced elsewhere to keep receiving
+     * events.
+     * 
+     * @param listener
+     *            The listener
+     * @param strPluginName
+     *            The name of the plugin, or null for all the plugins
+     * @param eventTypes
+     *            The event types ({@link PluginEvent#PLUGIN_INSTALLED}, {@link PluginEvent#PLUGIN_UNINSTALLED}, {@link PluginEvent#PLUGIN_POOL_CHANGED}),
+     *            none for all the event types
+     */
+    public static void registerPluginEventListener( PluginEventListener listener, String strPluginName, int... eventTypes )
+    {
+        int nEventTypes = ( eventTypes.length == 0 ) ? ALL_EVENT_TYPES : 0;
+
+        for ( int nEventType : eventTypes )
+        {
+            nEventTypes |= getEventTypeBit( nEventType );
+        }
+
+        register( new ListenerReference( listener, strPluginName, nEventTypes ) );
+    }
+
+    /**
+     * Unregister a Plugin Event Listener
+     * 
+     * @param listener
+     *            The listener
+     */
+    public static void unregisterPluginEventListener( PluginEventListener listener )
+    {
+        synchronized( LOCK )
+        {
+            ListenerReference [ ] listeners = purge( _index._listeners, listener );
+
+            if ( listeners != _index._listeners )
+            {
+                _index = new ListenerIndex( listeners );
+            }
+        }
+    }
+
+    /**
+     * Stops the asynchronous dispatch. The events are delivered synchronously afterwards.
+     */
+    public static void shutdown( )
+    {
+        synchronized( LOCK )
+        {
+            if ( _pipeline != null )
+            {
+                _pipeline.stop( );
+                _pipeline = null;
+            }
+
+            _bPipelineChecked = true;
+        }
+    }
+
+    /**
+     * Gets the number of events waiting to be delivered asynchronously
+     * 
+     * @return the number of events
+     */
+    public static int getQueuedEventCount( )
+    {
+        PluginEventPipeline pipeline = _pipeline;
+
+        return ( pipeline != null ) ? pipeline.getQueueDepth( ) : 0;
+    }
+
+    /**
+     * Gets the number of events delivered asynchronously
+     * 
+     * @return the number of events
+     */
+    public static long getAsyncEventCount( )
+    {
+        PluginEventPipeline pipeline = _pipeline;
+
+        return ( pipeline != null ) ? pipeline.getEventCount( ) : 0;
+    }
+
+    /**
+     * Gets the number of asynchronous deliveries. Each delivery carries a burst of coalesced events.
+     * 
+     * @return the number of deliveries
+     */
+    public static long getAsyncBatchCount( )
+    {
+        PluginEventPipeline pipeline = _pipeline;
+
+        return ( pipeline != null ) ? pipeline.getBatchCount( ) : 0;
+    }
+
+    /**
+     * Gets the average time between the firing of an event and the end of its asynchronous delivery
+     * 
+     * @return the time in milliseconds
+     */
+    public static long getAverageDispatchLatency( )
+    {
+        PluginEventPipeline pipeline = _pipeline;
+
+        return ( pipeline != null ) ? pipeline.getAverageLatency( ) : 0;
+    }
+
+    /**
+     * Gets the maximum time between the firing of an event and the end of its asynchronous delivery
+     * 
+     * @return the time in milliseconds
+     */
+    public static long getMaxDispatchLatency( )
+    {
+        PluginEventPipeline pipeline = _pipeline;
+
+        return ( pipeline != null ) ? pipeline.getMaxLatency( ) : 0;
+    }
+
+    /**
+     * Dispatches a plugin event to the registered listeners
+     * 
+     * @param event
+     *            The event
+     */
     public void observePluginEvent( @Observes PluginEvent event )
     {
-        for ( PluginEventListener listener : _listPluginEventListeners )
+        ListenerIndex index = _index;
+        PluginEventPipeline pipeline = getPipeline( );
+        int nEventTypeBit = getEventTypeBit( event.getEventType( ) );
+        ListenerReference [ ] pluginListeners = ( event.getPlugin( ) != null ) ? index._mapPluginListeners.get( event.getPlugin( ).getName( ) ) : null;
+        boolean bCleared = false;
+
+        if ( pluginListeners != null )
+        {
+            bCleared = dispatch( pluginListeners, event, nEventTypeBit, pipeline );
+        }
+
+        bCleared |= dispatch( index._globalListeners, event, nEventTypeBit, pipeline );
+
+        if ( bCleared )
+        {
+            synchronized( LOCK )
+            {
+                ListenerReference [ ] listeners = purge( _index._listeners, null );
+
+                if ( listeners != _index._listeners )
+                {
+                    _index = new ListenerIndex( listeners );
+                }
+            }
+        }
+    }
+
+    /**
+     * Dispatches an event to the listeners accepting its type
+     * 
+     * @param listeners
+     *            The listeners
+     * @param event
+     *            The event
+     * @param nEventTypeBit
+     *            The bit of the event type
+     * @param pipeline
+     *            The asynchronous dispatch, or null if it is disabled
+     * @return true if a listener has been garbage collected
+     */
+    private static boolean dispatch( ListenerReference [ ] listeners, PluginEvent event, int nEventTypeBit, PluginEventPipeline pipeline )
+    {
+        boolean bCleared = false;
+
+        for ( ListenerReference reference : listeners )
         {
-            listener.processPluginEvent( event );
+            if ( ( reference._nEventTypes & nEventTypeBit ) != 0 )
+            {
+                PluginEventListener listener = reference.get( );
+
+                if ( listener == null )
+                {
+                    bCleared = true;
+                }
+                else
+                    if ( pipeline != null && listener instanceof BatchPluginEventListener )
+                    {
+                        pipeline.enqueue( reference, event );
+                    }
+                    else
+                    {
+                        listener.processPluginEvent( event );
+                    }
+            }
+        }
+
+        return bCleared;
+    }
+
+    /**
+     * Gets the asynchronous dispatch, created on the first event if it is enabled
+     * 
+     * @return the asynchronous dispatch, or null if it is disabled
+     */
+    private static PluginEventPipeline getPipeline( )
+    {
+        PluginEventPipeline pipeline = _pipeline;
+
+        if ( pipeline == null && !_bPipelineChecked )
+        {
+            synchronized( LOCK )
+            {
+                if ( !_bPipelineChecked )
+                {
+                    if ( AppPropertiesService.getPropertyBoolean( PROPERTY_ASYNC_ENABLED, false ) )
+                    {
+                        _pipeline = new PluginEventPipeline( AppPropertiesService.getPropertyInt( PROPERTY_ASYNC_WINDOW, 50 ),
+                                AppPropertiesService.getPropertyBoolean( PROPERTY_ASYNC_VIRTUAL_THREADS, true ) );
+                    }
+
+                    _bPipelineChecked = true;
+                }
+
+                pipeline = _pipeline;
+            }
+        }
+
+        return pipeline;
+    }
+
+    /**
+     * Adds a listener to the registry, or replaces its filter if it is already registered
+     * 
+     * @param newReference
+     *            The reference to the listener, with its filter
+     */
+    private static void register( ListenerReference newReference )
+    {
+        synchronized( LOCK )
+        {
+            // A registered listener keeps its queue in the asynchronous dispatch, so that its events stay ordered
+            for ( ListenerReference reference : _index._listeners )
+            {
+                if ( reference.get( ) == newReference.get( ) )
+                {
+                    newReference._queueKey = reference._queueKey;
+                }
+            }
+
+            ListenerReference [ ] listeners = purge( _index._listeners, newReference.get( ) );
+            listeners = Arrays.copyOf( listeners, listeners.length + 1 );
+            listeners [listeners.length - 1] = newReference;
+            _index = new ListenerIndex( listeners );
+        }
+    }
+
+    /**
+     * Removes the garbage collected listeners and a given listener from an array of listeners
+     * 
+     * @param listeners
+     *            The listeners
+     * @param removed
+     *            The listener to remove, or null
+     * @return the array itself if nothing is removed, a new array otherwise
+     */
+    private static ListenerReference [ ] purge( ListenerReference [ ] listeners, PluginEventListener removed )
+    {
+        ListenerReference [ ] kept = new ListenerReference [ listeners.length];
+        int nKept = 0;
+
+        for ( ListenerReference reference : listeners )
+        {
+            PluginEventListener listener = reference.get( );
+
+            if ( listener != null && listener != removed )
+            {
+                kept [nKept++] = reference;
+            }
+        }
+
+        return ( nKept == listeners.length ) ? listeners : Arrays.copyOf( kept, nKept );
+    }
+
+    /**
+     * Gets the bit of an event type in the filter of a listener
+     * 
+     * @param nEventType
+     *            The event type
+     * @return the bit
+     */
+    private static int getEventTypeBit( int nEventType )
+    {
+        return ( nEventType >= 0 && nEventType < Integer.SIZE - 1 ) ? ( 1 << nEventType ) : ( 1 << ( Integer.SIZE - 1 ) );
+    }
+
+    /**
+     * Weak reference to a listener, with its filter
+     */
+    static final class ListenerReference extends WeakReference<PluginEventListener>
+    {
+        private final String _strPluginName;
+        private final int _nEventTypes;
+        private Object _queueKey = new Object( );
+
+        /**
+         * Constructor
+         * 
+         * @param listener
+         *            The listener
+         * @param strPluginName
+         *            The name of the plugin, or null for all the plugins
+         * @param nEventTypes
+         *            The bits of the event types
+         */
+        ListenerReference( PluginEventListener listener, String strPluginName, int nEventTypes )
+        {
+            super( listener );
+            _strPluginName = strPluginName;
+            _nEventTypes = nEventTypes;
+        }
+
+        /**
+         * Gets the key of the queue of the listener in the asynchronous dispatch. The key is kept when the listener is registered again.
+         * 
+         * @return the key
+         */
+        Object getQueueKey( )
+        {
+            return _queueKey;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the registry : the listeners in registration order, and the same listeners indexed by plugin name
+     */
+    private static final class ListenerIndex
+    {
+        private final ListenerReference [ ] _listeners;
+        private final ListenerReference [ ] _globalListeners;
+        private final Map<String, ListenerReference [ ]> _mapPluginListeners = new HashMap<>( );
+
+        /**
+         * Constructor
+         * 
+         * @param listeners
+         *            The listeners in registration order
+         */
+        ListenerIndex( ListenerReference [ ] listeners )
+        {
+            _listeners = listeners;
+            _globalListeners = Arrays.stream( listeners ).filter( reference -> reference._strPluginName == null ).toArray( ListenerReference [ ]::new );
+
+            for ( ListenerReference reference : listeners )
+            {
+                if ( reference._strPluginName != null )
+                {
+                    _mapPluginListeners.merge( reference._strPluginName, new ListenerReference [ ] {
+                            reference
+                    }, ( previous, added ) -> {
+                        ListenerReference [ ] merged = Arrays.copyOf( previous, previous.length + 1 );
+                        merged [previous.length] = reference;
+
+                        return merged;
+                    } );
+                }
+            }
         }
     }
 }
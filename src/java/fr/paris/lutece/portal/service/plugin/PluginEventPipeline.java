@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.plugin;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Asynchronous dispatch of the plugin events to the {@link BatchPluginEventListener}s. Each listener has its own queue : the first queued event schedules a
+ * delivery after the coalescing window, and the events queued in the meantime are delivered in the same call. A queue is drained by a single task at a time,
+ * so that a listener receives the events, and thus the events of each plugin, in the order they have been fired.
+ * <p>
+ * The queues are keyed by the registrations of the listeners and only hold them weakly, like the registry of the {@link LegacyPluginEventObserver} : the
+ * events pending for a listener which has been garbage collected are dropped.
+ * <p>
+ * Deliveries run on virtual threads when the JVM provides them, on a cached pool of daemon threads otherwise.
+ */
+final class PluginEventPipeline
+{
+    private static final String THREAD_NAME_SCHEDULER = "plugin-event-window";
+    private static final String THREAD_NAME_WORKER = "plugin-event-dispatch";
+    private static final String METHOD_VIRTUAL_THREAD_EXECUTOR = "newVirtualThreadPerTaskExecutor";
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final long _lWindow;
+    private final ScheduledExecutorService _scheduler;
+    private final ExecutorService _workers;
+    private final Map<Object, ListenerQueue> _mapQueues = new IdentityHashMap<>( );
+    private final AtomicInteger _nQueueDepth = new AtomicInteger( );
+    private final LongAdder _events = new LongAdder( );
+    private final LongAdder _batches = new LongAdder( );
+    private final LongAdder _latencyNanos = new LongAdder( );
+    private final AtomicLong _lMaxLatencyNanos = new AtomicLong( );
+
+    /**
+     * Constructor
+     * 
+     * @param lWindow
+     *            The coalescing window in milliseconds
+     * @param bVirtualThreads
+     *            true to deliver the events on virtual threads when they are available
+     */
+    PluginEventPipeline( long lWindow, boolean bVirtualThreads )
+    {
+        _lWindow = lWindow;
+        _scheduler = Executors.newSingleThreadScheduledExecutor( runnable -> newDaemonThread( runnable, THREAD_NAME_SCHEDULER ) );
+        _workers = createWorkers( bVirtualThreads );
+    }
+
+    /**
+     * Queues an event for a listener
+     * 
+     * @param reference
+     *            The weak reference to the listener, a {@link BatchPluginEventListener}
+     * @param event
+     *            The event
+     */
+    void enqueue( LegacyPluginEventObserver.ListenerReference reference, PluginEvent event )
+    {
+        synchronized( _mapQueues )
+        {
+            _mapQueues.computeIfAbsent( reference.getQueueKey( ), key -> new ListenerQueue( key, reference ) ).add( event );
+        }
+    }
+
+    /**
+     * Stops the pipeline. The pending events are dropped.
+     */
+    void stop( )
+    {
+        _scheduler.shutdownNow( );
+        _workers.shutdownNow( );
+
+        if ( _nQueueDepth.get( ) > 0 )
+        {
+            AppLogService.info( "Plugin event dispatch stopped, {} pending events dropped", _nQueueDepth.get( ) );
+        }
+    }
+
+    /**
+     * Gets the number of events waiting to be delivered
+     * 
+     * @return the number of events
+     */
+    int getQueueDepth( )
+    {
+        return _nQueueDepth.get( );
+    }
+
+    /**
+     * Gets the number of events delivered
+     * 
+     * @return the number of events
+     */
+    long getEventCount( )
+    {
+        return _events.sum( );
+    }
+
+    /**
+     * Gets the number of deliveries
+     * 
+     * @return the number of deliveries
+     */
+    long getBatchCount( )
+    {
+        return _batches.sum( );
+    }
+
+    /**
+     * Gets the average time between the firing of an event and the end of its delivery
+     * 
+     * @return the time in milliseconds
+     */
+    long getAverageLatency( )
+    {
+        long lEvents = _events.sum( );
+
+        return ( lEvents == 0 ) ? 0 : _latencyNanos.sum( ) / lEvents / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Gets the maximum time between the firing of an event and the end of its delivery
+     * 
+     * @return the time in milliseconds
+     */
+    long getMaxLatency( )
+    {
+        return _lMaxLatencyNanos.get( ) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Creates the executor delivering the events
+     * 
+     * @param bVirtualThreads
+     *            true to use virtual threads when they are available
+     * @return the executor
+     */
+    private static ExecutorService createWorkers( boolean bVirtualThreads )
+    {
+        if ( bVirtualThreads )
+        {
+            try
+            {
+                // Virtual threads are looked up by reflection, the plugin being built for JVMs that do not provide them
+                Method method = Executors.class.getMethod( METHOD_VIRTUAL_THREAD_EXECUTOR );
+
+                return (ExecutorService) method.invoke( null );
+            }
+            catch( ReflectiveOperationException e )
+            {
+                AppLogService.debug( "Virtual threads are not available, plugin events are delivered on platform threads" );
+            }
+        }
+
+        return Executors.newCachedThreadPool( runnable -> newDaemonThread( runnable, THREAD_NAME_WORKER ) );
+    }
+
+    /**
+     * Creates a daemon thread
+     * 
+     * @param runnable
+     *            The task
+     * @param strName
+     *            The thread name
+     * @return the thread
+     */
+    private static Thread newDaemonThread( Runnable runnable, String strName )
+    {
+        Thread thread = new Thread( runnable, strName );
+        thread.setDaemon( true );
+
+        return thread;
+    }
+
+    /**
+     * Event waiting to be delivered
+     */
+    private static final class PendingEvent
+    {
+        private final PluginEvent _event;
+        private final long _lQueued;
+
+        /**
+         * Constructor
+         * 
+         * @param event
+         *            The event
+         */
+        PendingEvent( PluginEvent event )
+        {
+            _event = event;
+            _lQueued = System.nanoTime( );
+        }
+    }
+
+    /**
+     * Events waiting to be delivered to a listener
+     */
+    private final class ListenerQueue
+    {
+        private final Object _key;
+        private final WeakReference<PluginEventListener> _reference;
+        private List<PendingEvent> _listPending = new ArrayList<>( );
+        private boolean _bScheduled;
+
+        /**
+         * Constructor
+         * 
+         * @param key
+         *            The key of the queue
+         * @param reference
+         *            The weak reference to the listener
+         */
+        ListenerQueue( Object key, WeakReference<PluginEventListener> reference )
+        {
+            _key = key;
+            _reference = reference;
+        }
+
+        /**
+         * Queues an event, and schedules a delivery if none is pending. Called under the lock of the map.
+         * 
+         * @param event
+         *            The event
+         */
+        void add( PluginEvent event )
+        {
+            boolean bSchedule;
+
+            synchronized( this )
+            {
+                _listPending.add( new PendingEvent( event ) );
+                _nQueueDepth.incrementAndGet( );
+                bSchedule = !_bScheduled;
+                _bScheduled = true;
+            }
+
+            if ( bSchedule )
+            {
+                try
+                {
+                    _scheduler.schedule( ( ) -> _workers.execute( this::drain ), _lWindow, TimeUnit.MILLISECONDS );
+                }
+                catch( RejectedExecutionException e )
+                {
+                    AppLogService.debug( "Plugin event dispatch is stopped, event dropped" );
+                }
+            }
+        }
+
+        /**
+         * Delivers the queued events, then delivers the events queued in the meantime or releases the queue
+         */
+        void drain( )
+        {
+            List<PendingEvent> listEvents;
+
+            synchronized( this )
+            {
+                listEvents = _listPending;
+                _listPending = new ArrayList<>( );
+            }
+
+            deliver( listEvents );
+
+            // The queue is released under the lock of the map, so that a listener never has two queues
+            synchronized( _mapQueues )
+            {
+                synchronized( this )
+                {
+                    if ( _listPending.isEmpty( ) )
+                    {
+                        _bScheduled = false;
+                        _mapQueues.remove( _key );
+
+                        return;
+                    }
+                }
+            }
+
+            _workers.execute( this::drain );
+        }
+
+        /**
+         * Delivers events to the listener and records the statistics
+         * 
+         * @param listEvents
+         *            The events
+         */
+        private void deliver( List<PendingEvent> listEvents )
+        {
+            PluginEventListener listener = _reference.get( );
+
+            if ( listener == null )
+            {
+                _nQueueDepth.addAndGet( -listEvents.size( ) );
+                AppLogService.debug( "Plugin event listener garbage collected, {} pending events dropped", listEvents.size( ) );
+
+                return;
+            }
+
+            List<PluginEvent> listPluginEvents = new ArrayList<>( listEvents.size( ) );
+
+            for ( PendingEvent pending : listEvents )
+            {
+                listPluginEvents.add( pending._event );
+            }
+
+            try
+            {
+                ( (BatchPluginEventListener) listener ).processPluginEvents( listPluginEvents );
+            }
+            catch( RuntimeException e )
+            {
+                AppLogService.error( "Error processing plugin events in {} - cause : {}", listener.getClass( ).getName( ), e.getMessage( ), e );
+            }
+
+            long lNow = System.nanoTime( );
+
+            for ( PendingEvent pending : listEvents )
+            {
+                long lLatency = lNow - pending._lQueued;
+                _latencyNanos.add( lLatency );
+                _lMaxLatencyNanos.accumulateAndGet( lLatency, Math::max );
+            }
+
+            _nQueueDepth.addAndGet( -listEvents.size( ) );
+            _events.add( listEvents.size( ) );
+            _batches.increment( );
+            AppLogService.debug( "{} plugin events delivered to {} in {} ms, queue depth : {}", listEvents.size( ), listener.getClass( ).getName( ),
+                    ( lNow - listEvents.get( 0 )._lQueued ) / NANOS_PER_MILLI, _nQueueDepth.get( ) );
+        }
+    }
+}
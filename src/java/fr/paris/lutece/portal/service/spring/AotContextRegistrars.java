@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Properties;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.util.ClassUtils;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Bean registrars generated at build time by the ContextRegistrarGenerator of the spring-aot profile. A context file having a registrar is staged by
+ * running the registrar instead of parsing the XML file. The index records the content hash of each source file : a registrar is only used if the file
+ * being loaded is the one it was generated from, so that a context file modified or overridden after the build is parsed again.
+ */
+final class AotContextRegistrars
+{
+    /** Index of the generated registrars, written by the ContextRegistrarGenerator */
+    private static final String PATH_REGISTRARS_INDEX = "META-INF/spring-extension/aot-registrars.properties";
+    /** Suffix of the index keys holding the SHA-256 hash of the source context files */
+    private static final String SUFFIX_HASH = ".sha256";
+
+    private final Map<String, String> _mapRegistrars;
+    private final Map<String, String> _mapHashes;
+    private final ClassLoader _classLoader;
+
+    /**
+     * Constructor
+     * 
+     * @param mapRegistrars
+     *            the registrars class names by context file name
+     * @param mapHashes
+     *            the hexadecimal hashes of the source context files by file name
+     * @param classLoader
+     *            the class loader of the registrars
+     */
+    private AotContextRegistrars( Map<String, String> mapRegistrars, Map<String, String> mapHashes, ClassLoader classLoader )
+    {
+        _mapRegistrars = mapRegistrars;
+        _mapHashes = mapHashes;
+        _classLoader = classLoader;
+    }
+
+    /**
+     * Loads the registrars indexes found in the class path
+     * 
+     * @param classLoader
+     *            the class loader
+     * @return the registrars
+     */
+    static AotContextRegistrars load( ClassLoader classLoader )
+    {
+        Map<String, String> mapRegistrars = new HashMap<>( );
+        Map<String, String> mapHashes = new HashMap<>( );
+
+        try
+        {
+            Enumeration<URL> indexes = classLoader.getResources( PATH_REGISTRARS_INDEX );
+
+            while ( indexes.hasMoreElements( ) )
+            {
+                URL urlIndex = indexes.nextElement( );
+                Properties registrars = new Properties( );
+
+                try ( InputStream in = urlIndex.openStream( ) )
+                {
+                    registrars.load( in );
+                }
+
+                for ( String strKey : registrars.stringPropertyNames( ) )
+                {
+                    if ( strKey.endsWith( SUFFIX_HASH ) )
+                    {
+                        mapHashes.put( strKey.substring( 0, strKey.length( ) - SUFFIX_HASH.length( ) ), registrars.getProperty( strKey ) );
+                    }
+                    else
+                    {
+                        mapRegistrars.put( strKey, registrars.getProperty( strKey ) );
+                    }
+                }
+            }
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Unable to read the Spring bean registrars indexes - cause : {}", e.getMessage( ), e );
+        }
+
+        return new AotContextRegistrars( mapRegistrars, mapHashes, classLoader );
+    }
+
+    /**
+     * Indicates whether no registrar is available
+     * 
+     * @return true if no registrar is available
+     */
+    boolean isEmpty( )
+    {
+        return _mapRegistrars.isEmpty( );
+    }
+
+    /**
+     * Stages the definitions of a context file by running its registrar, if the file is the one the registrar was generated from
+     * 
+     * @param fileContext
+     *            the context file path
+     * @param hash
+     *            the SHA-256 hash of the context file
+     * @return the staged definitions, or <code>null</code> if the file has no registrar or has changed since the build
+     * @throws ClassNotFoundException
+     *             if the registrar class cannot be found
+     */
+    @SuppressWarnings( "unchecked" )
+    StagingBeanDefinitionRegistry stage( String fileContext, byte [ ] hash ) throws ClassNotFoundException
+    {
+        String strFileName = Paths.get( fileContext ).getFileName( ).toString( );
+        String strRegistrar = _mapRegistrars.get( strFileName );
+
+        if ( strRegistrar == null )
+        {
+            return null;
+        }
+
+        if ( !HexFormat.of( ).formatHex( hash ).equalsIgnoreCase( _mapHashes.getOrDefault( strFileName, "" ) ) )
+        {
+            AppLogService.info( "Context file {} differs from the file its registrar {} was generated from, it is parsed instead", fileContext, strRegistrar );
+
+            return null;
+        }
+
+        ApplicationContextInitializer<GenericApplicationContext> registrar = (ApplicationContextInitializer<GenericApplicationContext>) BeanUtils
+                .instantiateClass( ClassUtils.forName( strRegistrar, _classLoader ) );
+
+        try ( GenericApplicationContext context = new GenericApplicationContext( ) )
+        {
+            registrar.initialize( context );
+
+            DefaultListableBeanFactory beanFactory = context.getDefaultListableBeanFactory( );
+            StagingBeanDefinitionRegistry staging = new StagingBeanDefinitionRegistry( );
+
+            for ( String strBeanName : beanFactory.getBeanDefinitionNames( ) )
+            {
+                staging.registerBeanDefinition( strBeanName, beanFactory.getBeanDefinition( strBeanName ) );
+            }
+
+            for ( String strBeanName : beanFactory.getBeanDefinitionNames( ) )
+            {
+                for ( String strAlias : beanFactory.getAliases( strBeanName ) )
+                {
+                    staging.registerAlias( strBeanName, strAlias );
+                }
+            }
+
+            AppLogService.debug( "Context file {} staged from registrar {}", fileContext, strRegistrar );
+
+            return staging;
+        }
+    }
+}
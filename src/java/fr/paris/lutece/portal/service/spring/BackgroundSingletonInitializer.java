@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Creates in background the singletons whose creation has been deferred by the {@link LazyInitBeanFactoryPostProcessor}. A bean requested before its
+ * background creation is simply created on demand by the bean factory.
+ * <p>
+ * Spring 6.0 creates the singletons while holding the lock of its singleton registry : two singletons are never created at the same time, and a request
+ * thread needing a bean that is not created yet waits for the creation in progress in background, with its dependencies, to complete. The singletons are
+ * therefore created one at a time by a single low priority thread, which bounds this wait to the creation of one bean and leaves the CPU to the request
+ * threads. A singleton already created on demand is skipped.
+ */
+final class BackgroundSingletonInitializer
+{
+    private static final String THREAD_NAME = "spring-singleton-initializer";
+
+    private final ConfigurableListableBeanFactory _beanFactory;
+    private final List<String> _listBeanNames;
+    private ExecutorService _executor;
+
+    /**
+     * Constructor
+     * 
+     * @param beanFactory
+     *            the bean factory
+     * @param listBeanNames
+     *            the names of the singletons to create
+     */
+    BackgroundSingletonInitializer( ConfigurableListableBeanFactory beanFactory, List<String> listBeanNames )
+    {
+        _beanFactory = beanFactory;
+        _listBeanNames = listBeanNames;
+    }
+
+    /**
+     * Starts the creation of the singletons
+     */
+    synchronized void start( )
+    {
+        if ( _executor != null || _listBeanNames.isEmpty( ) )
+        {
+            return;
+        }
+
+        ClassLoader classLoader = Thread.currentThread( ).getContextClassLoader( );
+
+        _executor = Executors.newSingleThreadExecutor( runnable -> {
+            Thread thread = new Thread( runnable, THREAD_NAME );
+            thread.setDaemon( true );
+            thread.setPriority( Thread.MIN_PRIORITY );
+            thread.setContextClassLoader( classLoader );
+
+            return thread;
+        } );
+
+        AppLogService.info( "Starting background creation of {} Spring singletons", _listBeanNames.size( ) );
+        _executor.execute( this::createSingletons );
+        _executor.shutdown( );
+    }
+
+    /**
+     * Stops the creation of the singletons not yet created
+     */
+    synchronized void stop( )
+    {
+        if ( _executor != null )
+        {
+            _executor.shutdownNow( );
+        }
+    }
+
+    /**
+     * Creates the singletons one at a time, until all are created or the initializer is stopped
+     */
+    private void createSingletons( )
+    {
+        long lStart = System.currentTimeMillis( );
+        int nCreated = 0;
+
+        for ( String strBeanName : _listBeanNames )
+        {
+            if ( Thread.currentThread( ).isInterrupted( ) )
+            {
+                AppLogService.info( "Background creation of Spring singletons stopped, {} created", nCreated );
+
+                return;
+            }
+
+            if ( _beanFactory.containsSingleton( strBeanName ) )
+            {
+                continue;
+            }
+
+            try
+            {
+                _beanFactory.getBean( strBeanName );
+                nCreated++;
+            }
+            catch( Exception e )
+            {
+                AppLogService.error( "Unable to create Spring bean {} in background - cause : {}", strBeanName, e.getMessage( ), e );
+            }
+        }
+
+        AppLogService.info( "Background creation of Spring singletons completed in {} ms, {} created, {} already created on demand",
+                System.currentTimeMillis( ) - lStart, nCreated, _listBeanNames.size( ) - nCreated );
+    }
+}
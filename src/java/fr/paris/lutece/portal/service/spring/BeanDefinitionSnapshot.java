@@ -0,0 +1,1168 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.config.ConstructorArgumentValues;
+import org.springframework.beans.factory.config.ConstructorArgumentValues.ValueHolder;
+import org.springframework.beans.factory.config.RuntimeBeanNameReference;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.config.TypedStringValue;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.beans.factory.support.ManagedArray;
+import org.springframework.beans.factory.support.ManagedList;
+import org.springframework.beans.factory.support.ManagedMap;
+import org.springframework.beans.factory.support.ManagedProperties;
+import org.springframework.beans.factory.support.ManagedSet;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.core.SpringVersion;
+import org.springframework.core.env.Environment;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Persistent snapshot of the bean definitions parsed from the context files. Each entry is keyed by the path of a context file and holds the content hash
+ * of the file and its definitions in a compact binary form. The snapshot file is memory-mapped when opened and entries are decoded on demand, so a warm
+ * restart registers the definitions of unchanged files without any XML parsing.
+ * <p>
+ * The header of the snapshot holds the Spring version and the active and default profiles of the environment, since the parser filters the
+ * <code>&lt;beans profile="..."&gt;</code> elements with them : a snapshot written with other profiles is discarded. When the snapshot is saved, only the
+ * entries of the context files loaded since it was opened are kept.
+ * <p>
+ * Only the metadata produced by the XML parser is supported (class names, scopes, constructor arguments, property values, references, inner beans and
+ * managed collections). A file producing any other kind of metadata is never stored and is always parsed. A file importing other resources is never stored
+ * either, since its hash does not cover the imported resources.
+ */
+final class BeanDefinitionSnapshot
+{
+    private static final int MAGIC = 0x4C534453;
+    private static final int FORMAT_VERSION = 2;
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_TYPED_STRING = 2;
+    private static final byte TAG_BEAN_REFERENCE = 3;
+    private static final byte TAG_BEAN_NAME_REFERENCE = 4;
+    private static final byte TAG_BEAN_DEFINITION_HOLDER = 5;
+    private static final byte TAG_LIST = 6;
+    private static final byte TAG_SET = 7;
+    private static final byte TAG_MAP = 8;
+    private static final byte TAG_PROPERTIES = 9;
+    private static final byte TAG_ARRAY = 10;
+
+    private final Path _path;
+    private final String _strProfiles;
+    private final Map<String, Entry> _mapEntries = new ConcurrentHashMap<>( );
+    private final Set<String> _setLoadedFiles = ConcurrentHashMap.newKeySet( );
+    private final AtomicInteger _nHits = new AtomicInteger( );
+    private final AtomicInteger _nMisses = new AtomicInteger( );
+    private volatile boolean _bDirty;
+
+    /**
+     * Constructor
+     * 
+     * @param path
+     *            the snapshot file path
+     * @param strProfiles
+     *            the profiles of the environment the definitions are parsed with
+     */
+    private BeanDefinitionSnapshot( Path path, String strProfiles )
+    {
+        _path = path;
+        _strProfiles = strProfiles;
+    }
+
+    /**
+     * Opens a snapshot file. A missing, corrupted or outdated file results in an empty snapshot.
+     * 
+     * @param path
+     *            the snapshot file path
+     * @param environment
+     *            the environment the context files are parsed with
+     * @return the snapshot
+     */
+    static BeanDefinitionSnapshot open( Path path, Environment environment )
+    {
+        BeanDefinitionSnapshot snapshot = new BeanDefinitionSnapshot( path, getProfiles( environment ) );
+
+        if ( Files.isRegularFile( path ) )
+        {
+            try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) )
+            {
+                ByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size( ) );
+                SnapshotInput input = new SnapshotInput( buffer );
+
+                if ( input.readInt( ) != MAGIC || input.readInt( ) != FORMAT_VERSION || !getSpringVersion( ).equals( input.readString( ) )
+                        || !snapshot._strProfiles.equals( input.readString( ) ) )
+                {
+                    AppLogService.info( "Spring context snapshot {} is outdated and will be rebuilt", path );
+                    snapshot._bDirty = true;
+
+                    return snapshot;
+                }
+
+                int nEntries = input.readInt( );
+
+                for ( int i = 0; i < nEntries; i++ )
+                {
+                    String strFile = input.readString( );
+                    byte [ ] hash = input.readBytes( );
+                    int nLength = input.readInt( );
+                    snapshot._mapEntries.put( strFile, new Entry( hash, input.slice( nLength ) ) );
+                }
+            }
+            catch( Exception e )
+            {
+                AppLogService.error( "Unable to read Spring context snapshot {} - cause : {}", path, e.getMessage( ), e );
+                snapshot._mapEntries.clear( );
+                snapshot._bDirty = true;
+            }
+        }
+        else
+        {
+            snapshot._bDirty = true;
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Computes the content hash of a context file
+     * 
+     * @param strFile
+     *            the context file path
+     * @return the hash
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    static byte [ ] hash( String strFile ) throws IOException
+    {
+        try ( InputStream in = Files.newInputStream( Paths.get( strFile ) ) )
+        {
+            MessageDigest digest = MessageDigest.getInstance( HASH_ALGORITHM );
+            byte [ ] buffer = new byte [ 8192];
+            int nRead;
+
+            while ( ( nRead = in.read( buffer ) ) != -1 )
+            {
+                digest.update( buffer, 0, nRead );
+            }
+
+            return digest.digest( );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Loads the definitions of a context file from the snapshot
+     * 
+     * @param strFile
+     *            the context file path
+     * @param hash
+     *            the current content hash of the file
+     * @return the staged definitions, or <code>null</code> if the snapshot holds no up to date entry for this file
+     */
+    StagingBeanDefinitionRegistry load( String strFile, byte [ ] hash )
+    {
+        _setLoadedFiles.add( strFile );
+
+        Entry entry = _mapEntries.get( strFile );
+
+        if ( entry != null && Arrays.equals( entry._hash, hash ) )
+        {
+            try
+            {
+                StagingBeanDefinitionRegistry staging = decode( new SnapshotInput( entry._payload.duplicate( ) ) );
+                _nHits.incrementAndGet( );
+
+                return staging;
+            }
+            catch( Exception e )
+            {
+                AppLogService.error( "Unable to decode Spring context snapshot entry {} - cause : {}", strFile, e.getMessage( ), e );
+            }
+        }
+
+        _nMisses.incrementAndGet( );
+
+        return null;
+    }
+
+    /**
+     * Stores the definitions of a parsed context file into the snapshot
+     * 
+     * @param strFile
+     *            the context file path
+     * @param hash
+     *            the content hash of the file
+     * @param staging
+     *            the parsed definitions
+     */
+    void store( String strFile, byte [ ] hash, StagingBeanDefinitionRegistry staging )
+    {
+        _setLoadedFiles.add( strFile );
+        _bDirty = true;
+
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream( );
+            DataOutputStream out = new DataOutputStream( bytes );
+            encode( out, staging );
+            out.flush( );
+            _mapEntries.put( strFile, new Entry( hash, ByteBuffer.wrap( bytes.toByteArray( ) ) ) );
+        }
+        catch( UnsupportedDefinitionException e )
+        {
+            AppLogService.debug( "Context file {} cannot be stored in the Spring context snapshot : {}", strFile, e.getMessage( ) );
+            _mapEntries.remove( strFile );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Unable to encode Spring context file {} - cause : {}", strFile, e.getMessage( ), e );
+            _mapEntries.remove( strFile );
+        }
+    }
+
+    /**
+     * Writes the snapshot file if some entries have changed or belong to context files that are no longer loaded. The file is written aside then moved in
+     * place.
+     */
+    void save( )
+    {
+        if ( _mapEntries.keySet( ).retainAll( _setLoadedFiles ) )
+        {
+            _bDirty = true;
+        }
+
+        if ( !_bDirty )
+        {
+            return;
+        }
+
+        try
+        {
+            Files.createDirectories( _path.toAbsolutePath( ).getParent( ) );
+
+            Path pathTemp = _path.resolveSibling( _path.getFileName( ) + ".tmp" );
+            Map<String, Entry> mapSorted = new TreeMap<>( _mapEntries );
+
+            try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( pathTemp ) ) ) )
+            {
+                out.writeInt( MAGIC );
+                out.writeInt( FORMAT_VERSION );
+                writeString( out, getSpringVersion( ) );
+                writeString( out, _strProfiles );
+                out.writeInt( mapSorted.size( ) );
+
+                for ( Map.Entry<String, Entry> entry : mapSorted.entrySet( ) )
+                {
+                    ByteBuffer payload = entry.getValue( )._payload.duplicate( );
+                    byte [ ] bytes = new byte [ payload.remaining( )];
+                    payload.get( bytes );
+
+                    writeString( out, entry.getKey( ) );
+                    writeBytes( out, entry.getValue( )._hash );
+                    out.writeInt( bytes.length );
+                    out.write( bytes );
+                }
+            }
+
+            try
+            {
+                Files.move( pathTemp, _path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            }
+            catch( AtomicMoveNotSupportedException e )
+            {
+                Files.move( pathTemp, _path, StandardCopyOption.REPLACE_EXISTING );
+            }
+
+            _bDirty = false;
+            AppLogService.info( "Spring context snapshot saved : {} ({} file(s))", _path, mapSorted.size( ) );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Unable to write Spring context snapshot {} - cause : {}", _path, e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Gets the number of context files loaded from the snapshot
+     * 
+     * @return the number of hits
+     */
+    int getHits( )
+    {
+        return _nHits.get( );
+    }
+
+    /**
+     * Gets the number of context files that had to be parsed
+     * 
+     * @return the number of misses
+     */
+    int getMisses( )
+    {
+        return _nMisses.get( );
+    }
+
+    /**
+     * Gets the Spring version, which is part of the snapshot header since definitions may differ from one version to another
+     * 
+     * @return the Spring version
+     */
+    private static String getSpringVersion( )
+    {
+        String strVersion = SpringVersion.getVersion( );
+
+        return ( strVersion != null ) ? strVersion : "";
+    }
+
+    /**
+     * Gets the profiles of an environment, which are part of the snapshot header since the parser filters the definitions with them
+     * 
+     * @param environment
+     *            the environment
+     * @return the sorted active profiles and the sorted default profiles
+     */
+    private static String getProfiles( Environment environment )
+    {
+        String [ ] activeProfiles = environment.getActiveProfiles( ).clone( );
+        String [ ] defaultProfiles = environment.getDefaultProfiles( ).clone( );
+        Arrays.sort( activeProfiles );
+        Arrays.sort( defaultProfiles );
+
+        return String.join( ",", activeProfiles ) + ";" + String.join( ",", defaultProfiles );
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------
+    // Encoding
+
+    /**
+     * Encodes staged definitions
+     * 
+     * @param out
+     *            the output
+     * @param staging
+     *            the staged definitions
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws UnsupportedDefinitionException
+     *             if a definition holds metadata that cannot be encoded
+     */
+    private static void encode( DataOutputStream out, StagingBeanDefinitionRegistry staging ) throws IOException, UnsupportedDefinitionException
+    {
+        List<String> listBeanNames = staging.getOrderedBeanNames( );
+        out.writeInt( listBeanNames.size( ) );
+
+        for ( String strBeanName : listBeanNames )
+        {
+            writeString( out, strBeanName );
+            writeDefinition( out, staging.getBeanDefinition( strBeanName ) );
+        }
+
+        List<String [ ]> listAliases = staging.getOrderedAliases( );
+        out.writeInt( listAliases.size( ) );
+
+        for ( String [ ] alias : listAliases )
+        {
+            writeString( out, alias [0] );
+            writeString( out, alias [1] );
+        }
+    }
+
+    /**
+     * Encodes a bean definition
+     * 
+     * @param out
+     *            the output
+     * @param definition
+     *            the bean definition
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws UnsupportedDefinitionException
+     *             if the definition holds metadata that cannot be encoded
+     */
+    private static void writeDefinition( DataOutputStream out, BeanDefinition definition ) throws IOException, UnsupportedDefinitionException
+    {
+        if ( !( definition instanceof AbstractBeanDefinition ) || definition instanceof AnnotatedBeanDefinition )
+        {
+            throw new UnsupportedDefinitionException( definition.getClass( ).getName( ) );
+        }
+
+        AbstractBeanDefinition bd = (AbstractBeanDefinition) definition;
+
+        if ( bd.hasMethodOverrides( ) || !bd.getQualifiers( ).isEmpty( ) || bd.getInstanceSupplier( ) != null || bd.attributeNames( ).length > 0 )
+        {
+            throw new UnsupportedDefinitionException( "bean " + bd.getBeanClassName( ) + " holds programmatic metadata" );
+        }
+
+        if ( bd instanceof RootBeanDefinition
+                && ( ( (RootBeanDefinition) bd ).getDecoratedDefinition( ) != null || ( (RootBeanDefinition) bd ).getQualifiedElement( ) != null ) )
+        {
+            throw new UnsupportedDefinitionException( "bean " + bd.getBeanClassName( ) + " is decorated" );
+        }
+
+        writeString( out, bd.getBeanClassName( ) );
+        writeString( out, bd.getParentName( ) );
+        writeString( out, bd.getScope( ) );
+        out.writeBoolean( bd.isAbstract( ) );
+        out.writeByte( ( bd.getLazyInit( ) == null ) ? -1 : ( bd.getLazyInit( ) ? 1 : 0 ) );
+        out.writeInt( bd.getAutowireMode( ) );
+        out.writeInt( bd.getDependencyCheck( ) );
+        writeStrings( out, bd.getDependsOn( ) );
+        out.writeBoolean( bd.isAutowireCandidate( ) );
+        out.writeBoolean( bd.isPrimary( ) );
+        out.writeBoolean( bd.isNonPublicAccessAllowed( ) );
+        out.writeBoolean( bd.isLenientConstructorResolution( ) );
+        writeString( out, bd.getFactoryBeanName( ) );
+        writeString( out, bd.getFactoryMethodName( ) );
+        writeStrings( out, bd.getInitMethodNames( ) );
+        out.writeBoolean( bd.isEnforceInitMethod( ) );
+        writeStrings( out, bd.getDestroyMethodNames( ) );
+        out.writeBoolean( bd.isEnforceDestroyMethod( ) );
+        out.writeBoolean( bd.isSynthetic( ) );
+        out.writeInt( bd.getRole( ) );
+        writeString( out, bd.getDescription( ) );
+        writeString( out, bd.getResourceDescription( ) );
+
+        ConstructorArgumentValues args = bd.getConstructorArgumentValues( );
+        Map<Integer, ValueHolder> mapIndexedArgs = args.getIndexedArgumentValues( );
+        out.writeInt( mapIndexedArgs.size( ) );
+
+        for ( Map.Entry<Integer, ValueHolder> entry : mapIndexedArgs.entrySet( ) )
+        {
+            out.writeInt( entry.getKey( ) );
+            writeValueHolder( out, entry.getValue( ) );
+        }
+
+        List<ValueHolder> listGenericArgs = args.getGenericArgumentValues( );
+        out.writeInt( listGenericArgs.size( ) );
+
+        for ( ValueHolder holder : listGenericArgs )
+        {
+            writeValueHolder( out, holder );
+        }
+
+        PropertyValue [ ] propertyValues = bd.getPropertyValues( ).getPropertyValues( );
+        out.writeInt( propertyValues.length );
+
+        for ( PropertyValue propertyValue : propertyValues )
+        {
+            writeString( out, propertyValue.getName( ) );
+            writeValue( out, propertyValue.getValue( ) );
+        }
+    }
+
+    /**
+     * Encodes a constructor argument
+     * 
+     * @param out
+     *            the output
+     * @param holder
+     *            the constructor argument
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws UnsupportedDefinitionException
+     *             if the argument value cannot be encoded
+     */
+    private static void writeValueHolder( DataOutputStream out, ValueHolder holder ) throws IOException, UnsupportedDefinitionException
+    {
+        writeValue( out, holder.getValue( ) );
+        writeString( out, holder.getType( ) );
+        writeString( out, holder.getName( ) );
+    }
+
+    /**
+     * Encodes a value of a bean definition, prefixed by the tag of its kind
+     * 
+     * @param out
+     *            the output
+     * @param value
+     *            the value, may be null
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws UnsupportedDefinitionException
+     *             if the kind of value is not supported
+     */
+    private static void writeValue( DataOutputStream out, Object value ) throws IOException, UnsupportedDefinitionException
+    {
+        if ( value == null )
+        {
+            out.writeByte( TAG_NULL );
+
+            return;
+        }
+
+        if ( value instanceof String )
+        {
+            out.writeByte( TAG_STRING );
+            writeString( out, (String) value );
+
+            return;
+        }
+
+        if ( value instanceof TypedStringValue )
+        {
+            TypedStringValue typedValue = (TypedStringValue) value;
+            out.writeByte( TAG_TYPED_STRING );
+            writeString( out, typedValue.getValue( ) );
+            writeString( out, typedValue.getTargetTypeName( ) );
+            writeString( out, typedValue.getSpecifiedTypeName( ) );
+            out.writeBoolean( typedValue.isDynamic( ) );
+
+            return;
+        }
+
+        if ( value instanceof RuntimeBeanReference )
+        {
+            RuntimeBeanReference reference = (RuntimeBeanReference) value;
+            out.writeByte( TAG_BEAN_REFERENCE );
+            writeString( out, reference.getBeanName( ) );
+            out.writeBoolean( reference.isToParent( ) );
+
+            return;
+        }
+
+        if ( value instanceof RuntimeBeanNameReference )
+        {
+            out.writeByte( TAG_BEAN_NAME_REFERENCE );
+            writeString( out, ( (RuntimeBeanNameReference) value ).getBeanName( ) );
+
+            return;
+        }
+
+        if ( value instanceof BeanDefinitionHolder )
+        {
+            BeanDefinitionHolder holder = (BeanDefinitionHolder) value;
+            out.writeByte( TAG_BEAN_DEFINITION_HOLDER );
+            writeString( out, holder.getBeanName( ) );
+            writeStrings( out, holder.getAliases( ) );
+            writeDefinition( out, holder.getBeanDefinition( ) );
+
+            return;
+        }
+
+        // ManagedArray extends ManagedList and must be checked first
+        if ( value instanceof ManagedArray )
+        {
+            ManagedArray array = (ManagedArray) value;
+            out.writeByte( TAG_ARRAY );
+            writeString( out, array.getElementTypeName( ) );
+            out.writeBoolean( array.isMergeEnabled( ) );
+            writeElements( out, array );
+
+            return;
+        }
+
+        if ( value instanceof ManagedList )
+        {
+            ManagedList<?> list = (ManagedList<?>) value;
+            out.writeByte( TAG_LIST );
+            writeString( out, list.getElementTypeName( ) );
+            out.writeBoolean( list.isMergeEnabled( ) );
+            writeElements( out, list );
+
+            return;
+        }
+
+        if ( value instanceof ManagedSet )
+        {
+            ManagedSet<?> set = (ManagedSet<?>) value;
+            out.writeByte( TAG_SET );
+            writeString( out, set.getElementTypeName( ) );
+            out.writeBoolean( set.isMergeEnabled( ) );
+            writeElements( out, set );
+
+            return;
+        }
+
+        if ( value instanceof ManagedMap )
+        {
+            ManagedMap<?, ?> map = (ManagedMap<?, ?>) value;
+            out.writeByte( TAG_MAP );
+            writeString( out, map.getKeyTypeName( ) );
+            writeString( out, map.getValueTypeName( ) );
+            out.writeBoolean( map.isMergeEnabled( ) );
+            writeEntries( out, map );
+
+            return;
+        }
+
+        if ( value instanceof ManagedProperties )
+        {
+            ManagedProperties properties = (ManagedProperties) value;
+            out.writeByte( TAG_PROPERTIES );
+            out.writeBoolean( properties.isMergeEnabled( ) );
+            writeEntries( out, properties );
+
+            return;
+        }
+
+        throw new UnsupportedDefinitionException( "value of type " + value.getClass( ).getName( ) );
+    }
+
+    /**
+     * Encodes the elements of a managed collection
+     * 
+     * @param out
+     *            the output
+     * @param elements
+     *            the elements
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws UnsupportedDefinitionException
+     *             if an element cannot be encoded
+     */
+    private static void writeElements( DataOutputStream out, Collection<?> elements ) throws IOException, UnsupportedDefinitionException
+    {
+        out.writeInt( elements.size( ) );
+
+        for ( Object element : elements )
+        {
+            writeValue( out, element );
+        }
+    }
+
+    /**
+     * Encodes the entries of a managed map or of managed properties
+     * 
+     * @param out
+     *            the output
+     * @param map
+     *            the entries
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws UnsupportedDefinitionException
+     *             if a key or a value cannot be encoded
+     */
+    private static void writeEntries( DataOutputStream out, Map<?, ?> map ) throws IOException, UnsupportedDefinitionException
+    {
+        out.writeInt( map.size( ) );
+
+        for ( Map.Entry<?, ?> entry : map.entrySet( ) )
+        {
+            writeValue( out, entry.getKey( ) );
+            writeValue( out, entry.getValue( ) );
+        }
+    }
+
+    /**
+     * Encodes an array of strings, which may be null
+     * 
+     * @param out
+     *            the output
+     * @param strings
+     *            the strings
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private static void writeStrings( DataOutputStream out, String [ ] strings ) throws IOException
+    {
+        if ( strings == null )
+        {
+            out.writeInt( -1 );
+
+            return;
+        }
+
+        out.writeInt( strings.length );
+
+        for ( String str : strings )
+        {
+            writeString( out, str );
+        }
+    }
+
+    /**
+     * Encodes a string, which may be null, in UTF-8
+     * 
+     * @param out
+     *            the output
+     * @param str
+     *            the string
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private static void writeString( DataOutputStream out, String str ) throws IOException
+    {
+        writeBytes( out, ( str != null ) ? str.getBytes( StandardCharsets.UTF_8 ) : null );
+    }
+
+    /**
+     * Encodes an array of bytes, which may be null, prefixed by its length
+     * 
+     * @param out
+     *            the output
+     * @param bytes
+     *            the bytes
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private static void writeBytes( DataOutputStream out, byte [ ] bytes ) throws IOException
+    {
+        if ( bytes == null )
+        {
+            out.writeInt( -1 );
+
+            return;
+        }
+
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------
+    // Decoding
+
+    /**
+     * Decodes staged definitions
+     * 
+     * @param input
+     *            the input
+     * @return the staged definitions
+     */
+    private static StagingBeanDefinitionRegistry decode( SnapshotInput input )
+    {
+        StagingBeanDefinitionRegistry staging = new StagingBeanDefinitionRegistry( );
+        int nBeans = input.readInt( );
+
+        for ( int i = 0; i < nBeans; i++ )
+        {
+            String strBeanName = input.readString( );
+            staging.registerBeanDefinition( strBeanName, readDefinition( input ) );
+        }
+
+        int nAliases = input.readInt( );
+
+        for ( int i = 0; i < nAliases; i++ )
+        {
+            staging.registerAlias( input.readString( ), input.readString( ) );
+        }
+
+        return staging;
+    }
+
+    /**
+     * Decodes a bean definition
+     * 
+     * @param input
+     *            the input
+     * @return the bean definition
+     */
+    private static BeanDefinition readDefinition( SnapshotInput input )
+    {
+        GenericBeanDefinition bd = new GenericBeanDefinition( );
+        bd.setBeanClassName( input.readString( ) );
+        bd.setParentName( input.readString( ) );
+        bd.setScope( input.readString( ) );
+        bd.setAbstract( input.readBoolean( ) );
+
+        byte lazyInit = input.readByte( );
+
+        if ( lazyInit >= 0 )
+        {
+            bd.setLazyInit( lazyInit == 1 );
+        }
+
+        bd.setAutowireMode( input.readInt( ) );
+        bd.setDependencyCheck( input.readInt( ) );
+        bd.setDependsOn( input.readStrings( ) );
+        bd.setAutowireCandidate( input.readBoolean( ) );
+        bd.setPrimary( input.readBoolean( ) );
+        bd.setNonPublicAccessAllowed( input.readBoolean( ) );
+        bd.setLenientConstructorResolution( input.readBoolean( ) );
+        bd.setFactoryBeanName( input.readString( ) );
+        bd.setFactoryMethodName( input.readString( ) );
+        bd.setInitMethodNames( input.readStrings( ) );
+        bd.setEnforceInitMethod( input.readBoolean( ) );
+        bd.setDestroyMethodNames( input.readStrings( ) );
+        bd.setEnforceDestroyMethod( input.readBoolean( ) );
+        bd.setSynthetic( input.readBoolean( ) );
+        bd.setRole( input.readInt( ) );
+        bd.setDescription( input.readString( ) );
+        bd.setResourceDescription( input.readString( ) );
+
+        ConstructorArgumentValues args = bd.getConstructorArgumentValues( );
+        int nIndexedArgs = input.readInt( );
+
+        for ( int i = 0; i < nIndexedArgs; i++ )
+        {
+            int nIndex = input.readInt( );
+            args.addIndexedArgumentValue( nIndex, readValueHolder( input ) );
+        }
+
+        int nGenericArgs = input.readInt( );
+
+        for ( int i = 0; i < nGenericArgs; i++ )
+        {
+            args.addGenericArgumentValue( readValueHolder( input ) );
+        }
+
+        int nPropertyValues = input.readInt( );
+
+        for ( int i = 0; i < nPropertyValues; i++ )
+        {
+            String strName = input.readString( );
+            bd.getPropertyValues( ).addPropertyValue( new PropertyValue( strName, readValue( input ) ) );
+        }
+
+        return bd;
+    }
+
+    /**
+     * Decodes a constructor argument
+     * 
+     * @param input
+     *            the input
+     * @return the constructor argument
+     */
+    private static ValueHolder readValueHolder( SnapshotInput input )
+    {
+        Object value = readValue( input );
+        String strType = input.readString( );
+        String strName = input.readString( );
+
+        return new ValueHolder( value, strType, strName );
+    }
+
+    /**
+     * Decodes a value of a bean definition
+     * 
+     * @param input
+     *            the input
+     * @return the value, may be null
+     */
+    private static Object readValue( SnapshotInput input )
+    {
+        byte tag = input.readByte( );
+
+        switch( tag )
+        {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return input.readString( );
+            case TAG_TYPED_STRING:
+                TypedStringValue typedValue = new TypedStringValue( input.readString( ) );
+                typedValue.setTargetTypeName( input.readString( ) );
+                typedValue.setSpecifiedTypeName( input.readString( ) );
+                if ( input.readBoolean( ) )
+                {
+                    typedValue.setDynamic( );
+                }
+                return typedValue;
+            case TAG_BEAN_REFERENCE:
+                String strBeanName = input.readString( );
+                return new RuntimeBeanReference( strBeanName, input.readBoolean( ) );
+            case TAG_BEAN_NAME_REFERENCE:
+                return new RuntimeBeanNameReference( input.readString( ) );
+            case TAG_BEAN_DEFINITION_HOLDER:
+                String strHolderName = input.readString( );
+                String [ ] aliases = input.readStrings( );
+                return new BeanDefinitionHolder( readDefinition( input ), strHolderName, aliases );
+            case TAG_ARRAY:
+                String strArrayElementType = input.readString( );
+                boolean bArrayMerge = input.readBoolean( );
+                int nArraySize = input.readInt( );
+                ManagedArray array = new ManagedArray( strArrayElementType, nArraySize );
+                array.setMergeEnabled( bArrayMerge );
+                readElements( input, array, nArraySize );
+                return array;
+            case TAG_LIST:
+                String strListElementType = input.readString( );
+                boolean bListMerge = input.readBoolean( );
+                int nListSize = input.readInt( );
+                ManagedList<Object> list = new ManagedList<>( nListSize );
+                list.setElementTypeName( strListElementType );
+                list.setMergeEnabled( bListMerge );
+                readElements( input, list, nListSize );
+                return list;
+            case TAG_SET:
+                String strSetElementType = input.readString( );
+                boolean bSetMerge = input.readBoolean( );
+                int nSetSize = input.readInt( );
+                ManagedSet<Object> set = new ManagedSet<>( nSetSize );
+                set.setElementTypeName( strSetElementType );
+                set.setMergeEnabled( bSetMerge );
+                readElements( input, set, nSetSize );
+                return set;
+            case TAG_MAP:
+                ManagedMap<Object, Object> map = new ManagedMap<>( );
+                map.setKeyTypeName( input.readString( ) );
+                map.setValueTypeName( input.readString( ) );
+                map.setMergeEnabled( input.readBoolean( ) );
+                readEntries( input, map );
+                return map;
+            case TAG_PROPERTIES:
+                ManagedProperties properties = new ManagedProperties( );
+                properties.setMergeEnabled( input.readBoolean( ) );
+                readEntries( input, properties );
+                return properties;
+            default:
+                throw new IllegalStateException( "Unknown value tag : " + tag );
+        }
+    }
+
+    /**
+     * Decodes the elements of a managed collection
+     * 
+     * @param input
+     *            the input
+     * @param elements
+     *            the collection to fill
+     * @param nSize
+     *            the number of elements
+     */
+    private static void readElements( SnapshotInput input, Collection<Object> elements, int nSize )
+    {
+        for ( int i = 0; i < nSize; i++ )
+        {
+            elements.add( readValue( input ) );
+        }
+    }
+
+    /**
+     * Decodes the entries of a managed map or of managed properties
+     * 
+     * @param input
+     *            the input
+     * @param map
+     *            the map to fill
+     */
+    private static void readEntries( SnapshotInput input, Map<Object, Object> map )
+    {
+        int nSize = input.readInt( );
+
+        for ( int i = 0; i < nSize; i++ )
+        {
+            Object key = readValue( input );
+            map.put( key, readValue( input ) );
+        }
+    }
+
+    /**
+     * Snapshot entry
+     */
+    private static final class Entry
+    {
+        private final byte [ ] _hash;
+        private final ByteBuffer _payload;
+
+        /**
+         * Constructor
+         * 
+         * @param hash
+         *            the content hash of the context file
+         * @param payload
+         *            the encoded definitions
+         */
+        Entry( byte [ ] hash, ByteBuffer payload )
+        {
+            _hash = hash;
+            _payload = payload;
+        }
+    }
+
+    /**
+     * Sequential reader over a (memory-mapped) buffer
+     */
+    private static final class SnapshotInput
+    {
+        private final ByteBuffer _buffer;
+
+        /**
+         * Constructor
+         * 
+         * @param buffer
+         *            the buffer
+         */
+        SnapshotInput( ByteBuffer buffer )
+        {
+            _buffer = buffer;
+        }
+
+        /**
+         * Reads an integer
+         * 
+         * @return the integer
+         */
+        int readInt( )
+        {
+            return _buffer.getInt( );
+        }
+
+        /**
+         * Reads a byte
+         * 
+         * @return the byte
+         */
+        byte readByte( )
+        {
+            return _buffer.get( );
+        }
+
+        /**
+         * Reads a boolean
+         * 
+         * @return the boolean
+         */
+        boolean readBoolean( )
+        {
+            return _buffer.get( ) != 0;
+        }
+
+        /**
+         * Reads an array of bytes prefixed by its length
+         * 
+         * @return the bytes, or null
+         */
+        byte [ ] readBytes( )
+        {
+            int nLength = _buffer.getInt( );
+
+            if ( nLength < 0 )
+            {
+                return null;
+            }
+
+            byte [ ] bytes = new byte [ nLength];
+            _buffer.get( bytes );
+
+            return bytes;
+        }
+
+        /**
+         * Reads a UTF-8 string
+         * 
+         * @return the string, or null
+         */
+        String readString( )
+        {
+            byte [ ] bytes = readBytes( );
+
+            return ( bytes != null ) ? new String( bytes, StandardCharsets.UTF_8 ) : null;
+        }
+
+        /**
+         * Reads an array of strings
+         * 
+         * @return the strings, or null
+         */
+        String [ ] readStrings( )
+        {
+            int nLength = _buffer.getInt( );
+
+            if ( nLength < 0 )
+            {
+                return null;
+            }
+
+            String [ ] strings = new String [ nLength];
+
+            for ( int i = 0; i < nLength; i++ )
+            {
+                strings [i] = readString( );
+            }
+
+            return strings;
+        }
+
+        /**
+         * Reads a slice of the buffer, sharing its content
+         * 
+         * @param nLength
+         *            the length of the slice
+         * @return the slice
+         */
+        ByteBuffer slice( int nLength )
+        {
+            ByteBuffer slice = _buffer.slice( _buffer.position( ), nLength );
+            _buffer.position( _buffer.position( ) + nLength );
+
+            return slice;
+        }
+    }
+
+    /**
+     * Thrown when a definition holds metadata that the snapshot format does not support
+     */
+    private static final class UnsupportedDefinitionException extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor
+         * 
+         * @param strMessage
+         *            the unsupported element
+         */
+        UnsupportedDefinitionException( String strMessage )
+        {
+            super( strMessage );
+        }
+    }
+}
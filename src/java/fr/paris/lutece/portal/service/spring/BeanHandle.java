@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.util.function.Supplier;
+
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Handle on a bean, obtained once from {@link SpringContextService#getBeanHandle(String, Class)} or {@link SpringContextService#getBeanHandle(Class)}
+ * and kept by the caller. A singleton is resolved once and then read from a volatile field, without any lookup. The resolution is discarded when a plugin
+ * is installed or uninstalled or when a context file is reloaded. Other scopes, such as prototype or request beans, are requested from their context on
+ * each call.
+ * 
+ * @param <T>
+ *            the bean type
+ */
+public final class BeanHandle<T> implements Supplier<T>
+{
+    private final String _strBeanName;
+    private final Class<T> _type;
+    private volatile Resolution<T> _resolution;
+
+    /**
+     * Constructor
+     * 
+     * @param strBeanName
+     *            the bean name, or null to resolve the unique bean of the type
+     * @param type
+     *            the bean type
+     */
+    BeanHandle( String strBeanName, Class<T> type )
+    {
+        _strBeanName = strBeanName;
+        _type = type;
+    }
+
+    /**
+     * Gets the name of the bean, without creating it
+     * 
+     * @return the bean name, or null for a handle on the bean of a type not resolved yet
+     */
+    public String getBeanName( )
+    {
+        Resolution<T> resolution = _resolution;
+
+        return ( _strBeanName != null || resolution == null ) ? _strBeanName : resolution._strBeanName;
+    }
+
+    /**
+     * Gets the bean
+     * 
+     * @return the bean
+     * @throws org.springframework.beans.BeansException
+     *             if the bean cannot be resolved
+     */
+    @Override
+    public T get( )
+    {
+        Resolution<T> resolution = _resolution;
+
+        if ( resolution == null || resolution._lGeneration != SpringContextService.getGeneration( ) )
+        {
+            return resolve( );
+        }
+
+        if ( resolution._instance != null )
+        {
+            return resolution._instance;
+        }
+
+        return resolution._context.getBean( resolution._strBeanName, _type );
+    }
+
+    /**
+     * Resolves the bean and keeps the resolution for the current generation of the contexts
+     * 
+     * @return the bean
+     */
+    private T resolve( )
+    {
+        long lGeneration = SpringContextService.getGeneration( );
+        String strBeanName = ( _strBeanName != null ) ? _strBeanName : SpringContextService.getBeanNameForType( _type );
+        ApplicationContext context = SpringContextService.getContextForBean( strBeanName );
+        T instance = context.getBean( strBeanName, _type );
+
+        _resolution = new Resolution<>( strBeanName, context, context.isSingleton( strBeanName ) ? instance : null, lGeneration );
+
+        return instance;
+    }
+
+    /**
+     * Resolution of a bean, valid for one generation of the contexts
+     * 
+     * @param <T>
+     *            the bean type
+     */
+    private static final class Resolution<T>
+    {
+        private final String _strBeanName;
+        private final ApplicationContext _context;
+        private final T _instance;
+        private final long _lGeneration;
+
+        /**
+         * Constructor
+         * 
+         * @param strBeanName
+         *            the bean name
+         * @param context
+         *            the context holding the bean
+         * @param instance
+         *            the singleton instance, or null if the bean is not a singleton
+         * @param lGeneration
+         *            the generation of the contexts
+         */
+        Resolution( String strBeanName, ApplicationContext context, T instance, long lGeneration )
+        {
+            _strBeanName = strBeanName;
+            _context = context;
+            _instance = instance;
+            _lGeneration = lGeneration;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Type closure of the bean classes : the class, its superclasses and all the interfaces they implement, directly or through super-interfaces. The closure
+ * is computed once per class and shared by all the callers : the registration of the Spring beans in CDI and the bean type indexes.
+ * <p>
+ * The closure holds every type of the hierarchy, technical ones included, such as <code>Serializable</code> or <code>InitializingBean</code>. Since the
+ * Spring beans are registered in CDI with these types, an injection point of such a type matching several bridged beans is ambiguous : it must use a more
+ * specific type or a qualifier.
+ */
+public final class BeanTypeClosure
+{
+    private static final ClassValue<Closure> CLOSURES = new ClassValue<Closure>( )
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Closure computeValue( Class<?> clazz )
+        {
+            return new Closure( clazz );
+        }
+    };
+
+    /**
+     * Private constructor
+     */
+    private BeanTypeClosure( )
+    {
+    }
+
+    /**
+     * Gets the bean types of a class : the class, its superclasses and all their interfaces. A generic supertype is included both as a parameterized type,
+     * as declared, and as a raw class, so that it satisfies parameterized and raw injection points.
+     * 
+     * @param clazz
+     *            the class
+     * @return an unmodifiable set of types, in hierarchy order
+     */
+    public static Set<Type> getTypes( Class<?> clazz )
+    {
+        return CLOSURES.get( clazz )._setTypes;
+    }
+
+    /**
+     * Gets the classes a class can be looked up with : the class, its superclasses and all their interfaces
+     * 
+     * @param clazz
+     *            the class
+     * @return an unmodifiable set of classes, in hierarchy order
+     */
+    public static Set<Class<?>> getClasses( Class<?> clazz )
+    {
+        return CLOSURES.get( clazz )._setClasses;
+    }
+
+    /**
+     * Type closure of a class
+     */
+    private static final class Closure
+    {
+        private final Set<Type> _setTypes;
+        private final Set<Class<?>> _setClasses;
+
+        /**
+         * Constructor
+         * 
+         * @param clazz
+         *            the class
+         */
+        Closure( Class<?> clazz )
+        {
+            Set<Type> setTypes = new LinkedHashSet<>( );
+            Set<Class<?>> setClasses = new LinkedHashSet<>( );
+            setTypes.add( clazz );
+            setClasses.add( clazz );
+
+            for ( Class<?> type = clazz; type != null; type = type.getSuperclass( ) )
+            {
+                if ( type.getSuperclass( ) != null )
+                {
+                    addType( type.getGenericSuperclass( ), setTypes, setClasses );
+                }
+
+                addInterfaces( type, setTypes, setClasses );
+            }
+
+            _setTypes = Collections.unmodifiableSet( setTypes );
+            _setClasses = Collections.unmodifiableSet( setClasses );
+        }
+
+        /**
+         * Adds the interfaces of a type and their super-interfaces
+         * 
+         * @param type
+         *            the class or interface
+         * @param setTypes
+         *            the types
+         * @param setClasses
+         *            the classes
+         */
+        private static void addInterfaces( Class<?> type, Set<Type> setTypes, Set<Class<?>> setClasses )
+        {
+            for ( Type genericInterface : type.getGenericInterfaces( ) )
+            {
+                if ( addType( genericInterface, setTypes, setClasses ) )
+                {
+                    addInterfaces( getRawClass( genericInterface ), setTypes, setClasses );
+                }
+            }
+        }
+
+        /**
+         * Adds a supertype and its raw class
+         * 
+         * @param type
+         *            the supertype
+         * @param setTypes
+         *            the types
+         * @param setClasses
+         *            the classes
+         * @return true if the raw class has not been added yet
+         */
+        private static boolean addType( Type type, Set<Type> setTypes, Set<Class<?>> setClasses )
+        {
+            Class<?> rawClass = getRawClass( type );
+            setTypes.add( type );
+            setTypes.add( rawClass );
+
+            return setClasses.add( rawClass );
+        }
+
+        /**
+         * Gets the raw class of a supertype
+         * 
+         * @param type
+         *            the supertype : a class or a parameterized type
+         * @return the class
+         */
+        private static Class<?> getRawClass( Type type )
+        {
+            return ( type instanceof ParameterizedType ) ? (Class<?>) ( (ParameterizedType) type ).getRawType( ) : (Class<?>) type;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanCurrentlyInCreationException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Index of the beans of a bean factory by type, built once the factory is refreshed. Each bean gets an ordinal, in definition order, and every class and
+ * interface of its type hierarchy is mapped to the sorted ordinals of the matching beans. Looking up the beans of a type then costs the number of matches
+ * instead of a type matching of every bean definition.
+ * <p>
+ * Beans whose type cannot be determined at indexing time are checked on each lookup. An index may have the index of the parent factory as parent : the
+ * lookups then follow the semantics of {@link org.springframework.beans.factory.BeanFactoryUtils#beansOfTypeIncludingAncestors}.
+ */
+final class BeanTypeIndex
+{
+    private static final int [ ] NO_ORDINALS = new int [ 0];
+
+    private final ConfigurableListableBeanFactory _beanFactory;
+    private final BeanTypeIndex _parent;
+    private final String [ ] _strBeanNames;
+    private final Map<Class<?>, int [ ]> _mapOrdinals;
+    private final int [ ] _unresolvedOrdinals;
+
+    /**
+     * Constructor
+     * 
+     * @param beanFactory
+     *            the indexed bean factory
+     * @param parent
+     *            the index of the parent bean factory, may be null
+     * @param strBeanNames
+     *            the bean names by ordinal
+     * @param mapOrdinals
+     *            the ordinals of the beans by type
+     * @param unresolvedOrdinals
+     *            the ordinals of the beans whose type is unknown
+     */
+    private BeanTypeIndex( ConfigurableListableBeanFactory beanFactory, BeanTypeIndex parent, String [ ] strBeanNames, Map<Class<?>, int [ ]> mapOrdinals,
+            int [ ] unresolvedOrdinals )
+    {
+        _beanFactory = beanFactory;
+        _parent = parent;
+        _strBeanNames = strBeanNames;
+        _mapOrdinals = mapOrdinals;
+        _unresolvedOrdinals = unresolvedOrdinals;
+    }
+
+    /**
+     * Builds the index of a refreshed bean factory : its non abstract bean definitions, factory beans included, and its manually registered singletons
+     * 
+     * @param beanFactory
+     *            the bean factory
+     * @param parent
+     *            the index of the parent bean factory, may be null
+     * @return the index
+     */
+    static BeanTypeIndex build( ConfigurableListableBeanFactory beanFactory, BeanTypeIndex parent )
+    {
+        long lStart = System.currentTimeMillis( );
+        List<String> listBeanNames = new ArrayList<>( );
+        Map<Class<?>, int [ ]> mapOrdinals = new HashMap<>( );
+        int [ ] unresolvedOrdinals = NO_ORDINALS;
+
+        List<String> listCandidates = new ArrayList<>( );
+
+        for ( String strBeanName : beanFactory.getBeanDefinitionNames( ) )
+        {
+            if ( !beanFactory.getMergedBeanDefinition( strBeanName ).isAbstract( ) )
+            {
+                listCandidates.add( strBeanName );
+
+                if ( isFactoryBean( beanFactory, strBeanName ) )
+                {
+                    listCandidates.add( BeanFactory.FACTORY_BEAN_PREFIX + strBeanName );
+                }
+            }
+        }
+
+        for ( String strBeanName : beanFactory.getSingletonNames( ) )
+        {
+            if ( !beanFactory.containsBeanDefinition( strBeanName ) )
+            {
+                listCandidates.add( strBeanName );
+            }
+        }
+
+        Set<Class<?>> setPreviousTypes = Collections.emptySet( );
+
+        for ( String strBeanName : listCandidates )
+        {
+            int nOrdinal = listBeanNames.size( );
+            listBeanNames.add( strBeanName );
+
+            Class<?> beanType = getType( beanFactory, strBeanName );
+
+            if ( beanType == null )
+            {
+                unresolvedOrdinals = add( unresolvedOrdinals, nOrdinal );
+                setPreviousTypes = Collections.emptySet( );
+
+                continue;
+            }
+
+            // Like Spring, a factory bean matches a type only if the object it creates does not : the object is the previous candidate
+            boolean bFactoryBean = strBeanName.startsWith( BeanFactory.FACTORY_BEAN_PREFIX );
+            Set<Class<?>> setTypes = BeanTypeClosure.getClasses( beanType );
+
+            for ( Class<?> type : setTypes )
+            {
+                if ( !bFactoryBean || !setPreviousTypes.contains( type ) )
+                {
+                    mapOrdinals.merge( type, new int [ ] {
+                            1, nOrdinal
+                    }, ( ordinals, ordinal ) -> add( ordinals, nOrdinal ) );
+                }
+            }
+
+            setPreviousTypes = setTypes;
+        }
+
+        // Trims the arrays : the first element of an array being built is its size
+        for ( Map.Entry<Class<?>, int [ ]> entry : mapOrdinals.entrySet( ) )
+        {
+            entry.setValue( Arrays.copyOfRange( entry.getValue( ), 1, entry.getValue( ) [0] + 1 ) );
+        }
+
+        unresolvedOrdinals = ( unresolvedOrdinals.length == 0 ) ? NO_ORDINALS : Arrays.copyOfRange( unresolvedOrdinals, 1, unresolvedOrdinals [0] + 1 );
+
+        AppLogService.debug( "Spring bean type index built : {} beans, {} types, {} unresolved, in {} ms", listBeanNames.size( ), mapOrdinals.size( ),
+                unresolvedOrdinals.length, System.currentTimeMillis( ) - lStart );
+
+        return new BeanTypeIndex( beanFactory, parent, listBeanNames.toArray( new String [ listBeanNames.size( )] ), mapOrdinals, unresolvedOrdinals );
+    }
+
+    /**
+     * Gets the names of the beans matching a type, in definition order
+     * 
+     * @param type
+     *            the type
+     * @return the bean names
+     */
+    List<String> getBeanNamesForType( Class<?> type )
+    {
+        List<String> listBeanNames = new ArrayList<>( );
+        int [ ] ordinals = _mapOrdinals.getOrDefault( type, NO_ORDINALS );
+        int nUnresolved = 0;
+        int i = 0;
+
+        // Merges the sorted ordinals of the matching beans and of the beans with an unknown type
+        while ( i < ordinals.length || nUnresolved < _unresolvedOrdinals.length )
+        {
+            if ( nUnresolved == _unresolvedOrdinals.length || ( i < ordinals.length && ordinals [i] < _unresolvedOrdinals [nUnresolved] ) )
+            {
+                listBeanNames.add( _strBeanNames [ordinals [i++]] );
+            }
+            else
+            {
+                String strBeanName = _strBeanNames [_unresolvedOrdinals [nUnresolved++]];
+
+                if ( isTypeMatch( strBeanName, type ) )
+                {
+                    listBeanNames.add( strBeanName );
+                }
+            }
+        }
+
+        return listBeanNames;
+    }
+
+    /**
+     * Gets the names of the beans matching a type, including the beans of the parent indexes not hidden by a local bean of the same name
+     * 
+     * @param type
+     *            the type
+     * @return the bean names, local beans first
+     */
+    List<String> getBeanNamesForTypeIncludingAncestors( Class<?> type )
+    {
+        List<String> listBeanNames = getBeanNamesForType( type );
+
+        if ( _parent != null )
+        {
+            for ( String strBeanName : _parent.getBeanNamesForTypeIncludingAncestors( type ) )
+            {
+                if ( !listBeanNames.contains( strBeanName ) && !_beanFactory.containsLocalBean( strBeanName ) )
+                {
+                    listBeanNames.add( strBeanName );
+                }
+            }
+        }
+
+        return listBeanNames;
+    }
+
+    /**
+     * Gets the beans matching a type, including the beans of the parent indexes not hidden by a local bean of the same name
+     * 
+     * @param <T>
+     *            the type
+     * @param type
+     *            the type
+     * @return the beans by name, in definition order
+     */
+    <T> Map<String, T> getBeansOfType( Class<T> type )
+    {
+        Map<String, T> mapBeans = new LinkedHashMap<>( );
+
+        for ( String strBeanName : getBeanNamesForType( type ) )
+        {
+            try
+            {
+                Object bean = _beanFactory.getBean( strBeanName );
+
+                if ( type.isInstance( bean ) )
+                {
+                    mapBeans.put( strBeanName, type.cast( bean ) );
+                }
+            }
+            catch( BeanCreationException e )
+            {
+                // Like Spring, ignores the beans currently in creation
+                if ( !( e.getMostSpecificCause( ) instanceof BeanCurrentlyInCreationException ) )
+                {
+                    throw e;
+                }
+            }
+        }
+
+        if ( _parent != null )
+        {
+            for ( Map.Entry<String, T> entry : _parent.getBeansOfType( type ).entrySet( ) )
+            {
+                if ( !mapBeans.containsKey( entry.getKey( ) ) && !_beanFactory.containsLocalBean( entry.getKey( ) ) )
+                {
+                    mapBeans.put( entry.getKey( ), entry.getValue( ) );
+                }
+            }
+        }
+
+        return mapBeans;
+    }
+
+    /**
+     * Checks the type of a bean whose type was unknown at indexing time
+     * 
+     * @param strBeanName
+     *            the bean name
+     * @param type
+     *            the type
+     * @return true if the bean matches the type
+     */
+    private boolean isTypeMatch( String strBeanName, Class<?> type )
+    {
+        try
+        {
+            return _beanFactory.isTypeMatch( strBeanName, type );
+        }
+        catch( BeansException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the type of a bean, without failing
+     * 
+     * @param beanFactory
+     *            the bean factory
+     * @param strBeanName
+     *            the bean name
+     * @return the type or null if it cannot be determined
+     */
+    private static Class<?> getType( ConfigurableListableBeanFactory beanFactory, String strBeanName )
+    {
+        try
+        {
+            return beanFactory.getType( strBeanName );
+        }
+        catch( BeansException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Indicates whether a bean is a factory bean, without failing
+     * 
+     * @param beanFactory
+     *            the bean factory
+     * @param strBeanName
+     *            the bean name
+     * @return true if the bean is a factory bean
+     */
+    private static boolean isFactoryBean( ConfigurableListableBeanFactory beanFactory, String strBeanName )
+    {
+        try
+        {
+            return beanFactory.isFactoryBean( strBeanName );
+        }
+        catch( BeansException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Appends an ordinal to an array being built, whose first element is the size
+     * 
+     * @param ordinals
+     *            the array being built
+     * @param nOrdinal
+     *            the ordinal
+     * @return the array, grown if needed
+     */
+    private static int [ ] add( int [ ] ordinals, int nOrdinal )
+    {
+        int [ ] array = ( ordinals.length == 0 ) ? new int [ 4] : ordinals;
+        int nSize = array [0] + 1;
+
+        if ( nSize == array.length )
+        {
+            array = Arrays.copyOf( array, array.length * 2 );
+        }
+
+        array [nSize] = nOrdinal;
+        array [0] = nSize;
+
+        return array;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Cache of values by bean type, such as the beans or the bean names of a type. Values are immutable and shared by all the callers, so that a hit neither
+ * locks nor allocates. Each entry is stamped with the generation of the cache at the time its value was built : incrementing the generation invalidates
+ * atomically all the entries, including those being built concurrently.
+ */
+final class BeansOfTypeCache
+{
+    private final Map<Class<?>, Entry> _mapEntries = new ConcurrentHashMap<>( );
+    private final AtomicLong _lGeneration = new AtomicLong( );
+    private final LongAdder _hits = new LongAdder( );
+    private final LongAdder _misses = new LongAdder( );
+    private final LongAdder _rebuilds = new LongAdder( );
+
+    /**
+     * Gets the list of a type, building it if it is not cached or stale
+     * 
+     * @param <T>
+     *            the type
+     * @param <E>
+     *            the type of the list elements
+     * @param classDef
+     *            the type
+     * @param builder
+     *            the function building the list of a type
+     * @return the immutable list
+     */
+    <T, E> List<E> get( Class<T> classDef, Function<Class<T>, List<E>> builder )
+    {
+        return lookup( classDef, builder, true );
+    }
+
+    /**
+     * Gets the value of a type, building it if it is not cached or stale
+     * 
+     * @param <T>
+     *            the type
+     * @param <V>
+     *            the type of the value
+     * @param classDef
+     *            the type
+     * @param builder
+     *            the function building the value of a type, which must not be modified afterwards
+     * @return the value
+     */
+    <T, V> V getValue( Class<T> classDef, Function<Class<T>, V> builder )
+    {
+        return lookup( classDef, builder, false );
+    }
+
+    /**
+     * Gets the value of a type, building it if it is not cached or stale
+     * 
+     * @param <T>
+     *            the type
+     * @param <V>
+     *            the type of the value
+     * @param classDef
+     *            the type
+     * @param builder
+     *            the function building the value of a type
+     * @param bList
+     *            true if the value is a list to copy into an immutable list
+     * @return the value
+     */
+    @SuppressWarnings( "unchecked" )
+    private <T, V> V lookup( Class<T> classDef, Function<Class<T>, V> builder, boolean bList )
+    {
+        long lGeneration = _lGeneration.get( );
+        Entry entry = _mapEntries.get( classDef );
+
+        if ( entry != null && entry._lGeneration == lGeneration )
+        {
+            _hits.increment( );
+
+            return (V) entry._value;
+        }
+
+        if ( entry == null )
+        {
+            _misses.increment( );
+        }
+        else
+        {
+            _rebuilds.increment( );
+        }
+
+        V value = builder.apply( classDef );
+
+        if ( bList )
+        {
+            value = (V) Collections.unmodifiableList( new ArrayList<>( (List<?>) value ) );
+        }
+
+        // A value built while the cache was invalidated is returned but not kept
+        if ( _lGeneration.get( ) == lGeneration )
+        {
+            _mapEntries.put( classDef, new Entry( lGeneration, value ) );
+        }
+
+        return value;
+    }
+
+    /**
+     * Invalidates all the entries. Stale entries are kept until their type is looked up again and are then rebuilt.
+     */
+    void invalidate( )
+    {
+        _lGeneration.incrementAndGet( );
+    }
+
+    /**
+     * Gets the current generation of the cache, incremented by each invalidation
+     * 
+     * @return the generation
+     */
+    long getGeneration( )
+    {
+        return _lGeneration.get( );
+    }
+
+    /**
+     * Gets the number of lookups served from the cache
+     * 
+     * @return the number of hits
+     */
+    long getHits( )
+    {
+        return _hits.sum( );
+    }
+
+    /**
+     * Gets the number of lookups of a type not yet cached
+     * 
+     * @return the number of misses
+     */
+    long getMisses( )
+    {
+        return _misses.sum( );
+    }
+
+    /**
+     * Gets the number of lookups of a type whose cached value had been invalidated
+     * 
+     * @return the number of rebuilds
+     */
+    long getRebuilds( )
+    {
+        return _rebuilds.sum( );
+    }
+
+    /**
+     * Cached value, stamped with the generation of the cache at the time it was built
+     */
+    private static final class Entry
+    {
+        private final long _lGeneration;
+        private final Object _value;
+
+        /**
+         * Constructor
+         * 
+         * @param lGeneration
+         *            the generation
+         * @param value
+         *            the value
+         */
+        Entry( long lGeneration, Object value )
+        {
+            _lGeneration = lGeneration;
+            _value = value;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Watches the directories of the context files and notifies the modified context files. Notifications are delayed a little so that a burst of file
+ * system events produced by a single save results in a single notification per file.
+ */
+final class ContextFileWatcher implements Runnable
+{
+    private static final String THREAD_NAME = "spring-context-watcher";
+    private static final long DELAY_DEBOUNCE = 500L;
+
+    private final Set<String> _setContextFiles;
+    private final Consumer<String> _listener;
+    private final WatchService _watchService;
+    private final Thread _thread;
+
+    /**
+     * Constructor
+     * 
+     * @param filesContext
+     *            the paths of the context files to watch
+     * @param listener
+     *            the listener notified with the path of each modified context file
+     * @throws IOException
+     *             if the watch service cannot be created
+     */
+    ContextFileWatcher( Collection<String> filesContext, Consumer<String> listener ) throws IOException
+    {
+        _setContextFiles = new HashSet<>( );
+        _listener = listener;
+        _watchService = FileSystems.getDefault( ).newWatchService( );
+
+        Set<Path> setDirectories = new HashSet<>( );
+
+        for ( String fileContext : filesContext )
+        {
+            Path path = Path.of( fileContext ).toAbsolutePath( ).normalize( );
+            _setContextFiles.add( path.toString( ) );
+
+            if ( setDirectories.add( path.getParent( ) ) )
+            {
+                path.getParent( ).register( _watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE );
+            }
+        }
+
+        _thread = new Thread( this, THREAD_NAME );
+        _thread.setDaemon( true );
+    }
+
+    /**
+     * Starts watching
+     */
+    void start( )
+    {
+        _thread.start( );
+        AppLogService.info( "Watching Spring context files for changes" );
+    }
+
+    /**
+     * Stops watching
+     */
+    void stop( )
+    {
+        try
+        {
+            _watchService.close( );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Unable to close the Spring context files watcher - cause : {}", e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run( )
+    {
+        try
+        {
+            while ( true )
+            {
+                Set<String> setModified = new TreeSet<>( );
+                WatchKey key = _watchService.take( );
+
+                // Collect the events of the burst
+                while ( key != null )
+                {
+                    collect( key, setModified );
+                    key = _watchService.poll( DELAY_DEBOUNCE, TimeUnit.MILLISECONDS );
+                }
+
+                for ( String fileContext : setModified )
+                {
+                    try
+                    {
+                        _listener.accept( fileContext );
+                    }
+                    catch( Exception e )
+                    {
+                        AppLogService.error( "Unable to reload Spring context file : {} - cause : {}", fileContext, e.getMessage( ), e );
+                    }
+                }
+            }
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+        }
+        catch( ClosedWatchServiceException e )
+        {
+            // Watcher stopped
+        }
+    }
+
+    /**
+     * Collects the watched context files modified by the events of a key
+     * 
+     * @param key
+     *            the watch key
+     * @param setModified
+     *            the modified context files
+     */
+    private void collect( WatchKey key, Set<String> setModified )
+    {
+        Path pathDirectory = (Path) key.watchable( );
+
+        for ( WatchEvent<?> event : key.pollEvents( ) )
+        {
+            if ( event.kind( ) != StandardWatchEventKinds.OVERFLOW )
+            {
+                String strFile = pathDirectory.resolve( (Path) event.context( ) ).toString( );
+
+                if ( _setContextFiles.contains( strFile ) )
+                {
+                    setModified.add( strFile );
+                }
+            }
+        }
+
+        key.reset( );
+    }
+}
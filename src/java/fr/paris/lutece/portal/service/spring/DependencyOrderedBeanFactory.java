@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Bean factory creating the eager singletons in the order of their {@link SingletonDependencyGraph dependency graph} and measuring the creation time of
+ * each of them.
+ * <p>
+ * The bean classes of the independent singletons are resolved in parallel on a fork-join pool before the creation. The creation itself stays on the
+ * refreshing thread : the singleton registry of Spring serializes the creation of the singletons behind a single lock, so creating independent
+ * subgraphs concurrently would not be faster and could deadlock beans that look each other up. The creation times and the critical path are logged to
+ * show which chain of beans bounds the startup.
+ * <p>
+ * The standard creation is used when the graph contains circular references.
+ */
+class DependencyOrderedBeanFactory extends DefaultListableBeanFactory
+{
+    private static final String THREAD_NAME_PREFIX = "spring-class-resolver-";
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final int _nThreads;
+
+    /**
+     * Constructor
+     * 
+     * @param nThreads
+     *            the number of threads resolving the bean classes
+     */
+    DependencyOrderedBeanFactory( int nThreads )
+    {
+        _nThreads = Math.max( 1, nThreads );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void preInstantiateSingletons( ) throws BeansException
+    {
+        SingletonDependencyGraph graph = SingletonDependencyGraph.build( this );
+        List<List<String>> listLevels = graph.getLevels( );
+
+        if ( listLevels == null )
+        {
+            AppLogService.info( "Circular references between Spring singletons : singletons are created in definition order" );
+            super.preInstantiateSingletons( );
+
+            return;
+        }
+
+        long lStart = System.nanoTime( );
+        resolveBeanClasses( listLevels );
+
+        long lResolved = System.nanoTime( );
+        Map<String, Long> mapDurations = new HashMap<>( );
+
+        for ( List<String> listLevel : listLevels )
+        {
+            for ( String strBeanName : listLevel )
+            {
+                long lBeanStart = System.nanoTime( );
+                getBean( isFactoryBean( strBeanName ) ? FACTORY_BEAN_PREFIX + strBeanName : strBeanName );
+
+                long lDuration = System.nanoTime( ) - lBeanStart;
+                mapDurations.put( strBeanName, lDuration );
+                AppLogService.debug( "Spring singleton {} created in {} ms", strBeanName, lDuration / NANOS_PER_MILLI );
+            }
+        }
+
+        // Creates the objects of the eager factory beans and notifies the SmartInitializingSingleton beans
+        super.preInstantiateSingletons( );
+
+        List<String> listCriticalPath = graph.getCriticalPath( mapDurations );
+        long lCriticalPath = listCriticalPath.stream( ).mapToLong( mapDurations::get ).sum( );
+
+        AppLogService.info( "{} Spring singletons created in {} ms ({} levels, classes resolved in {} ms)", graph.size( ),
+                ( System.nanoTime( ) - lStart ) / NANOS_PER_MILLI, listLevels.size( ), ( lResolved - lStart ) / NANOS_PER_MILLI );
+        AppLogService.info( "Critical path of the Spring singletons creation ({} ms) : {}", lCriticalPath / NANOS_PER_MILLI,
+                listCriticalPath.stream( ).map( strBeanName -> strBeanName + " (" + mapDurations.get( strBeanName ) / NANOS_PER_MILLI + " ms)" )
+                        .collect( Collectors.joining( " -> " ) ) );
+    }
+
+    /**
+     * Resolves in parallel the classes of the singletons and their constructors, so that the class loading is done before the creation
+     * 
+     * @param listLevels
+     *            the singletons grouped by level
+     */
+    private void resolveBeanClasses( List<List<String>> listLevels )
+    {
+        if ( _nThreads < 2 )
+        {
+            return;
+        }
+
+        ClassLoader classLoader = Thread.currentThread( ).getContextClassLoader( );
+        ForkJoinPool pool = new ForkJoinPool( _nThreads, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread( forkJoinPool );
+            thread.setName( THREAD_NAME_PREFIX + thread.getPoolIndex( ) );
+            thread.setContextClassLoader( classLoader );
+
+            return thread;
+        }, null, false );
+
+        try
+        {
+            List<Callable<Void>> listTasks = new ArrayList<>( );
+
+            for ( List<String> listLevel : listLevels )
+            {
+                for ( String strBeanName : listLevel )
+                {
+                    listTasks.add( ( ) -> {
+                        preloadBeanClass( strBeanName );
+
+                        return null;
+                    } );
+                }
+            }
+
+            for ( Future<Void> future : pool.invokeAll( listTasks ) )
+            {
+                future.get( );
+            }
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+        }
+        catch( ExecutionException e )
+        {
+            AppLogService.debug( "Unable to resolve Spring bean classes in parallel - cause : {}", e.getMessage( ) );
+        }
+        finally
+        {
+            pool.shutdown( );
+        }
+    }
+
+    /**
+     * Loads the class of a singleton. Failures are ignored : they are reported by the creation of the bean.
+     * 
+     * @param strBeanName
+     *            the bean name
+     */
+    private void preloadBeanClass( String strBeanName )
+    {
+        try
+        {
+            RootBeanDefinition beanDefinition = getMergedLocalBeanDefinition( strBeanName );
+            Class<?> beanClass = resolveBeanClass( beanDefinition, strBeanName );
+
+            if ( beanClass != null )
+            {
+                beanClass.getDeclaredConstructors( );
+            }
+        }
+        catch( BeansException | LinkageError e )
+        {
+            AppLogService.debug( "Unable to resolve the class of the Spring bean {} - cause : {}", strBeanName, e.getMessage( ) );
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+
+/**
+ * Bean factory post processor switching the singletons to lazy initialization, so that the refresh of the context does not create them. The names of the
+ * deferred singletons are kept to be created later in background.
+ * <p>
+ * Infrastructure beans, beans implementing {@link SmartInitializingSingleton}, beans already declared lazy and excluded beans are left untouched.
+ */
+class LazyInitBeanFactoryPostProcessor implements BeanFactoryPostProcessor
+{
+    private final Set<String> _setExcludedBeanNames;
+    private final List<String> _listDeferredBeanNames = new ArrayList<>( );
+
+    /**
+     * Constructor
+     * 
+     * @param setExcludedBeanNames
+     *            the names of the beans that must be created eagerly
+     */
+    LazyInitBeanFactoryPostProcessor( Set<String> setExcludedBeanNames )
+    {
+        _setExcludedBeanNames = setExcludedBeanNames;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postProcessBeanFactory( ConfigurableListableBeanFactory beanFactory ) throws BeansException
+    {
+        for ( String strBeanName : beanFactory.getBeanDefinitionNames( ) )
+        {
+            BeanDefinition beanDefinition = beanFactory.getBeanDefinition( strBeanName );
+
+            if ( isDeferrable( beanFactory, strBeanName, beanDefinition ) )
+            {
+                ( (AbstractBeanDefinition) beanDefinition ).setLazyInit( true );
+                _listDeferredBeanNames.add( strBeanName );
+            }
+        }
+    }
+
+    /**
+     * Gets the names of the singletons whose creation has been deferred
+     * 
+     * @return the bean names, in definition order
+     */
+    List<String> getDeferredBeanNames( )
+    {
+        return Collections.unmodifiableList( _listDeferredBeanNames );
+    }
+
+    /**
+     * Indicates whether the creation of a bean can be deferred
+     * 
+     * @param beanFactory
+     *            the bean factory
+     * @param strBeanName
+     *            the bean name
+     * @param beanDefinition
+     *            the bean definition
+     * @return true if the bean can be created lazily
+     */
+    private boolean isDeferrable( ConfigurableListableBeanFactory beanFactory, String strBeanName, BeanDefinition beanDefinition )
+    {
+        if ( !( beanDefinition instanceof AbstractBeanDefinition ) || !beanDefinition.isSingleton( ) || beanDefinition.isAbstract( )
+                || beanDefinition.isLazyInit( ) || beanDefinition.getRole( ) == BeanDefinition.ROLE_INFRASTRUCTURE
+                || _setExcludedBeanNames.contains( strBeanName ) )
+        {
+            return false;
+        }
+
+        try
+        {
+            Class<?> beanType = beanFactory.getType( strBeanName, false );
+
+            return beanType == null || !SmartInitializingSingleton.class.isAssignableFrom( beanType );
+        }
+        catch( BeansException e )
+        {
+            // The type cannot be predicted : keep the default behavior
+            return false;
+        }
+    }
+}
@@ -0,0 +1,477 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Instrumentation of the bean lookups of the {@link SpringContextService} : number of calls, cumulated time and latency histogram per bean name or type,
+ * and call sites of the getBeansOfType calls missing the cache. Counters are {@link LongAdder}s, so that concurrent lookups do not contend. The metrics are
+ * exposed as a JMX MBean and periodically logged.
+ * <p>
+ * When the metrics are disabled, the recording methods only read a static field : <code>begin</code> returns 0 and the other methods return immediately.
+ */
+public final class LookupMetrics implements LookupMetricsMBean
+{
+    private static final String PROPERTY_METRICS_ENABLED = "spring-extension.metrics.enabled";
+    private static final String PROPERTY_METRICS_LOG_PERIOD = "spring-extension.metrics.logPeriod";
+    private static final String PROPERTY_METRICS_LOG_TOP = "spring-extension.metrics.logTop";
+    private static final String OBJECT_NAME = "fr.paris.lutece.portal.service.spring:type=LookupMetrics";
+    private static final String THREAD_NAME_LOGGER = "spring-lookup-metrics";
+    private static final String PACKAGE_SPRING_SERVICE = SpringContextService.class.getPackage( ).getName( ) + ".";
+    private static final String KEY_GET_BEAN = "getBean ";
+    private static final String KEY_GET_BEANS_OF_TYPE = "getBeansOfType ";
+    private static final String KEY_IS_BEAN_ENABLED = "isBeanEnabled ";
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long [ ] BUCKET_BOUNDS = {
+            1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L
+    };
+    private static final String [ ] BUCKET_LABELS = {
+            "<1us", "<10us", "<100us", "<1ms", "<10ms", "<100ms", ">=100ms"
+    };
+    private static volatile LookupMetrics _metrics;
+
+    private final Map<String, LookupStats> _mapStats = new ConcurrentHashMap<>( );
+    private final Map<String, LongAdder> _mapMissCallSites = new ConcurrentHashMap<>( );
+    private final LongAdder _getBeanCount = new LongAdder( );
+    private final LongAdder _getBeansOfTypeCount = new LongAdder( );
+    private final LongAdder _isBeanEnabledCount = new LongAdder( );
+    private final LongAdder _cacheMissCount = new LongAdder( );
+    private final int _nLogTop;
+    private ScheduledExecutorService _logger;
+
+    /**
+     * Constructor
+     * 
+     * @param nLogTop
+     *            the number of lookups in the periodic log
+     */
+    private LookupMetrics( int nLogTop )
+    {
+        _nLogTop = nLogTop;
+    }
+
+    /**
+     * Starts the instrumentation if it is enabled
+     */
+    static synchronized void start( )
+    {
+        if ( _metrics != null || !AppPropertiesService.getPropertyBoolean( PROPERTY_METRICS_ENABLED, false ) )
+        {
+            return;
+        }
+
+        LookupMetrics metrics = new LookupMetrics( AppPropertiesService.getPropertyInt( PROPERTY_METRICS_LOG_TOP, 10 ) );
+        metrics.register( );
+        metrics.startLogger( AppPropertiesService.getPropertyInt( PROPERTY_METRICS_LOG_PERIOD, 300 ) );
+        _metrics = metrics;
+        AppLogService.info( "Spring lookup metrics started" );
+    }
+
+    /**
+     * Stops the instrumentation
+     */
+    static synchronized void stop( )
+    {
+        LookupMetrics metrics = _metrics;
+        _metrics = null;
+
+        if ( metrics != null )
+        {
+            if ( metrics._logger != null )
+            {
+                metrics._logger.shutdownNow( );
+            }
+
+            metrics.unregister( );
+        }
+    }
+
+    /**
+     * Gets the start time of a lookup
+     * 
+     * @return the current time in nanoseconds, 0 if the metrics are disabled
+     */
+    static long begin( )
+    {
+        return ( _metrics != null ) ? System.nanoTime( ) : 0L;
+    }
+
+    /**
+     * Records a getBean call
+     * 
+     * @param strBeanName
+     *            the bean name
+     * @param lStart
+     *            the start time returned by {@link #begin()}
+     */
+    static void recordGetBean( String strBeanName, long lStart )
+    {
+        LookupMetrics metrics = _metrics;
+
+        if ( metrics != null )
+        {
+            metrics._getBeanCount.increment( );
+            metrics.record( KEY_GET_BEAN, strBeanName, lStart );
+        }
+    }
+
+    /**
+     * Records a getBeansOfType call
+     * 
+     * @param classDef
+     *            the type
+     * @param lStart
+     *            the start time returned by {@link #begin()}
+     */
+    static void recordGetBeansOfType( Class<?> classDef, long lStart )
+    {
+        LookupMetrics metrics = _metrics;
+
+        if ( metrics != null )
+        {
+            metrics._getBeansOfTypeCount.increment( );
+            metrics.record( KEY_GET_BEANS_OF_TYPE, classDef.getName( ), lStart );
+        }
+    }
+
+    /**
+     * Records an isBeanEnabled call
+     * 
+     * @param strBeanName
+     *            the bean name
+     * @param lStart
+     *            the start time returned by {@link #begin()}
+     */
+    static void recordIsBeanEnabled( String strBeanName, long lStart )
+    {
+        LookupMetrics metrics = _metrics;
+
+        if ( metrics != null )
+        {
+            metrics._isBeanEnabledCount.increment( );
+            metrics.record( KEY_IS_BEAN_ENABLED, strBeanName, lStart );
+        }
+    }
+
+    /**
+     * Records a getBeansOfType call missing the cache, with its call site : the first caller outside of this package
+     */
+    static void recordCacheMiss( )
+    {
+        LookupMetrics metrics = _metrics;
+
+        if ( metrics != null )
+        {
+            String strCallSite = StackWalker.getInstance( )
+                    .walk( frames -> frames.filter( frame -> !frame.getClassName( ).startsWith( PACKAGE_SPRING_SERVICE ) ).findFirst( )
+                            .map( frame -> frame.getClassName( ) + "." + frame.getMethodName( ) + ":" + frame.getLineNumber( ) ).orElse( "unknown" ) );
+
+            metrics._cacheMissCount.increment( );
+            metrics._mapMissCallSites.computeIfAbsent( strCallSite, k -> new LongAdder( ) ).increment( );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getGetBeanCount( )
+    {
+        return _getBeanCount.sum( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getGetBeansOfTypeCount( )
+    {
+        return _getBeansOfTypeCount.sum( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getIsBeanEnabledCount( )
+    {
+        return _isBeanEnabledCount.sum( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBeansOfTypeCacheMissCount( )
+    {
+        return _cacheMissCount.sum( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String [ ] getTopLookups( )
+    {
+        return getTopLookups( Integer.MAX_VALUE ).toArray( new String [ 0] );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String [ ] getCacheMissCallSites( )
+    {
+        return _mapMissCallSites.entrySet( ).stream( ).sorted( Comparator.comparingLong( entry -> -entry.getValue( ).sum( ) ) )
+                .map( entry -> entry.getKey( ) + " : " + entry.getValue( ).sum( ) + " misses" ).toArray( String [ ]::new );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset( )
+    {
+        _mapStats.clear( );
+        _mapMissCallSites.clear( );
+        _getBeanCount.reset( );
+        _getBeansOfTypeCount.reset( );
+        _isBeanEnabledCount.reset( );
+        _cacheMissCount.reset( );
+    }
+
+    /**
+     * Records a lookup
+     * 
+     * @param strKind
+     *            the kind of lookup
+     * @param strKey
+     *            the bean name or type
+     * @param lStart
+     *            the start time
+     */
+    private void record( String strKind, String strKey, long lStart )
+    {
+        long lDuration = System.nanoTime( ) - lStart;
+        LookupStats stats = _mapStats.get( strKind + strKey );
+
+        if ( stats == null )
+        {
+            stats = _mapStats.computeIfAbsent( strKind + strKey, k -> new LookupStats( ) );
+        }
+
+        stats.record( lDuration );
+    }
+
+    /**
+     * Gets the most frequent lookups
+     * 
+     * @param nTop
+     *            the maximum number of lookups
+     * @return one line per lookup, most frequent first
+     */
+    private List<String> getTopLookups( int nTop )
+    {
+        return _mapStats.entrySet( ).stream( ).sorted( Comparator.comparingLong( entry -> -entry.getValue( )._count.sum( ) ) ).limit( nTop )
+                .map( entry -> entry.getKey( ) + " : " + entry.getValue( ) ).collect( Collectors.toList( ) );
+    }
+
+    /**
+     * Logs a summary of the metrics
+     */
+    private void logSummary( )
+    {
+        AppLogService.info( "Spring lookups : getBean {}, getBeansOfType {} ({} cache misses), isBeanEnabled {}", getGetBeanCount( ),
+                getGetBeansOfTypeCount( ), getBeansOfTypeCacheMissCount( ), getIsBeanEnabledCount( ) );
+
+        for ( String strLookup : getTopLookups( _nLogTop ) )
+        {
+            AppLogService.info( "  {}", strLookup );
+        }
+
+        String [ ] strCallSites = getCacheMissCallSites( );
+
+        for ( int i = 0; i < strCallSites.length && i < _nLogTop; i++ )
+        {
+            AppLogService.info( "  cache miss at {}", strCallSites [i] );
+        }
+    }
+
+    /**
+     * Starts the periodic log of the summary
+     * 
+     * @param nPeriod
+     *            the period in seconds, 0 to disable the log
+     */
+    private void startLogger( int nPeriod )
+    {
+        if ( nPeriod <= 0 )
+        {
+            return;
+        }
+
+        _logger = Executors.newSingleThreadScheduledExecutor( runnable -> {
+            Thread thread = new Thread( runnable, THREAD_NAME_LOGGER );
+            thread.setDaemon( true );
+
+            return thread;
+        } );
+        _logger.scheduleAtFixedRate( this::logSummary, nPeriod, nPeriod, TimeUnit.SECONDS );
+    }
+
+    /**
+     * Registers the MBean
+     */
+    private void register( )
+    {
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer( );
+            ObjectName objectName = new ObjectName( OBJECT_NAME );
+
+            // A previous deployment of the webapp in the same JVM may not have been stopped
+            if ( server.isRegistered( objectName ) )
+            {
+                server.unregisterMBean( objectName );
+            }
+
+            server.registerMBean( this, objectName );
+        }
+        catch( JMException e )
+        {
+            AppLogService.error( "Unable to register the Spring lookup metrics MBean - cause : {}", e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Unregisters the MBean
+     */
+    private void unregister( )
+    {
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer( );
+            ObjectName objectName = new ObjectName( OBJECT_NAME );
+
+            if ( server.isRegistered( objectName ) )
+            {
+                server.unregisterMBean( objectName );
+            }
+        }
+        catch( JMException e )
+        {
+            AppLogService.error( "Unable to unregister the Spring lookup metrics MBean - cause : {}", e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Statistics of a lookup : number of calls, cumulated time and latency histogram
+     */
+    private static final class LookupStats
+    {
+        private final LongAdder _count = new LongAdder( );
+        private final LongAdder _totalNanos = new LongAdder( );
+        private final LongAdder [ ] _buckets = new LongAdder [ BUCKET_LABELS.length];
+
+        /**
+         * Constructor
+         */
+        LookupStats( )
+        {
+            for ( int i = 0; i < _buckets.length; i++ )
+            {
+                _buckets [i] = new LongAdder( );
+            }
+        }
+
+        /**
+         * Records a call
+         * 
+         * @param lDuration
+         *            the duration in nanoseconds
+         */
+        void record( long lDuration )
+        {
+            int nBucket = 0;
+
+            while ( nBucket < BUCKET_BOUNDS.length && lDuration >= BUCKET_BOUNDS [nBucket] )
+            {
+                nBucket++;
+            }
+
+            _count.increment( );
+            _totalNanos.add( lDuration );
+            _buckets [nBucket].increment( );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString( )
+        {
+            StringBuilder sbStats = new StringBuilder( );
+            sbStats.append( _count.sum( ) ).append( " calls, " ).append( _totalNanos.sum( ) / NANOS_PER_MILLI ).append( " ms" );
+
+            for ( int i = 0; i < _buckets.length; i++ )
+            {
+                long lCount = _buckets [i].sum( );
+
+                if ( lCount > 0 )
+                {
+                    sbStats.append( ", " ).append( BUCKET_LABELS [i] ).append( " " ).append( lCount );
+                }
+            }
+
+            return sbStats.toString( );
+        }
+    }
+}
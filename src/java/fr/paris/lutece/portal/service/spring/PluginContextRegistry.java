@@ -0,0 +1,682 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.PlaceholderConfigurerSupport;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Registry of the plugin contexts. Each plugin context file is loaded into its own child context of the core context. The definitions of a child context
+ * are registered at startup, but the context is only refreshed, and its beans created, when the plugin is installed. It is closed and its beans released
+ * when the plugin is uninstalled.
+ * <p>
+ * A plugin context can also be reloaded from its file : a new context is built and swapped in, while the previous one is closed after a grace delay so
+ * that in-flight requests can keep using its beans. When plugin contexts are not enabled, a reloaded file gets a plugin context overriding the
+ * definitions of the file in the core context.
+ * <p>
+ * Plugin contexts are siblings : the beans of a plugin context can only reference the beans of their own context and of the core context. A context file
+ * defining beans referenced by the core context or by another context file, as the beans of a plugin are by the files of its modules, is therefore kept
+ * in the core context instead of getting its own plugin context (see {@link #getSharedContextFiles(BeanDefinitionRegistry, Map)}).
+ */
+final class PluginContextRegistry
+{
+    private static final String THREAD_NAME_CLOSER = "spring-context-closer";
+
+    private final GenericApplicationContext _parentContext;
+    private final long _lCloseDelay;
+    private final boolean _bTypeIndex;
+    private ScheduledExecutorService _closer;
+    private final Map<String, PluginContext> _mapPluginContexts = new ConcurrentHashMap<>( );
+    private final Object _lockBindings = new Object( );
+    private volatile Bindings _bindings = new Bindings( Collections.emptyMap( ), Collections.emptyMap( ) );
+
+    /**
+     * Constructor
+     * 
+     * @param parentContext
+     *            the core context, parent of the plugin contexts
+     * @param lCloseDelay
+     *            the delay in seconds before a replaced context is closed
+     * @param bTypeIndex
+     *            true to index the beans of the started contexts by type
+     */
+    PluginContextRegistry( GenericApplicationContext parentContext, long lCloseDelay, boolean bTypeIndex )
+    {
+        _parentContext = parentContext;
+        _lCloseDelay = lCloseDelay;
+        _bTypeIndex = bTypeIndex;
+    }
+
+    /**
+     * Gets the plugin name of a context file. Per Lutece convention, the context file of a plugin is named [plugin_name]_context.xml
+     * 
+     * @param strContextFile
+     *            the context file path
+     * @param strSuffix
+     *            the context files suffix
+     * @return the plugin name
+     */
+    static String getPluginName( String strContextFile, String strSuffix )
+    {
+        String strFileName = Paths.get( strContextFile ).getFileName( ).toString( );
+
+        return strFileName.substring( 0, strFileName.length( ) - strSuffix.length( ) );
+    }
+
+    /**
+     * Gets the context files defining beans that are referenced from outside the file, by the core context or by another context file. These files must
+     * be loaded into the core context, since a plugin context does not see the beans of the other plugin contexts.
+     * 
+     * @param parentRegistry
+     *            the core context holding the core definitions
+     * @param mapStaged
+     *            the staged definitions by context file path
+     * @return the paths of the context files to load into the core context
+     */
+    static Set<String> getSharedContextFiles( BeanDefinitionRegistry parentRegistry, Map<String, StagingBeanDefinitionRegistry> mapStaged )
+    {
+        Map<String, List<String>> mapDefiningFiles = new HashMap<>( );
+
+        for ( Map.Entry<String, StagingBeanDefinitionRegistry> entry : mapStaged.entrySet( ) )
+        {
+            StagingBeanDefinitionRegistry staging = entry.getValue( );
+
+            for ( String strBeanName : staging.getBeanDefinitionNames( ) )
+            {
+                mapDefiningFiles.computeIfAbsent( strBeanName, strName -> new ArrayList<>( ) ).add( entry.getKey( ) );
+
+                for ( String strAlias : staging.getAliases( strBeanName ) )
+                {
+                    mapDefiningFiles.computeIfAbsent( strAlias, strName -> new ArrayList<>( ) ).add( entry.getKey( ) );
+                }
+            }
+        }
+
+        Set<String> setShared = new LinkedHashSet<>( );
+        addReferencedFiles( parentRegistry, mapDefiningFiles, setShared );
+
+        for ( StagingBeanDefinitionRegistry staging : mapStaged.values( ) )
+        {
+            addReferencedFiles( staging, mapDefiningFiles, setShared );
+        }
+
+        return setShared;
+    }
+
+    /**
+     * Adds the context files defining the beans referenced by a registry and not defined by the registry itself
+     * 
+     * @param registry
+     *            the registry
+     * @param mapDefiningFiles
+     *            the context files defining each bean name or alias
+     * @param setShared
+     *            the referenced context files
+     */
+    private static void addReferencedFiles( BeanDefinitionRegistry registry, Map<String, List<String>> mapDefiningFiles, Set<String> setShared )
+    {
+        Set<String> setReferences = new HashSet<>( );
+
+        for ( String strBeanName : registry.getBeanDefinitionNames( ) )
+        {
+            BeanDefinition beanDefinition = registry.getBeanDefinition( strBeanName );
+            SingletonDependencyGraph.collectReferences( beanDefinition, setReferences );
+
+            if ( beanDefinition.getParentName( ) != null )
+            {
+                setReferences.add( beanDefinition.getParentName( ) );
+            }
+        }
+
+        for ( String strReference : setReferences )
+        {
+            List<String> listFiles = mapDefiningFiles.get( strReference );
+
+            if ( listFiles != null && !registry.isBeanNameInUse( strReference ) )
+            {
+                setShared.addAll( listFiles );
+            }
+        }
+    }
+
+    /**
+     * Registers a plugin context
+     * 
+     * @param strPluginName
+     *            the plugin name
+     * @param strContextFile
+     *            the context file path
+     * @param staging
+     *            the staged definitions of the context file
+     */
+    void register( String strPluginName, String strContextFile, StagingBeanDefinitionRegistry staging )
+    {
+        PluginContext pluginContext = new PluginContext( strPluginName, strContextFile );
+        GenericWebApplicationContext context = pluginContext.createContext( );
+        staging.copyTo( context );
+        pluginContext.prepare( context );
+        pluginContext.bind( context );
+        _mapPluginContexts.put( strPluginName, pluginContext );
+        AppLogService.info( "Context file registered for plugin {} : {}", strPluginName, strContextFile );
+    }
+
+    /**
+     * Gets the plugin context defining a bean
+     * 
+     * @param strBeanName
+     *            the bean name or alias
+     * @return the plugin context, or <code>null</code> if the bean is not defined by a plugin context
+     */
+    PluginContext getOwner( String strBeanName )
+    {
+        return _bindings._mapBeanOwners.get( strBeanName );
+    }
+
+    /**
+     * Gets the context of the plugin defining a bean. The owner and its context are read from the same bindings, so that the context always defines the
+     * bean even while the plugin context is swapped.
+     * 
+     * @param strBeanName
+     *            the bean name or alias
+     * @return the context, or <code>null</code> if the bean is not defined by a plugin context
+     */
+    GenericWebApplicationContext getOwnerContext( String strBeanName )
+    {
+        Bindings bindings = _bindings;
+        PluginContext owner = bindings._mapBeanOwners.get( strBeanName );
+
+        return ( owner != null ) ? bindings._mapContexts.get( owner ) : null;
+    }
+
+    /**
+     * Gets the plugin context of a plugin
+     * 
+     * @param strPluginName
+     *            the plugin name
+     * @return the plugin context, or <code>null</code> if the plugin has no context file
+     */
+    PluginContext getPluginContext( String strPluginName )
+    {
+        return _mapPluginContexts.get( strPluginName );
+    }
+
+    /**
+     * Gets all the plugin contexts
+     * 
+     * @return the plugin contexts
+     */
+    Collection<PluginContext> getPluginContexts( )
+    {
+        return Collections.unmodifiableCollection( _mapPluginContexts.values( ) );
+    }
+
+    /**
+     * Refreshes the context of a plugin
+     * 
+     * @param strPluginName
+     *            the plugin name
+     */
+    void activate( String strPluginName )
+    {
+        PluginContext pluginContext = _mapPluginContexts.get( strPluginName );
+
+        if ( pluginContext != null )
+        {
+            pluginContext.activate( );
+        }
+    }
+
+    /**
+     * Closes the context of a plugin and prepares a new one, ready to be refreshed if the plugin is installed again
+     * 
+     * @param strPluginName
+     *            the plugin name
+     */
+    void deactivate( String strPluginName )
+    {
+        PluginContext pluginContext = _mapPluginContexts.get( strPluginName );
+
+        if ( pluginContext != null )
+        {
+            pluginContext.deactivate( );
+        }
+    }
+
+    /**
+     * Reloads the context of a plugin from its context file. The context is registered if the plugin has no context yet.
+     * 
+     * @param strPluginName
+     *            the plugin name
+     * @param strContextFile
+     *            the context file path
+     * @param bStart
+     *            true to start the new context
+     */
+    void reload( String strPluginName, String strContextFile, boolean bStart )
+    {
+        PluginContext pluginContext = _mapPluginContexts.computeIfAbsent( strPluginName, strName -> new PluginContext( strName, strContextFile ) );
+        pluginContext.reload( bStart );
+    }
+
+    /**
+     * Closes all the plugin contexts, including the replaced contexts waiting to be closed
+     */
+    void close( )
+    {
+        synchronized( this )
+        {
+            if ( _closer != null )
+            {
+                for ( Runnable closing : _closer.shutdownNow( ) )
+                {
+                    closing.run( );
+                }
+            }
+        }
+
+        for ( PluginContext pluginContext : _mapPluginContexts.values( ) )
+        {
+            pluginContext.close( );
+        }
+    }
+
+    /**
+     * Closes a replaced context once the grace delay has elapsed
+     * 
+     * @param context
+     *            the replaced context
+     */
+    private synchronized void scheduleClose( GenericWebApplicationContext context )
+    {
+        if ( _closer == null )
+        {
+            _closer = Executors.newSingleThreadScheduledExecutor( runnable -> {
+                Thread thread = new Thread( runnable, THREAD_NAME_CLOSER );
+                thread.setDaemon( true );
+
+                return thread;
+            } );
+        }
+
+        _closer.schedule( context::close, _lCloseDelay, TimeUnit.SECONDS );
+    }
+
+    /**
+     * The context of a plugin
+     */
+    final class PluginContext
+    {
+        private final String _strPluginName;
+        private final String _strContextFile;
+        private volatile BeanTypeIndex _typeIndex;
+        private volatile boolean _bActive;
+
+        /**
+         * Constructor
+         * 
+         * @param strPluginName
+         *            the plugin name
+         * @param strContextFile
+         *            the context file path
+         */
+        private PluginContext( String strPluginName, String strContextFile )
+        {
+            _strPluginName = strPluginName;
+            _strContextFile = strContextFile;
+        }
+
+        /**
+         * Gets the plugin name
+         * 
+         * @return the plugin name
+         */
+        String getPluginName( )
+        {
+            return _strPluginName;
+        }
+
+        /**
+         * Gets the context file path
+         * 
+         * @return the context file path
+         */
+        String getContextFile( )
+        {
+            return _strContextFile;
+        }
+
+        /**
+         * Gets the context. The context may not be refreshed : only its definitions are then available.
+         * 
+         * @return the context
+         */
+        GenericWebApplicationContext getContext( )
+        {
+            return _bindings._mapContexts.get( this );
+        }
+
+        /**
+         * Gets the beans of the context matching a type. The context must be refreshed.
+         * 
+         * @param <T>
+         *            the type
+         * @param classDef
+         *            the type
+         * @return the beans by name
+         */
+        <T> Map<String, T> getBeansOfType( Class<T> classDef )
+        {
+            BeanTypeIndex typeIndex = _typeIndex;
+
+            return ( typeIndex != null ) ? typeIndex.getBeansOfType( classDef ) : getContext( ).getBeansOfType( classDef );
+        }
+
+        /**
+         * Gets the names of the beans of the context matching a type, without creating them. The context must be refreshed.
+         * 
+         * @param classDef
+         *            the type
+         * @return the bean names
+         */
+        List<String> getBeanNamesForType( Class<?> classDef )
+        {
+            BeanTypeIndex typeIndex = _typeIndex;
+
+            return ( typeIndex != null ) ? typeIndex.getBeanNamesForType( classDef ) : Arrays.asList( getContext( ).getBeanNamesForType( classDef ) );
+        }
+
+        /**
+         * Indicates whether the context is refreshed
+         * 
+         * @return true if the context is refreshed
+         */
+        boolean isActive( )
+        {
+            return _bActive;
+        }
+
+        /**
+         * Refreshes the context if it is not already refreshed
+         */
+        synchronized void activate( )
+        {
+            if ( _bActive )
+            {
+                return;
+            }
+
+            GenericWebApplicationContext context = getContext( );
+            start( context );
+            _typeIndex = buildTypeIndex( context );
+            _bActive = true;
+            AppLogService.info( "Spring context started for plugin {}", _strPluginName );
+        }
+
+        /**
+         * Closes the context if it is refreshed, and replaces it by a new context holding the definitions of the context file
+         */
+        synchronized void deactivate( )
+        {
+            if ( !_bActive )
+            {
+                return;
+            }
+
+            GenericWebApplicationContext context = loadContext( );
+            GenericWebApplicationContext contextClosed = getContext( );
+            bind( context );
+            _typeIndex = null;
+            _bActive = false;
+            contextClosed.close( );
+            AppLogService.info( "Spring context closed for plugin {}", _strPluginName );
+        }
+
+        /**
+         * Builds a new context from the context file and swaps it in place of the current one. The current context is closed after the grace delay. If
+         * the new context cannot be built or started, the current context is left untouched.
+         * 
+         * @param bStart
+         *            true to start the new context
+         */
+        synchronized void reload( boolean bStart )
+        {
+            GenericWebApplicationContext context = loadContext( );
+            BeanTypeIndex typeIndex = null;
+
+            if ( bStart )
+            {
+                start( context );
+                typeIndex = buildTypeIndex( context );
+            }
+
+            GenericWebApplicationContext contextReplaced = getContext( );
+            boolean bWasActive = _bActive;
+            bind( context );
+            _typeIndex = typeIndex;
+            _bActive = bStart;
+
+            if ( bWasActive )
+            {
+                scheduleClose( contextReplaced );
+            }
+
+            AppLogService.info( "Spring context reloaded for plugin {} : {}", _strPluginName, _strContextFile );
+        }
+
+        /**
+         * Closes the context
+         */
+        synchronized void close( )
+        {
+            if ( _bActive )
+            {
+                _typeIndex = null;
+                getContext( ).close( );
+                _bActive = false;
+            }
+        }
+
+        /**
+         * Creates a new, empty, child context of the core context
+         * 
+         * @return the context
+         */
+        private GenericWebApplicationContext createContext( )
+        {
+            GenericWebApplicationContext context = new GenericWebApplicationContext( );
+            context.setParent( _parentContext );
+            context.setId( _parentContext.getId( ) + ":" + _strPluginName );
+            context.setDisplayName( "Plugin context " + _strPluginName );
+
+            return context;
+        }
+
+        /**
+         * Creates a new child context holding the definitions of the context file
+         * 
+         * @return the context
+         */
+        private GenericWebApplicationContext loadContext( )
+        {
+            GenericWebApplicationContext context = createContext( );
+            XmlBeanDefinitionReader xmlReader = new XmlBeanDefinitionReader( context );
+            xmlReader.loadBeanDefinitions( SpringContextService.PROTOCOL_FILE + _strContextFile );
+            prepare( context );
+
+            return context;
+        }
+
+        /**
+         * Registers the annotation processors if the core context uses them, since bean post processors are not inherited from the parent context
+         * 
+         * @param context
+         *            the context holding the plugin definitions
+         */
+        private void prepare( GenericWebApplicationContext context )
+        {
+            if ( _parentContext.containsBeanDefinition( AnnotationConfigUtils.AUTOWIRED_ANNOTATION_PROCESSOR_BEAN_NAME ) )
+            {
+                AnnotationConfigUtils.registerAnnotationConfigProcessors( context );
+            }
+        }
+
+        /**
+         * Refreshes a context. Placeholders of the plugin definitions are resolved by the configurers of the core context.
+         * 
+         * @param context
+         *            the context
+         */
+        private void start( GenericWebApplicationContext context )
+        {
+            for ( PlaceholderConfigurerSupport configurer : _parentContext.getBeansOfType( PlaceholderConfigurerSupport.class, false, false ).values( ) )
+            {
+                context.addBeanFactoryPostProcessor( configurer );
+            }
+
+            context.refresh( );
+        }
+
+        /**
+         * Indexes the beans of a started context by type, if the type index is enabled
+         * 
+         * @param context
+         *            the started context
+         * @return the index, or null
+         */
+        private BeanTypeIndex buildTypeIndex( GenericWebApplicationContext context )
+        {
+            return _bTypeIndex ? BeanTypeIndex.build( context.getBeanFactory( ), null ) : null;
+        }
+
+        /**
+         * Binds a context to this plugin and indexes its bean names. New bindings are built and published at once, so that readers either see the
+         * previous context and its bean names, or the new ones.
+         * 
+         * @param context
+         *            the context holding the plugin definitions
+         */
+        private void bind( GenericWebApplicationContext context )
+        {
+            List<String> listNames = getLocalNames( context );
+
+            synchronized( _lockBindings )
+            {
+                Bindings bindings = _bindings;
+                Map<String, PluginContext> mapBeanOwners = new HashMap<>( bindings._mapBeanOwners );
+                mapBeanOwners.values( ).removeIf( owner -> owner == this );
+
+                for ( String strBeanName : listNames )
+                {
+                    mapBeanOwners.put( strBeanName, this );
+                }
+
+                Map<PluginContext, GenericWebApplicationContext> mapContexts = new HashMap<>( bindings._mapContexts );
+                mapContexts.put( this, context );
+                _bindings = new Bindings( mapBeanOwners, mapContexts );
+            }
+        }
+
+        /**
+         * Gets the names and aliases of the application beans defined by a context
+         * 
+         * @param registry
+         *            the context
+         * @return the names and aliases
+         */
+        private List<String> getLocalNames( BeanDefinitionRegistry registry )
+        {
+            List<String> listNames = new ArrayList<>( );
+
+            for ( String strBeanName : registry.getBeanDefinitionNames( ) )
+            {
+                if ( registry.getBeanDefinition( strBeanName ).getRole( ) == BeanDefinition.ROLE_INFRASTRUCTURE )
+                {
+                    continue;
+                }
+
+                listNames.add( strBeanName );
+                Collections.addAll( listNames, registry.getAliases( strBeanName ) );
+            }
+
+            return listNames;
+        }
+    }
+
+    /**
+     * Immutable bindings of the plugin contexts : the plugin context defining each bean name, and the current context of each plugin context. Bindings
+     * are replaced as a whole when a plugin context is bound to a new context.
+     */
+    private static final class Bindings
+    {
+        private final Map<String, PluginContext> _mapBeanOwners;
+        private final Map<PluginContext, GenericWebApplicationContext> _mapContexts;
+
+        /**
+         * Constructor
+         * 
+         * @param mapBeanOwners
+         *            the plugin context defining each bean name or alias
+         * @param mapContexts
+         *            the current context of each plugin context
+         */
+        private Bindings( Map<String, PluginContext> mapBeanOwners, Map<PluginContext, GenericWebApplicationContext> mapContexts )
+        {
+            _mapBeanOwners = Collections.unmodifiableMap( mapBeanOwners );
+            _mapContexts = Collections.unmodifiableMap( mapContexts );
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.plugin.PluginService;
+
+/**
+ * Enablement of the beans by plugin. Per Lutece convention, a bean named [plugin_name].[bean_name] belongs to a plugin and is only enabled when the plugin is
+ * installed. Each bean name is mapped once to the ordinal of its plugin, and the enablement of the plugins is kept in bitsets : checking a known bean
+ * name neither allocates nor calls the plugin service. The mapped bean names are forgotten when the lookups are invalidated, so that names probed once,
+ * such as missing beans or beans of a replaced context file, are not kept.
+ * <p>
+ * The state of a plugin is read from the plugin service the first time it is needed, then updated by the plugin events. Bitsets are replaced on each
+ * update, so that readers never lock.
+ */
+final class PluginEnablementIndex
+{
+    private static final int NO_PLUGIN = -1;
+
+    private final Map<String, Integer> _mapBeanPlugins = new ConcurrentHashMap<>( );
+    private final Map<String, Integer> _mapPluginOrdinals = new ConcurrentHashMap<>( );
+    private volatile String [ ] _strPluginNames = new String [ 0];
+    private volatile PluginStates _states = new PluginStates( new BitSet( ), new BitSet( ) );
+
+    /**
+     * Maps bean names to their plugin ahead of the lookups
+     * 
+     * @param strBeanNames
+     *            the bean names
+     */
+    void addBeanNames( String [ ] strBeanNames )
+    {
+        for ( String strBeanName : strBeanNames )
+        {
+            getPluginOrdinal( strBeanName );
+        }
+    }
+
+    /**
+     * Forgets the bean names mapped to their plugin. The names are mapped again on their next lookup, the plugin states are kept.
+     */
+    void clearBeanNames( )
+    {
+        _mapBeanPlugins.clear( );
+    }
+
+    /**
+     * Gets the number of bean names mapped to their plugin
+     * 
+     * @return the number of bean names
+     */
+    int getBeanNameCount( )
+    {
+        return _mapBeanPlugins.size( );
+    }
+
+    /**
+     * Indicates whether a bean is enabled : it does not belong to a plugin or its plugin is installed
+     * 
+     * @param strBeanName
+     *            the bean name
+     * @return true if the bean is enabled
+     */
+    boolean isBeanEnabled( String strBeanName )
+    {
+        int nPlugin = getPluginOrdinal( strBeanName );
+
+        return nPlugin == NO_PLUGIN || isPluginEnabled( nPlugin );
+    }
+
+    /**
+     * Gets the plugin a bean belongs to, according to its name prefix
+     * 
+     * @param strBeanName
+     *            the bean name
+     * @return the plugin name, or null if the bean name has no prefix
+     */
+    String getPluginName( String strBeanName )
+    {
+        int nPlugin = getPluginOrdinal( strBeanName );
+
+        return ( nPlugin == NO_PLUGIN ) ? null : _strPluginNames [nPlugin];
+    }
+
+    /**
+     * Indicates whether a plugin is installed
+     * 
+     * @param strPluginName
+     *            the plugin name
+     * @return true if the plugin is installed
+     */
+    boolean isPluginEnabled( String strPluginName )
+    {
+        Integer nPlugin = _mapPluginOrdinals.get( strPluginName );
+
+        return isPluginEnabled( ( nPlugin != null ) ? nPlugin : _mapPluginOrdinals.computeIfAbsent( strPluginName, this::addPlugin ) );
+    }
+
+    /**
+     * Updates the state of a plugin
+     * 
+     * @param strPluginName
+     *            the plugin name
+     * @param bEnabled
+     *            true if the plugin is installed
+     */
+    void setPluginEnabled( String strPluginName, boolean bEnabled )
+    {
+        setPluginEnabled( _mapPluginOrdinals.computeIfAbsent( strPluginName, this::addPlugin ), bEnabled, true );
+    }
+
+    /**
+     * Gets the ordinal of the plugin of a bean
+     * 
+     * @param strBeanName
+     *            the bean name
+     * @return the plugin ordinal, or NO_PLUGIN if the bean does not belong to a plugin
+     */
+    private int getPluginOrdinal( String strBeanName )
+    {
+        Integer nPlugin = _mapBeanPlugins.get( strBeanName );
+
+        return ( nPlugin != null ) ? nPlugin : _mapBeanPlugins.computeIfAbsent( strBeanName, this::resolvePluginOrdinal );
+    }
+
+    /**
+     * Resolves the plugin of a bean from its name prefix
+     * 
+     * @param strBeanName
+     *            the bean name
+     * @return the plugin ordinal, or NO_PLUGIN if the bean name has no prefix
+     */
+    private int resolvePluginOrdinal( String strBeanName )
+    {
+        int nPos = strBeanName.indexOf( '.' );
+
+        if ( nPos <= 0 )
+        {
+            return NO_PLUGIN;
+        }
+
+        return _mapPluginOrdinals.computeIfAbsent( strBeanName.substring( 0, nPos ), this::addPlugin );
+    }
+
+    /**
+     * Indicates whether a plugin is installed, reading its state from the plugin service if it is not known yet
+     * 
+     * @param nPlugin
+     *            the plugin ordinal
+     * @return true if the plugin is installed
+     */
+    private boolean isPluginEnabled( int nPlugin )
+    {
+        PluginStates states = _states;
+
+        if ( states._known.get( nPlugin ) )
+        {
+            return states._enabled.get( nPlugin );
+        }
+
+        Plugin plugin = PluginService.getPlugin( _strPluginNames [nPlugin] );
+
+        if ( plugin == null )
+        {
+            // The plugins may not be loaded yet : the state is not kept
+            return false;
+        }
+
+        boolean bEnabled = plugin.isInstalled( );
+        setPluginEnabled( nPlugin, bEnabled, false );
+
+        return bEnabled;
+    }
+
+    /**
+     * Updates the state of a plugin
+     * 
+     * @param nPlugin
+     *            the plugin ordinal
+     * @param bEnabled
+     *            true if the plugin is installed
+     * @param bOverride
+     *            false to keep a state set concurrently by a plugin event
+     */
+    private synchronized void setPluginEnabled( int nPlugin, boolean bEnabled, boolean bOverride )
+    {
+        if ( !bOverride && _states._known.get( nPlugin ) )
+        {
+            return;
+        }
+
+        BitSet known = (BitSet) _states._known.clone( );
+        BitSet enabled = (BitSet) _states._enabled.clone( );
+        known.set( nPlugin );
+        enabled.set( nPlugin, bEnabled );
+        _states = new PluginStates( known, enabled );
+    }
+
+    /**
+     * Assigns an ordinal to a plugin
+     * 
+     * @param strPluginName
+     *            the plugin name
+     * @return the ordinal
+     */
+    private synchronized int addPlugin( String strPluginName )
+    {
+        int nPlugin = _strPluginNames.length;
+        String [ ] strPluginNames = Arrays.copyOf( _strPluginNames, nPlugin + 1 );
+        strPluginNames [nPlugin] = strPluginName;
+        _strPluginNames = strPluginNames;
+
+        return nPlugin;
+    }
+
+    /**
+     * Immutable states of the plugins
+     */
+    private static final class PluginStates
+    {
+        private final BitSet _known;
+        private final BitSet _enabled;
+
+        /**
+         * Constructor
+         * 
+         * @param known
+         *            the plugins whose state is known
+         * @param enabled
+         *            the installed plugins
+         */
+        PluginStates( BitSet known, BitSet enabled )
+        {
+            _known = known;
+            _enabled = enabled;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+
+/**
+ * Application startup recording the <code>spring.beans.instantiate</code> steps of a bean factory into the {@link StartupRecorder}. Steps are nested
+ * per thread, so that the creation time of a bean can be measured with and without the creation of the dependencies it triggers. The other steps are not
+ * recorded.
+ */
+final class RecordingApplicationStartup implements ApplicationStartup
+{
+    private static final String STEP_BEANS_INSTANTIATE = "spring.beans.instantiate";
+    private static final String TAG_BEAN_NAME = "beanName";
+
+    private final StartupRecorder _recorder;
+    private final AtomicLong _lStepCount = new AtomicLong( );
+    private final ThreadLocal<BeanInstantiationStep> _currentStep = new ThreadLocal<>( );
+
+    /**
+     * Constructor
+     * 
+     * @param recorder
+     *            the recorder
+     */
+    RecordingApplicationStartup( StartupRecorder recorder )
+    {
+        _recorder = recorder;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StartupStep start( String strName )
+    {
+        if ( !STEP_BEANS_INSTANTIATE.equals( strName ) )
+        {
+            return ApplicationStartup.DEFAULT.start( strName );
+        }
+
+        BeanInstantiationStep step = new BeanInstantiationStep( _lStepCount.incrementAndGet( ), _currentStep.get( ) );
+        _currentStep.set( step );
+
+        return step;
+    }
+
+    /**
+     * Step measuring the creation of a bean
+     */
+    private final class BeanInstantiationStep implements StartupStep
+    {
+        private final long _lId;
+        private final BeanInstantiationStep _parent;
+        private final long _lStart = System.nanoTime( );
+        private String _strBeanName;
+        private long _lNestedDuration;
+
+        /**
+         * Constructor
+         * 
+         * @param lId
+         *            the step id
+         * @param parent
+         *            the step of the bean whose creation triggered this one, may be null
+         */
+        BeanInstantiationStep( long lId, BeanInstantiationStep parent )
+        {
+            _lId = lId;
+            _parent = parent;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getName( )
+        {
+            return STEP_BEANS_INSTANTIATE;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getId( )
+        {
+            return _lId;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Long getParentId( )
+        {
+            return ( _parent != null ) ? _parent._lId : null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public StartupStep tag( String strKey, String strValue )
+        {
+            if ( TAG_BEAN_NAME.equals( strKey ) && strValue != null )
+            {
+                _strBeanName = BeanFactoryUtils.transformedBeanName( strValue );
+            }
+
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public StartupStep tag( String strKey, Supplier<String> value )
+        {
+            return TAG_BEAN_NAME.equals( strKey ) ? tag( strKey, value.get( ) ) : this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Tags getTags( )
+        {
+            return Collections::emptyIterator;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void end( )
+        {
+            long lDuration = System.nanoTime( ) - _lStart;
+
+            if ( _parent != null )
+            {
+                _parent._lNestedDuration += lDuration;
+                _currentStep.set( _parent );
+            }
+            else
+            {
+                _currentStep.remove( );
+            }
+
+            if ( _strBeanName != null )
+            {
+                _recorder.recordBeanCreation( _strBeanName, _lStart, lDuration, lDuration - _lNestedDuration );
+            }
+        }
+    }
+}
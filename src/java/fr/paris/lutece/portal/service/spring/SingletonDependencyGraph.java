@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.config.ConstructorArgumentValues;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+/**
+ * Dependency graph of the eager singletons of a bean factory, built from their bean definitions. A singleton depends on the beans listed in its
+ * <code>depends-on</code> attribute, on its factory bean and on the beans referenced by its constructor arguments and properties, inner beans and
+ * collections included. Autowired dependencies are not known before the creation of the beans and are not part of the graph.
+ */
+final class SingletonDependencyGraph
+{
+    private final Map<String, Set<String>> _mapDependencies = new LinkedHashMap<>( );
+    private List<List<String>> _listLevels;
+
+    /**
+     * Private constructor
+     */
+    private SingletonDependencyGraph( )
+    {
+    }
+
+    /**
+     * Builds the dependency graph of the eager singletons of a bean factory
+     * 
+     * @param beanFactory
+     *            the bean factory
+     * @return the graph
+     */
+    static SingletonDependencyGraph build( DefaultListableBeanFactory beanFactory )
+    {
+        SingletonDependencyGraph graph = new SingletonDependencyGraph( );
+        Map<String, Set<String>> mapReferences = new LinkedHashMap<>( );
+
+        for ( String strBeanName : beanFactory.getBeanDefinitionNames( ) )
+        {
+            BeanDefinition beanDefinition = beanFactory.getMergedBeanDefinition( strBeanName );
+
+            if ( !beanDefinition.isAbstract( ) && beanDefinition.isSingleton( ) && !beanDefinition.isLazyInit( ) )
+            {
+                Set<String> setReferences = new LinkedHashSet<>( );
+                collectReferences( beanDefinition, setReferences );
+                mapReferences.put( strBeanName, setReferences );
+            }
+        }
+
+        // Only the dependencies between eager singletons order their creation
+        for ( Map.Entry<String, Set<String>> entry : mapReferences.entrySet( ) )
+        {
+            Set<String> setDependencies = new LinkedHashSet<>( );
+
+            for ( String strReference : entry.getValue( ) )
+            {
+                String strDependency = beanFactory.canonicalName( strReference );
+
+                if ( !strDependency.equals( entry.getKey( ) ) && mapReferences.containsKey( strDependency ) )
+                {
+                    setDependencies.add( strDependency );
+                }
+            }
+
+            graph._mapDependencies.put( entry.getKey( ), setDependencies );
+        }
+
+        graph._listLevels = graph.sortByLevels( );
+
+        return graph;
+    }
+
+    /**
+     * Gets the singletons grouped by level : the singletons of a level only depend on singletons of the previous levels and are independent of each other
+     * 
+     * @return the levels, in creation order, or null if the graph contains circular references
+     */
+    List<List<String>> getLevels( )
+    {
+        return _listLevels;
+    }
+
+    /**
+     * Gets the number of singletons in the graph
+     * 
+     * @return the number of singletons
+     */
+    int size( )
+    {
+        return _mapDependencies.size( );
+    }
+
+    /**
+     * Gets the critical path of the creation : the chain of dependent singletons with the longest cumulated creation time
+     * 
+     * @param mapDurations
+     *            the creation time of each singleton
+     * @return the singletons of the critical path, dependencies first
+     */
+    List<String> getCriticalPath( Map<String, Long> mapDurations )
+    {
+        if ( _listLevels == null )
+        {
+            return Collections.emptyList( );
+        }
+
+        Map<String, Long> mapCompletions = new HashMap<>( );
+        Map<String, String> mapPredecessors = new HashMap<>( );
+        String strLast = null;
+        long lLongest = -1;
+
+        for ( List<String> listLevel : _listLevels )
+        {
+            for ( String strBeanName : listLevel )
+            {
+                String strPredecessor = null;
+                long lStart = 0;
+
+                // A singleton can only be created once all its dependencies are created
+                for ( String strDependency : _mapDependencies.get( strBeanName ) )
+                {
+                    long lCompletion = mapCompletions.get( strDependency );
+
+                    if ( strPredecessor == null || lCompletion > lStart )
+                    {
+                        strPredecessor = strDependency;
+                        lStart = lCompletion;
+                    }
+                }
+
+                if ( strPredecessor != null )
+                {
+                    mapPredecessors.put( strBeanName, strPredecessor );
+                }
+
+                long lCompletion = lStart + mapDurations.getOrDefault( strBeanName, 0L );
+                mapCompletions.put( strBeanName, lCompletion );
+
+                if ( lCompletion > lLongest )
+                {
+                    lLongest = lCompletion;
+                    strLast = strBeanName;
+                }
+            }
+        }
+
+        List<String> listPath = new ArrayList<>( );
+
+        for ( String strBeanName = strLast; strBeanName != null; strBeanName = mapPredecessors.get( strBeanName ) )
+        {
+            listPath.add( 0, strBeanName );
+        }
+
+        return listPath;
+    }
+
+    /**
+     * Sorts the singletons by level (Kahn's algorithm). The definition order is kept inside a level.
+     * 
+     * @return the levels, or null if the graph contains circular references
+     */
+    private List<List<String>> sortByLevels( )
+    {
+        Map<String, Integer> mapRemaining = new HashMap<>( );
+        Map<String, List<String>> mapDependents = new HashMap<>( );
+        List<String> listLevel = new ArrayList<>( );
+
+        for ( Map.Entry<String, Set<String>> entry : _mapDependencies.entrySet( ) )
+        {
+            mapRemaining.put( entry.getKey( ), entry.getValue( ).size( ) );
+
+            for ( String strDependency : entry.getValue( ) )
+            {
+                mapDependents.computeIfAbsent( strDependency, k -> new ArrayList<>( ) ).add( entry.getKey( ) );
+            }
+
+            if ( entry.getValue( ).isEmpty( ) )
+            {
+                listLevel.add( entry.getKey( ) );
+            }
+        }
+
+        List<List<String>> listLevels = new ArrayList<>( );
+        int nSorted = 0;
+
+        while ( !listLevel.isEmpty( ) )
+        {
+            listLevels.add( listLevel );
+            nSorted += listLevel.size( );
+
+            List<String> listNextLevel = new ArrayList<>( );
+
+            for ( String strBeanName : listLevel )
+            {
+                for ( String strDependent : mapDependents.getOrDefault( strBeanName, Collections.emptyList( ) ) )
+                {
+                    if ( mapRemaining.merge( strDependent, -1, Integer::sum ) == 0 )
+                    {
+                        listNextLevel.add( strDependent );
+                    }
+                }
+            }
+
+            listLevel = listNextLevel;
+        }
+
+        return ( nSorted == _mapDependencies.size( ) ) ? listLevels : null;
+    }
+
+    /**
+     * Collects the names of the beans referenced by a bean definition
+     * 
+     * @param beanDefinition
+     *            the bean definition
+     * @param setReferences
+     *            the referenced bean names
+     */
+    static void collectReferences( BeanDefinition beanDefinition, Set<String> setReferences )
+    {
+        if ( beanDefinition.getDependsOn( ) != null )
+        {
+            Collections.addAll( setReferences, beanDefinition.getDependsOn( ) );
+        }
+
+        if ( beanDefinition.getFactoryBeanName( ) != null )
+        {
+            setReferences.add( beanDefinition.getFactoryBeanName( ) );
+        }
+
+        ConstructorArgumentValues constructorArguments = beanDefinition.getConstructorArgumentValues( );
+
+        for ( ConstructorArgumentValues.ValueHolder valueHolder : constructorArguments.getIndexedArgumentValues( ).values( ) )
+        {
+            collectReferences( valueHolder.getValue( ), setReferences );
+        }
+
+        for ( ConstructorArgumentValues.ValueHolder valueHolder : constructorArguments.getGenericArgumentValues( ) )
+        {
+            collectReferences( valueHolder.getValue( ), setReferences );
+        }
+
+        for ( PropertyValue propertyValue : beanDefinition.getPropertyValues( ).getPropertyValues( ) )
+        {
+            collectReferences( propertyValue.getValue( ), setReferences );
+        }
+    }
+
+    /**
+     * Collects the names of the beans referenced by a value of a bean definition
+     * 
+     * @param value
+     *            the value
+     * @param setReferences
+     *            the referenced bean names
+     */
+    private static void collectReferences( Object value, Set<String> setReferences )
+    {
+        if ( value instanceof RuntimeBeanReference )
+        {
+            setReferences.add( ( (RuntimeBeanReference) value ).getBeanName( ) );
+        }
+        else
+            if ( value instanceof BeanDefinitionHolder )
+            {
+                collectReferences( ( (BeanDefinitionHolder) value ).getBeanDefinition( ), setReferences );
+            }
+            else
+                if ( value instanceof BeanDefinition )
+                {
+                    collectReferences( (BeanDefinition) value, setReferences );
+                }
+                else
+                    if ( value instanceof Collection )
+                    {
+                        for ( Object element : (Collection<?>) value )
+                        {
+                            collectReferences( element, setReferences );
+                        }
+                    }
+                    else
+                        if ( value instanceof Map )
+                        {
+                            for ( Map.Entry<?, ?> entry : ( (Map<?, ?>) value ).entrySet( ) )
+                            {
+                                collectReferences( entry.getKey( ), setReferences );
+                                collectReferences( entry.getValue( ), setReferences );
+                            }
+                        }
+    }
+}
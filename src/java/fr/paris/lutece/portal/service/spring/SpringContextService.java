@@ -35,46 +35,103 @@ package fr.paris.lutece.portal.service.spring;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 import jakarta.servlet.ServletContext;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.NoUniqueBeanDefinitionException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.context.ServletContextAware;
 import org.springframework.web.context.support.GenericWebApplicationContext;
+import org.springframework.web.context.support.ServletContextAwareProcessor;
+import org.springframework.web.context.support.WebApplicationContextUtils;
 
 import fr.paris.lutece.portal.service.init.LuteceInitException;
 import fr.paris.lutece.portal.service.init.WebConfResourceLocator;
-import fr.paris.lutece.portal.service.plugin.Plugin;
 import fr.paris.lutece.portal.service.plugin.PluginEvent;
-import fr.paris.lutece.portal.service.plugin.PluginEventListener;
-import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.portal.service.plugin.BatchPluginEventListener;
 import fr.paris.lutece.portal.service.plugin.LegacyPluginEventObserver;
 import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
 
 /**
  * This class provides a way to use Spring Framework ligthweight containers offering IoC (Inversion of Control) features.
  * 
  * @see <a href= "http://www.springframework.org">http://www.springframework.org</a>
  */
-public final class SpringContextService implements PluginEventListener
+public final class SpringContextService implements BatchPluginEventListener
 {
-    private static final String PROTOCOL_FILE = "file:";
+    static final String PROTOCOL_FILE = "file:";
     private static final String PATH_CONF = "/WEB-INF/conf/";
     private static final String SUFFIX_CONTEXT_FILE = "_context.xml";
     private static final String FILE_CORE_CONTEXT = "core_context.xml";
+    private static final String PROPERTY_PARALLEL_LOADING_ENABLED = "spring-extension.context.parallelLoading.enabled";
+    private static final String PROPERTY_PARALLEL_LOADING_THREADS = "spring-extension.context.parallelLoading.threads";
+    private static final String PROPERTY_SNAPSHOT_ENABLED = "spring-extension.context.snapshot.enabled";
+    private static final String PROPERTY_SNAPSHOT_FILE = "spring-extension.context.snapshot.file";
+    private static final String PATH_SNAPSHOT_FILE = "../work/spring-context.snapshot";
+    private static final String PROPERTY_AOT_ENABLED = "spring-extension.context.aot.enabled";
+    private static final String PROPERTY_LAZY_INIT_ENABLED = "spring-extension.context.lazyInit.enabled";
+    private static final String PROPERTY_LAZY_INIT_EXCLUDES = "spring-extension.context.lazyInit.excludes";
+    private static final String PROPERTY_PLUGIN_CONTEXTS_ENABLED = "spring-extension.context.pluginContexts.enabled";
+    private static final String PROPERTY_RELOAD_WATCH_ENABLED = "spring-extension.context.reload.watch.enabled";
+    private static final String PROPERTY_RELOAD_CLOSE_DELAY = "spring-extension.context.reload.closeDelay";
+    private static final String PROPERTY_EARLY_LOADING_ENABLED = "spring-extension.context.earlyLoading.enabled";
+    private static final String PROPERTY_ORDERED_CREATION_ENABLED = "spring-extension.context.orderedCreation.enabled";
+    private static final String PROPERTY_ORDERED_CREATION_THREADS = "spring-extension.context.orderedCreation.threads";
+    private static final String PROPERTY_TYPE_INDEX_ENABLED = "spring-extension.context.typeIndex.enabled";
+    private static final String PROPERTY_SINGLE_CONTEXT_ENABLED = "spring-extension.context.singleContext.enabled";
+    private static final String PROPERTY_STARTUP_REPORT_FILE = "spring-extension.startup.recorder.file";
+    private static final String PATH_STARTUP_REPORT_FILE = "../work/spring-startup.json";
+    private static final String THREAD_NAME_EARLY_LOADING = "spring-context-early-loader";
     private static ApplicationContext _context;
     private static ApplicationContext _parentcontext;
 
-    private static Map<Class, List> _mapBeansOfType = new HashMap<>( );
+    private static final BeansOfTypeCache _beansOfTypeCache = new BeansOfTypeCache( );
+    private static final BeansOfTypeCache _beanNamesOfTypeCache = new BeansOfTypeCache( );
+    private static final BeansOfTypeCache _beansOfTypeByPluginCache = new BeansOfTypeCache( );
+    private static final BeansOfTypeCache _beansWithAnnotationCache = new BeansOfTypeCache( );
+    private static final PluginEnablementIndex _pluginEnablement = new PluginEnablementIndex( );
+    private static final AtomicLong _lGeneration = new AtomicLong( );
+    private static final Map<String, Long> _mapMissingBeans = new ConcurrentHashMap<>( );
     private static SpringContextService _instance = new SpringContextService( );
+    private static BackgroundSingletonInitializer _backgroundInitializer;
+    private static volatile PluginContextRegistry _pluginContexts;
+    private static volatile BeanTypeIndex _typeIndex;
+    private static Set<String> _setContextFiles = new TreeSet<>( );
+    private static ContextFileWatcher _contextFileWatcher;
+    private static CompletableFuture<ParentContextDefinitions> _futureDefinitions;
 
     /** Creates a new instance of SpringContextService */
     private SpringContextService( )
@@ -94,12 +151,19 @@ public final class SpringContextService implements PluginEventListener
      */
     public static <T> T getBean( String strName )
     {
-        return (T) _context.getBean( strName );
+        long lStart = LookupMetrics.begin( );
+        T bean = (T) getContextForBean( strName ).getBean( strName );
+        LookupMetrics.recordGetBean( strName, lStart );
+
+        return bean;
     }
 
     public static <T> T getBean( String strName, Class<T> t )
     {
-        T tt = (T) _context.getBean( strName, t );
+        long lStart = LookupMetrics.begin( );
+        T tt = (T) getContextForBean( strName ).getBean( strName, t );
+        LookupMetrics.recordGetBean( strName, lStart );
+
         return tt;
     }
 
@@ -117,7 +181,391 @@ public final class SpringContextService implements PluginEventListener
     @Deprecated
     public static Object getPluginBean( String strPluginName, String strName )
     {
-        return _context.getBean( strName );
+        return getContextForBean( strName ).getBean( strName );
+    }
+
+    /**
+     * Finds a bean without throwing an exception if it does not exist. Missing bean names are cached until a plugin is installed or uninstalled or a
+     * context file is reloaded, so that probing an absent bean again neither throws nor allocates.
+     * 
+     * @param <T>
+     *            the generic type
+     * @param strName
+     *            The bean's name
+     * @return the bean, or an empty optional if there is no bean of this name or if its plugin is not installed
+     */
+    public static <T> Optional<T> findBean( String strName )
+    {
+        ApplicationContext context = findContextForExistingBean( strName );
+
+        return ( context != null ) ? Optional.of( (T) context.getBean( strName ) ) : Optional.empty( );
+    }
+
+    /**
+     * Finds a bean of a given type without throwing an exception if it does not exist. Missing bean names are cached until a plugin is installed or
+     * uninstalled or a context file is reloaded, so that probing an absent bean again neither throws nor allocates.
+     * 
+     * @param <T>
+     *            the generic type
+     * @param strName
+     *            The bean's name
+     * @param type
+     *            the bean type
+     * @return the bean, or an empty optional if there is no bean of this name and type or if its plugin is not installed
+     */
+    public static <T> Optional<T> findBean( String strName, Class<T> type )
+    {
+        ApplicationContext context = findContextForExistingBean( strName );
+
+        if ( context == null || !context.isTypeMatch( strName, type ) )
+        {
+            return Optional.empty( );
+        }
+
+        return Optional.of( context.getBean( strName, type ) );
+    }
+
+    /**
+     * Gets the context holding a bean if it exists, recording the missing bean names
+     * 
+     * @param strName
+     *            The bean's name
+     * @return the context, or null if the bean does not exist or if its plugin is not installed
+     */
+    private static ApplicationContext findContextForExistingBean( String strName )
+    {
+        long lGeneration = _lGeneration.get( );
+        Long lMissingGeneration = _mapMissingBeans.get( strName );
+
+        if ( _context == null || ( lMissingGeneration != null && lMissingGeneration == lGeneration ) )
+        {
+            return null;
+        }
+
+        ApplicationContext context = findContextForBean( strName );
+
+        if ( context == null || !context.containsBean( strName ) )
+        {
+            _mapMissingBeans.put( strName, lGeneration );
+
+            return null;
+        }
+
+        return context;
+    }
+
+    /**
+     * Gets a handle on a bean. The handle resolves the bean on first use and keeps singletons until a plugin is installed or uninstalled or a context file
+     * is reloaded : callers should keep the handle rather than the bean.
+     * 
+     * @param <T>
+     *            the bean type
+     * @param strName
+     *            The bean's name
+     * @param type
+     *            the bean type
+     * @return the handle
+     */
+    public static <T> BeanHandle<T> getBeanHandle( String strName, Class<T> type )
+    {
+        return new BeanHandle<>( strName, type );
+    }
+
+    /**
+     * Gets a handle on the unique enabled bean of a type. The handle resolves the bean on first use and keeps singletons until a plugin is installed or
+     * uninstalled or a context file is reloaded : callers should keep the handle rather than the bean.
+     * 
+     * @param <T>
+     *            the bean type
+     * @param type
+     *            the bean type
+     * @return the handle
+     */
+    public static <T> BeanHandle<T> getBeanHandle( Class<T> type )
+    {
+        return new BeanHandle<>( null, type );
+    }
+
+    /**
+     * Gets the name of the unique enabled bean of a type, among the beans of the main context and of the plugin contexts
+     * 
+     * @param classDef
+     *            the type
+     * @return the bean name
+     * @throws NoSuchBeanDefinitionException
+     *             if there is no enabled bean of this type
+     * @throws NoUniqueBeanDefinitionException
+     *             if there are several enabled beans of this type
+     */
+    static String getBeanNameForType( Class<?> classDef )
+    {
+        List<String> listBeanNames = _beanNamesOfTypeCache.get( classDef, SpringContextService::buildBeanNamesOfType );
+
+        if ( listBeanNames.isEmpty( ) )
+        {
+            throw new NoSuchBeanDefinitionException( classDef );
+        }
+
+        if ( listBeanNames.size( ) > 1 )
+        {
+            throw new NoUniqueBeanDefinitionException( classDef, listBeanNames );
+        }
+
+        return listBeanNames.get( 0 );
+    }
+
+    /**
+     * Gets the generation of the contexts, incremented when a plugin is installed or uninstalled or when a context file is reloaded
+     * 
+     * @return the generation
+     */
+    static long getGeneration( )
+    {
+        return _lGeneration.get( );
+    }
+
+    /**
+     * Gets the instance registered as plugin event listener
+     * 
+     * @return the listener
+     */
+    static BatchPluginEventListener getPluginEventListener( )
+    {
+        return _instance;
+    }
+
+    /**
+     * Sets the contexts the lookups are resolved in, without loading any context file, and invalidates the cached lookups
+     *
+     * @param context
+     *            the main context, or null
+     * @param pluginContexts
+     *            the plugin contexts, or null if plugin contexts are not enabled
+     */
+    static void setContexts( ApplicationContext context, PluginContextRegistry pluginContexts )
+    {
+        _context = context;
+        _pluginContexts = pluginContexts;
+        invalidateLookups( );
+    }
+
+    /**
+     * Invalidates the cached lookups : the beans lists, the bean handles resolutions, the missing bean names and the bean names mapped to their plugin
+     */
+    private static void invalidateLookups( )
+    {
+        _lGeneration.incrementAndGet( );
+        _beansOfTypeCache.invalidate( );
+        _beanNamesOfTypeCache.invalidate( );
+        _beansOfTypeByPluginCache.invalidate( );
+        _beansWithAnnotationCache.invalidate( );
+        _mapMissingBeans.clear( );
+        _pluginEnablement.clearBeanNames( );
+    }
+
+    /**
+     * Gets the names of the beans defined in the parent context and in the plugin contexts. Definitions of plugin contexts are available even if the plugin
+     * is not installed.
+     * 
+     * @return the bean names
+     */
+    public static String [ ] getBeanDefinitionNames( )
+    {
+        if ( _pluginContexts == null )
+        {
+            return _parentcontext.getBeanDefinitionNames( );
+        }
+
+        Set<String> setBeanNames = new LinkedHashSet<>( Arrays.asList( _parentcontext.getBeanDefinitionNames( ) ) );
+
+        for ( PluginContextRegistry.PluginContext pluginContext : _pluginContexts.getPluginContexts( ) )
+        {
+            GenericWebApplicationContext context = pluginContext.getContext( );
+
+            for ( String strBeanName : context.getBeanDefinitionNames( ) )
+            {
+                if ( context.getBeanDefinition( strBeanName ).getRole( ) != BeanDefinition.ROLE_INFRASTRUCTURE )
+                {
+                    setBeanNames.add( strBeanName );
+                }
+            }
+        }
+
+        return setBeanNames.toArray( new String [ setBeanNames.size( )] );
+    }
+
+    /**
+     * Gets the definition of a bean of the parent context or of a plugin context
+     * 
+     * @param strName
+     *            The bean's name
+     * @return the bean definition
+     */
+    public static BeanDefinition getBeanDefinition( String strName )
+    {
+        GenericWebApplicationContext contextPlugin = ( _pluginContexts != null ) ? _pluginContexts.getOwnerContext( strName ) : null;
+
+        if ( contextPlugin != null )
+        {
+            return contextPlugin.getBeanDefinition( strName );
+        }
+
+        return ( (GenericApplicationContext) _parentcontext ).getBeanDefinition( strName );
+    }
+
+    /**
+     * Gets the type of a bean of the parent context or of a plugin context. The beans of plugin contexts are not created to determine their type. When the
+     * factory cannot predict the type, which is the case of factory beans and factory methods in a context that is not refreshed, the type declared by
+     * the bean definition is used.
+     * 
+     * @param strName
+     *            The bean's name
+     * @return the bean type, or <code>null</code> if it cannot be determined
+     */
+    public static Class<?> getType( String strName )
+    {
+        GenericWebApplicationContext contextPlugin = ( _pluginContexts != null ) ? _pluginContexts.getOwnerContext( strName ) : null;
+        ConfigurableListableBeanFactory beanFactory;
+        Class<?> clazz;
+
+        if ( contextPlugin != null )
+        {
+            beanFactory = contextPlugin.getBeanFactory( );
+            clazz = beanFactory.getType( strName, false );
+        }
+        else
+        {
+            beanFactory = ( (ConfigurableApplicationContext) _parentcontext ).getBeanFactory( );
+            clazz = _parentcontext.getType( strName );
+        }
+
+        return ( clazz != null ) ? clazz : getDefinedType( beanFactory, strName );
+    }
+
+    /**
+     * Gets the type declared by the definition of a bean : its target type, or its bean class when the bean is neither produced by a factory method nor
+     * by a factory bean.
+     * 
+     * @param beanFactory
+     *            the bean factory defining the bean
+     * @param strName
+     *            The bean's name
+     * @return the declared type, or <code>null</code> if it cannot be determined
+     */
+    private static Class<?> getDefinedType( ConfigurableListableBeanFactory beanFactory, String strName )
+    {
+        BeanDefinition beanDefinition;
+
+        try
+        {
+            beanDefinition = beanFactory.getMergedBeanDefinition( strName );
+        }
+        catch( NoSuchBeanDefinitionException e )
+        {
+            return null;
+        }
+
+        if ( beanDefinition.getFactoryMethodName( ) != null )
+        {
+            // The type of a factory method product has already been predicted by the factory
+            return null;
+        }
+
+        Class<?> clazz = beanDefinition.getResolvableType( ).resolve( );
+
+        if ( clazz == null && beanDefinition.getBeanClassName( ) != null )
+        {
+            try
+            {
+                clazz = ClassUtils.forName( beanDefinition.getBeanClassName( ), beanFactory.getBeanClassLoader( ) );
+            }
+            catch( ClassNotFoundException | LinkageError e )
+            {
+                AppLogService.debug( "Unable to load the class of bean {} : {}", strName, e.getMessage( ) );
+
+                return null;
+            }
+        }
+
+        return ( clazz != null && !FactoryBean.class.isAssignableFrom( clazz ) ) ? clazz : null;
+    }
+
+    /**
+     * Destroys an instance of a bean : Spring calls its destruction callbacks. Used for the instances of prototype beans, which Spring does not track. The
+     * instances of a plugin context which is no longer active are left as is.
+     * 
+     * @param strName
+     *            The bean's name
+     * @param bean
+     *            The instance to destroy
+     */
+    public static void destroyBean( String strName, Object bean )
+    {
+        PluginContextRegistry.PluginContext pluginContext = ( _pluginContexts != null ) ? _pluginContexts.getOwner( strName ) : null;
+        ApplicationContext context;
+
+        if ( pluginContext != null )
+        {
+            context = pluginContext.isActive( ) ? pluginContext.getContext( ) : null;
+        }
+        else
+        {
+            context = ( _context != null ) ? _context : _parentcontext;
+        }
+
+        if ( context instanceof ConfigurableApplicationContext )
+        {
+            ( (ConfigurableApplicationContext) context ).getBeanFactory( ).destroyBean( strName, bean );
+        }
+    }
+
+    /**
+     * Gets the context holding a bean : the context of the plugin defining the bean when plugin contexts are enabled, the main context otherwise. The plugin
+     * context is started on demand if the plugin is installed.
+     * 
+     * @param strBeanName
+     *            The bean's name
+     * @return the context
+     */
+    static ApplicationContext getContextForBean( String strBeanName )
+    {
+        PluginContextRegistry.PluginContext pluginContext = ( _pluginContexts != null ) ? _pluginContexts.getOwner( strBeanName ) : null;
+
+        if ( pluginContext != null && !pluginContext.isActive( ) && !isEnabled( pluginContext.getPluginName( ) ) )
+        {
+            throw new NoSuchBeanDefinitionException( strBeanName, "plugin " + pluginContext.getPluginName( ) + " is not installed" );
+        }
+
+        return findContextForBean( strBeanName );
+    }
+
+    /**
+     * Gets the context holding a bean, like {@link #getContextForBean(String)}, without throwing an exception
+     * 
+     * @param strBeanName
+     *            The bean's name
+     * @return the context, or null if the bean belongs to a plugin context whose plugin is not installed
+     */
+    private static ApplicationContext findContextForBean( String strBeanName )
+    {
+        PluginContextRegistry.PluginContext pluginContext = ( _pluginContexts != null ) ? _pluginContexts.getOwner( strBeanName ) : null;
+
+        if ( pluginContext == null )
+        {
+            return _context;
+        }
+
+        if ( !pluginContext.isActive( ) )
+        {
+            if ( !isEnabled( pluginContext.getPluginName( ) ) )
+            {
+                return null;
+            }
+
+            pluginContext.activate( );
+        }
+
+        return pluginContext.getContext( );
     }
 
     /**
@@ -131,8 +579,11 @@ public final class SpringContextService implements PluginEventListener
      */
     public static boolean isBeanEnabled( String strBeanName )
     {
-        String strPrefix = getPrefix( strBeanName );
-        return strPrefix == null || isEnabled( strPrefix );
+        long lStart = LookupMetrics.begin( );
+        boolean bEnabled = _pluginEnablement.isBeanEnabled( strBeanName );
+        LookupMetrics.recordIsBeanEnabled( strBeanName, lStart );
+
+        return bEnabled;
     }
 
     /**
@@ -148,16 +599,59 @@ public final class SpringContextService implements PluginEventListener
      */
     public static void init( ServletContext servletContext ) throws LuteceInitException
     {
+        long lStart = StartupRecorder.begin( );
+
         try
         {
             // Register this service as a PluginEventListener
             LegacyPluginEventObserver.registerPluginEventListener( _instance );
-            GenericWebApplicationContext gwac = new GenericWebApplicationContext( servletContext );
-            gwac.setParent( _parentcontext );
-            gwac.setId( getContextName( servletContext ) );
-            gwac.refresh( );
+            GenericWebApplicationContext gwac;
+
+            if ( AppPropertiesService.getPropertyBoolean( PROPERTY_SINGLE_CONTEXT_ENABLED, false ) && _parentcontext instanceof GenericWebApplicationContext )
+            {
+                // The parent context is used directly : lookups resolve in a single bean factory
+                gwac = (GenericWebApplicationContext) _parentcontext;
+                bindServletContext( gwac, servletContext );
+            }
+            else
+            {
+                gwac = new GenericWebApplicationContext( servletContext );
+                gwac.setParent( _parentcontext );
+                gwac.setId( getContextName( servletContext ) );
+                gwac.refresh( );
+            }
+
             _context = gwac;
 
+            if ( isTypeIndexEnabled( ) )
+            {
+                _typeIndex = buildTypeIndex( );
+            }
+
+            // Start the contexts of the installed plugins
+            if ( _pluginContexts != null )
+            {
+                for ( PluginContextRegistry.PluginContext pluginContext : _pluginContexts.getPluginContexts( ) )
+                {
+                    activatePluginContext( pluginContext.getPluginName( ), false );
+                }
+            }
+
+            // Reload the plugin context files when they change
+            if ( AppPropertiesService.getPropertyBoolean( PROPERTY_RELOAD_WATCH_ENABLED, false ) && !_setContextFiles.isEmpty( ) )
+            {
+                startContextFileWatcher( );
+            }
+
+            // The CDI deployment is done : create the deferred singletons
+            if ( _backgroundInitializer != null )
+            {
+                _backgroundInitializer.start( );
+            }
+
+            StartupRecorder.recordPhase( StartupRecorder.PHASE_INIT, lStart );
+            StartupRecorder.complete( ( _parentcontext != null ) ? ( (GenericApplicationContext) _parentcontext ).getDefaultListableBeanFactory( ) : null,
+                    getStartupReportPath( ) );
         }
         catch( Exception e )
         {
@@ -166,6 +660,27 @@ public final class SpringContextService implements PluginEventListener
         }
     }
 
+    /**
+     * Makes an already refreshed context web-aware, as if it had been refreshed with the servlet context : registers the web scopes including the
+     * application scope, the servlet context bean and the ServletContextAware processor for the beans created from now on
+     * 
+     * @param gwac
+     *            the context
+     * @param servletContext
+     *            the servlet context
+     */
+    private static void bindServletContext( GenericWebApplicationContext gwac, ServletContext servletContext )
+    {
+        ConfigurableListableBeanFactory beanFactory = gwac.getBeanFactory( );
+
+        gwac.setServletContext( servletContext );
+        gwac.setId( getContextName( servletContext ) );
+        beanFactory.addBeanPostProcessor( new ServletContextAwareProcessor( servletContext ) );
+        beanFactory.ignoreDependencyInterface( ServletContextAware.class );
+        WebApplicationContextUtils.registerWebApplicationScopes( beanFactory, servletContext );
+        WebApplicationContextUtils.registerEnvironmentBeans( beanFactory, servletContext );
+    }
+
     /**
      * Returns a name for this context
      * 
@@ -216,9 +731,12 @@ public final class SpringContextService implements PluginEventListener
                 };
 
                 // Safe loading of plugin context file
+                long lStart = StartupRecorder.begin( );
+
                 try
                 {
                     xmlReader.loadBeanDefinitions( file );
+                    StartupRecorder.recordContextFile( fileContext, lStart );
                     AppLogService.info( "Context file loaded : {}", fileContext );
                 }
                 catch( Exception e )
@@ -248,9 +766,12 @@ public final class SpringContextService implements PluginEventListener
                 };
 
                 // Safe loading of plugin context file
+                long lStart = StartupRecorder.begin( );
+
                 try
                 {
                     xmlReader.loadBeanDefinitions( file );
+                    StartupRecorder.recordContextFile( fileContext, lStart );
                     AppLogService.info( "Context file loaded : {}", fileContext );
                 }
                 catch( Exception e )
@@ -262,16 +783,70 @@ public final class SpringContextService implements PluginEventListener
     }
 
     /**
-     * Gets the application context
-     *
-     * @return The application context
+     * Reloads a plugin context file without restarting the webapp. The beans of the file are rebuilt into a new plugin context which is swapped in
+     * atomically. The previous plugin context is closed after a grace delay, so that in-flight requests can keep using its beans. Beans already injected
+     * elsewhere keep referencing the previous instances.
+     * 
+     * @param strContextFile
+     *            the context file name or path
+     * @return <code>true</code> if the context file has been reloaded
      */
-    public static ApplicationContext getContext( )
+    public static synchronized boolean reloadContextFile( String strContextFile )
     {
-        return _context;
-    }
+        String strFile = null;
 
-    /**
+        for ( String fileContext : _setContextFiles )
+        {
+            if ( fileContext.equals( strContextFile ) || Paths.get( fileContext ).getFileName( ).toString( ).equals( strContextFile )
+                    || Paths.get( fileContext ).toAbsolutePath( ).normalize( ).toString( ).equals( strContextFile ) )
+            {
+                strFile = fileContext;
+            }
+        }
+
+        if ( strFile == null )
+        {
+            AppLogService.error( "Unable to reload Spring context file : {} - unknown context file", strContextFile );
+
+            return false;
+        }
+
+        String strPluginName = PluginContextRegistry.getPluginName( strFile, SUFFIX_CONTEXT_FILE );
+
+        try
+        {
+            if ( _pluginContexts == null )
+            {
+                // The reloaded file overrides its definitions of the parent context
+                _pluginContexts = new PluginContextRegistry( (GenericApplicationContext) _parentcontext, getReloadCloseDelay( ), isTypeIndexEnabled( ) );
+            }
+
+            PluginContextRegistry.PluginContext pluginContext = _pluginContexts.getPluginContext( strPluginName );
+            boolean bStart = ( pluginContext == null ) || pluginContext.isActive( ) || isEnabled( strPluginName );
+            _pluginContexts.reload( strPluginName, strFile, bStart );
+            invalidateLookups( );
+
+            return true;
+        }
+        catch( Exception e )
+        {
+            AppLogService.error( "Unable to reload Spring context file : {} - cause :  {}", strFile, e.getMessage( ), e );
+
+            return false;
+        }
+    }
+
+    /**
+     * Gets the application context
+     *
+     * @return The application context
+     */
+    public static ApplicationContext getContext( )
+    {
+        return _context;
+    }
+
+    /**
      * Gets the application context
      *
      * @return The application context
@@ -282,62 +857,251 @@ public final class SpringContextService implements PluginEventListener
     }
 
     /**
-     * Returns a list of bean among all that implements a given interface or extends a given class
+     * Returns a list of bean among all that implements a given interface or extends a given class. The list is cached until the next plugin installation
+     * change and is shared by all the callers : it cannot be modified.
      * 
      * @param <T>
      *            The class type
      * @param classDef
      *            The class type
-     * @return A list of beans
+     * @return An unmodifiable list of beans
      */
     public static <T> List<T> getBeansOfType( Class<T> classDef )
     {
-        // Search the list in the cache
-        List<T> list = _mapBeansOfType.get( classDef );
+        long lStart = LookupMetrics.begin( );
+        List<T> list = _beansOfTypeCache.get( classDef, SpringContextService::buildBeansOfType );
+        LookupMetrics.recordGetBeansOfType( classDef, lStart );
+
+        return list;
+    }
+
+    /**
+     * Returns the list of the beans of a plugin that implement a given interface or extend a given class. Per Lutece convention, the beans of a plugin
+     * are named [plugin_name].[bean_name]. The beans of a type are grouped by plugin once, then the lists are cached until the next plugin installation
+     * change and shared by all the callers : they cannot be modified.
+     * 
+     * @param <T>
+     *            The class type
+     * @param classDef
+     *            The class type
+     * @param strPluginName
+     *            the plugin name
+     * @return An unmodifiable list of beans, empty if the plugin is not installed
+     */
+    public static <T> List<T> getBeansOfType( Class<T> classDef, String strPluginName )
+    {
+        Map<String, List<T>> mapBeansByPlugin = _beansOfTypeByPluginCache.getValue( classDef, SpringContextService::buildBeansOfTypeByPlugin );
+
+        return mapBeansByPlugin.getOrDefault( strPluginName, Collections.emptyList( ) );
+    }
+
+    /**
+     * Returns the beans carrying a given annotation, on their class or on their factory method. The map is cached until the next plugin installation
+     * change and is shared by all the callers : it cannot be modified.
+     * 
+     * @param annotationType
+     *            the annotation type
+     * @return An unmodifiable map of the beans by name, restricted to the core and to the enabled plugins
+     */
+    public static Map<String, Object> getBeansWithAnnotation( Class<? extends Annotation> annotationType )
+    {
+        return _beansWithAnnotationCache.getValue( annotationType, SpringContextService::buildBeansWithAnnotation );
+    }
 
-        if ( list != null )
+    /**
+     * Builds the lists of the beans of a type that belong to an enabled plugin, grouped by plugin
+     * 
+     * @param <T>
+     *            the type
+     * @param classDef
+     *            the type
+     * @return the unmodifiable lists by plugin name
+     */
+    private static <T> Map<String, List<T>> buildBeansOfTypeByPlugin( Class<T> classDef )
+    {
+        Map<String, List<T>> mapBeansByPlugin = new HashMap<>( );
+
+        for ( Map.Entry<String, T> entry : findBeansOfType( classDef ).entrySet( ) )
         {
-            return new ArrayList<>( list );
+            String strPluginName = _pluginEnablement.getPluginName( entry.getKey( ) );
+
+            if ( strPluginName != null && _pluginEnablement.isBeanEnabled( entry.getKey( ) ) )
+            {
+                mapBeansByPlugin.computeIfAbsent( strPluginName, k -> new ArrayList<>( ) ).add( entry.getValue( ) );
+            }
         }
 
-        // The list is not in the cache, so we have to build it
-        list = new ArrayList<>( );
+        mapBeansByPlugin.replaceAll( ( strPluginName, listBeans ) -> Collections.unmodifiableList( listBeans ) );
+
+        return mapBeansByPlugin;
+    }
+
+    /**
+     * Builds the map of the beans carrying an annotation that belong to the core or to an enabled plugin
+     * 
+     * @param annotationType
+     *            the annotation type
+     * @return the unmodifiable map of the beans by name
+     */
+    private static Map<String, Object> buildBeansWithAnnotation( Class<? extends Annotation> annotationType )
+    {
+        Set<String> setBeanNames = new LinkedHashSet<>(
+                Arrays.asList( BeanFactoryUtils.beanNamesForAnnotationIncludingAncestors( _context, annotationType ) ) );
+        Map<String, Object> mapBeans = new LinkedHashMap<>( );
 
-        Map<String, T> map = BeanFactoryUtils.beansOfTypeIncludingAncestors(_context, classDef );
-        String [ ] sBeanNames = map.keySet( ).toArray( new String [ map.size( )] );
+        if ( _pluginContexts != null )
+        {
+            for ( PluginContextRegistry.PluginContext pluginContext : _pluginContexts.getPluginContexts( ) )
+            {
+                if ( pluginContext.isActive( ) || activatePluginContext( pluginContext.getPluginName( ), false ) )
+                {
+                    Collections.addAll( setBeanNames, pluginContext.getContext( ).getBeanNamesForAnnotation( annotationType ) );
+                }
+            }
+        }
 
-        for ( String strBeanName : sBeanNames )
+        for ( String strBeanName : setBeanNames )
         {
-            String strPluginPrefix = getPrefix( strBeanName );
+            if ( _pluginEnablement.isBeanEnabled( strBeanName ) )
+            {
+                mapBeans.put( strBeanName, getContextForBean( strBeanName ).getBean( strBeanName ) );
+            }
+        }
+
+        return Collections.unmodifiableMap( mapBeans );
+    }
+
+    /**
+     * Returns a lazy stream of handles on the beans that implement a given interface or extend a given class. The bean names are matched and filtered by
+     * plugin without creating any bean : a bean is only created when the handle is read, so that lazy and prototype beans not consumed are never created.
+     * 
+     * @param <T>
+     *            The class type
+     * @param classDef
+     *            The class type
+     * @return the stream of bean handles
+     */
+    public static <T> Stream<BeanHandle<T>> streamBeansOfType( Class<T> classDef )
+    {
+        return _beanNamesOfTypeCache.get( classDef, SpringContextService::buildBeanNamesOfType ).stream( )
+                .map( strBeanName -> new BeanHandle<>( strBeanName, classDef ) );
+    }
+
+    /**
+     * Builds the list of the names of the beans of a type that belong to the core or to an enabled plugin, without creating the beans
+     * 
+     * @param classDef
+     *            the type
+     * @return the bean names
+     */
+    private static List<String> buildBeanNamesOfType( Class<?> classDef )
+    {
+        BeanTypeIndex typeIndex = _typeIndex;
+        Set<String> setBeanNames = new LinkedHashSet<>( ( typeIndex != null ) ? typeIndex.getBeanNamesForTypeIncludingAncestors( classDef )
+                : Arrays.asList( BeanFactoryUtils.beanNamesForTypeIncludingAncestors( _context, classDef ) ) );
 
-            if ( ( strPluginPrefix == null ) || ( isEnabled( strPluginPrefix ) ) )
+        if ( _pluginContexts != null )
+        {
+            for ( PluginContextRegistry.PluginContext pluginContext : _pluginContexts.getPluginContexts( ) )
             {
-                list.add( map.get( strBeanName ) );
+                if ( pluginContext.isActive( ) || activatePluginContext( pluginContext.getPluginName( ), false ) )
+                {
+                    setBeanNames.addAll( pluginContext.getBeanNamesForType( classDef ) );
+                }
             }
         }
 
-        _mapBeansOfType.put( classDef, new ArrayList<>( list ) );
+        setBeanNames.removeIf( strBeanName -> !_pluginEnablement.isBeanEnabled( strBeanName ) );
+
+        return new ArrayList<>( setBeanNames );
+    }
+
+    /**
+     * Builds the list of the beans of a type that belong to the core or to an enabled plugin
+     * 
+     * @param <T>
+     *            the type
+     * @param classDef
+     *            the type
+     * @return the list
+     */
+    private static <T> List<T> buildBeansOfType( Class<T> classDef )
+    {
+        LookupMetrics.recordCacheMiss( );
+        List<T> list = new ArrayList<>( );
+
+        for ( Map.Entry<String, T> entry : findBeansOfType( classDef ).entrySet( ) )
+        {
+            if ( _pluginEnablement.isBeanEnabled( entry.getKey( ) ) )
+            {
+                list.add( entry.getValue( ) );
+            }
+        }
 
         return list;
     }
 
     /**
-     * Gets the prefix of the bean (supposed to be the plugin name)
+     * Finds the beans of a given type in the main context, its ancestors and the started plugin contexts
      * 
-     * @param strBeanName
-     *            The bean name
-     * @return The prefix
+     * @param <T>
+     *            The class type
+     * @param classDef
+     *            The class type
+     * @return the beans by name
      */
-    private static String getPrefix( String strBeanName )
+    private static <T> Map<String, T> findBeansOfType( Class<T> classDef )
     {
-        int nPos = strBeanName.indexOf( '.' );
+        BeanTypeIndex typeIndex = _typeIndex;
+        Map<String, T> map = ( typeIndex != null ) ? typeIndex.getBeansOfType( classDef )
+                : BeanFactoryUtils.beansOfTypeIncludingAncestors( _context, classDef );
+
+        if ( _pluginContexts != null )
+        {
+            map = new LinkedHashMap<>( map );
+
+            for ( PluginContextRegistry.PluginContext pluginContext : _pluginContexts.getPluginContexts( ) )
+            {
+                if ( pluginContext.isActive( ) || activatePluginContext( pluginContext.getPluginName( ), false ) )
+                {
+                    map.putAll( pluginContext.getBeansOfType( classDef ) );
+                }
+            }
+        }
+
+        return map;
+    }
+
+    /**
+     * Starts the context of a plugin if the plugin is installed
+     * 
+     * @param strPluginName
+     *            the plugin name
+     * @param bForce
+     *            true to start the context without checking the plugin status
+     * @return true if the context is started
+     */
+    private static boolean activatePluginContext( String strPluginName, boolean bForce )
+    {
+        PluginContextRegistry.PluginContext pluginContext = _pluginContexts.getPluginContext( strPluginName );
+
+        if ( pluginContext == null || !( bForce || isEnabled( strPluginName ) ) )
+        {
+            return false;
+        }
 
-        if ( nPos > 0 )
+        try
         {
-            return strBeanName.substring( 0, nPos );
+            pluginContext.activate( );
+
+            return true;
         }
+        catch( Exception e )
+        {
+            AppLogService.error( "Unable to start the Spring context of plugin {} - cause : {}", strPluginName, e.getMessage( ), e );
 
-        return null;
+            return false;
+        }
     }
 
     /**
@@ -349,23 +1113,55 @@ public final class SpringContextService implements PluginEventListener
      */
     private static boolean isEnabled( String strPrefix )
     {
-        Plugin plugin = PluginService.getPlugin( strPrefix );
-
-        return ( plugin != null ) && plugin.isInstalled( );
+        return _pluginEnablement.isPluginEnabled( strPrefix );
     }
 
     /**
-     * {@inheritDoc }
+     * Processes a burst of plugin events : the plugin states and the plugin contexts are updated for each event in order, then the cached lookups are
+     * invalidated once for the whole burst.
+     * 
+     * @param listEvents
+     *            The events, in the order they have been fired
      */
     @Override
-    public void processPluginEvent( PluginEvent event )
+    public void processPluginEvents( List<PluginEvent> listEvents )
     {
+        List<String> listChangedPlugins = new ArrayList<>( );
+
+        for ( PluginEvent event : listEvents )
+        {
+            boolean bInstalled = event.getEventType( ) == PluginEvent.PLUGIN_INSTALLED;
+
+            if ( !bInstalled && event.getEventType( ) != PluginEvent.PLUGIN_UNINSTALLED )
+            {
+                continue;
+            }
+
+            String strPluginName = event.getPlugin( ).getName( );
+            _pluginEnablement.setPluginEnabled( strPluginName, bInstalled );
+
+            // Start or release the plugin context
+            if ( _pluginContexts != null )
+            {
+                if ( bInstalled )
+                {
+                    activatePluginContext( strPluginName, true );
+                }
+                else
+                {
+                    _pluginContexts.deactivate( strPluginName );
+                }
+            }
+
+            listChangedPlugins.add( strPluginName );
+        }
+
         // Reset cache of beansOfType if a plugin is installed or uninstalled
-        if ( ( event.getEventType( ) == PluginEvent.PLUGIN_INSTALLED || event.getEventType( ) == PluginEvent.PLUGIN_UNINSTALLED )
-                && !_mapBeansOfType.isEmpty( ) )
+        if ( !listChangedPlugins.isEmpty( ) )
         {
-            _mapBeansOfType.clear( );
-            AppLogService.info( "SpringService cache cleared due to a plugin installation change - Plugin : {}", event.getPlugin( ).getName( ) );
+            invalidateLookups( );
+            AppLogService.info( "SpringService cache cleared due to a plugin installation change - Plugins : {} - hits : {}, misses : {}, rebuilds : {}",
+                    listChangedPlugins, _beansOfTypeCache.getHits( ), _beansOfTypeCache.getMisses( ), _beansOfTypeCache.getRebuilds( ) );
         }
     }
 
@@ -376,10 +1172,30 @@ public final class SpringContextService implements PluginEventListener
      */
     public static void shutdown( )
     {
+        if ( _contextFileWatcher != null )
+        {
+            _contextFileWatcher.stop( );
+        }
+
+        if ( _backgroundInitializer != null )
+        {
+            _backgroundInitializer.stop( );
+        }
+
+        if ( _pluginContexts != null )
+        {
+            _pluginContexts.close( );
+        }
+
         if ( _context != null )
         {
             ( (AbstractApplicationContext) _context ).close( );
         }
+
+        LegacyPluginEventObserver.unregisterPluginEventListener( _instance );
+        LegacyPluginEventObserver.shutdown( );
+        StartupRecorder.stop( );
+        LookupMetrics.stop( );
     }
 
     /**
@@ -403,6 +1219,36 @@ public final class SpringContextService implements PluginEventListener
         }
     }
 
+    /**
+     * Starts loading the definitions of the parent Spring context in background, so that XML parsing overlaps the CDI type discovery. The loading is
+     * joined by {@link #initParentContext()}. Does nothing unless early loading is enabled.
+     */
+    public static synchronized void startParentContextLoading( )
+    {
+        if ( _futureDefinitions != null || !AppPropertiesService.getPropertyBoolean( PROPERTY_EARLY_LOADING_ENABLED, false ) )
+        {
+            return;
+        }
+
+        CompletableFuture<ParentContextDefinitions> futureDefinitions = new CompletableFuture<>( );
+        Thread thread = new Thread( ( ) -> {
+            try
+            {
+                futureDefinitions.complete( loadParentContextDefinitions( ) );
+            }
+            catch( Throwable e )
+            {
+                futureDefinitions.completeExceptionally( e );
+            }
+        }, THREAD_NAME_EARLY_LOADING );
+        thread.setDaemon( true );
+        thread.setContextClassLoader( Thread.currentThread( ).getContextClassLoader( ) );
+        thread.start( );
+
+        _futureDefinitions = futureDefinitions;
+        AppLogService.info( "Loading spring context files in background ..." );
+    }
+
     /**
      * Initialization of a parent Spring context to be used in the CDI extension for registering Spring beans in the CDI container. We use this service to
      * maintain compatibility with plugins that depend on Spring.
@@ -411,40 +1257,45 @@ public final class SpringContextService implements PluginEventListener
      */
     public static void initParentContext( ) throws LuteceInitException
     {
+        long lStart = StartupRecorder.begin( );
+        LookupMetrics.start( );
+
         try
         {
-            // Load the core context file : core_context.xml
-            String strContextFile = PROTOCOL_FILE + Thread.currentThread( ).getContextClassLoader( ).getResource( PATH_CONF + FILE_CORE_CONTEXT ).getPath( );
+            ParentContextDefinitions definitions = takeParentContextDefinitions( );
+            GenericWebApplicationContext gwac = definitions._context;
 
-            GenericWebApplicationContext gwac = new GenericWebApplicationContext( );
+            // Singletons may be created after the CDI deployment instead of during the refresh
+            LazyInitBeanFactoryPostProcessor lazyInitProcessor = null;
 
-            XmlBeanDefinitionReader xmlReader = new XmlBeanDefinitionReader( gwac );
-            xmlReader.loadBeanDefinitions( strContextFile );
-            AppLogService.info( "Context file loaded : {}", FILE_CORE_CONTEXT );
+            if ( AppPropertiesService.getPropertyBoolean( PROPERTY_LAZY_INIT_ENABLED, false ) )
+            {
+                lazyInitProcessor = new LazyInitBeanFactoryPostProcessor( getLazyInitExcludes( ) );
+                gwac.addBeanFactoryPostProcessor( lazyInitProcessor );
+            }
 
-            // Load all context files found in the web conf resources
-            // Files are loaded separately with an individual try/catch block
-            // to avoid stopping the process in case of a failure
-            // The global context generation will fail if a bean in any file cannot be
-            // built.
-            Set<String> xmlFilePaths = WebConfResourceLocator.getPathXmlFile( );
-            Set<String> filesContext = new HashSet<String>( );
-            for ( String xmlFilePath : xmlFilePaths )
+            gwac.refresh( );
+            _parentcontext = gwac;
+            _pluginContexts = definitions._pluginContexts;
+
+            // Map the bean names to their plugin ahead of the lookups
+            _pluginEnablement.addBeanNames( gwac.getBeanDefinitionNames( ) );
+
+            if ( _pluginContexts != null )
             {
-                if ( xmlFilePath.endsWith( SUFFIX_CONTEXT_FILE ) )
+                for ( PluginContextRegistry.PluginContext pluginContext : _pluginContexts.getPluginContexts( ) )
                 {
-                    filesContext.add( Thread.currentThread( ).getContextClassLoader( ).getResource( xmlFilePath ).getPath( ) );
+                    _pluginEnablement.addBeanNames( pluginContext.getContext( ).getBeanDefinitionNames( ) );
                 }
             }
+            _setContextFiles = definitions._setContextFiles;
 
-            if ( !filesContext.isEmpty( ) )
+            if ( lazyInitProcessor != null )
             {
-                SpringContextService.loadContexts( filesContext, xmlReader );
+                _backgroundInitializer = new BackgroundSingletonInitializer( gwac.getBeanFactory( ), lazyInitProcessor.getDeferredBeanNames( ) );
             }
 
-            gwac.refresh( );
-            _parentcontext = gwac;
-
+            StartupRecorder.recordPhase( StartupRecorder.PHASE_INIT_PARENT_CONTEXT, lStart );
         }
         catch( Exception e )
         {
@@ -452,4 +1303,349 @@ public final class SpringContextService implements PluginEventListener
             throw new LuteceInitException( "Error initializing Spring Context Service", e );
         }
     }
+
+    /**
+     * Gets the definitions of the parent context : joins the background loading if it has been started, loads them otherwise
+     * 
+     * @return the definitions
+     * @throws Exception
+     *             if the definitions cannot be loaded
+     */
+    private static ParentContextDefinitions takeParentContextDefinitions( ) throws Exception
+    {
+        CompletableFuture<ParentContextDefinitions> futureDefinitions;
+
+        synchronized( SpringContextService.class )
+        {
+            futureDefinitions = _futureDefinitions;
+            _futureDefinitions = null;
+        }
+
+        if ( futureDefinitions == null )
+        {
+            return loadParentContextDefinitions( );
+        }
+
+        try
+        {
+            return futureDefinitions.get( );
+        }
+        catch( ExecutionException e )
+        {
+            throw ( e.getCause( ) instanceof Exception ) ? (Exception) e.getCause( ) : e;
+        }
+    }
+
+    /**
+     * Loads the definitions of the core context file and of the plugins context files into a new, not refreshed, parent context
+     * 
+     * @return the definitions
+     * @throws Exception
+     *             if the core context file cannot be loaded
+     */
+    private static ParentContextDefinitions loadParentContextDefinitions( ) throws Exception
+    {
+        long lStart = StartupRecorder.begin( );
+
+        // Load the core context file : core_context.xml
+        String strCoreContextFile = Thread.currentThread( ).getContextClassLoader( ).getResource( PATH_CONF + FILE_CORE_CONTEXT ).getPath( );
+
+        // Singletons may be created following their dependency graph instead of the definition order
+        GenericWebApplicationContext gwac = AppPropertiesService.getPropertyBoolean( PROPERTY_ORDERED_CREATION_ENABLED, false )
+                ? new GenericWebApplicationContext( new DependencyOrderedBeanFactory( getOrderedCreationThreads( ) ) )
+                : new GenericWebApplicationContext( );
+        ApplicationStartup applicationStartup = StartupRecorder.getApplicationStartup( );
+
+        if ( applicationStartup != null )
+        {
+            gwac.setApplicationStartup( applicationStartup );
+        }
+
+        // Context files are staged separately when they are parsed concurrently, when their
+        // definitions may be read from the snapshot or when build time registrars are available
+        boolean bParallel = AppPropertiesService.getPropertyBoolean( PROPERTY_PARALLEL_LOADING_ENABLED, false );
+        boolean bPluginContexts = AppPropertiesService.getPropertyBoolean( PROPERTY_PLUGIN_CONTEXTS_ENABLED, false );
+        BeanDefinitionSnapshot snapshot = AppPropertiesService.getPropertyBoolean( PROPERTY_SNAPSHOT_ENABLED, false )
+                ? BeanDefinitionSnapshot.open( getSnapshotPath( strCoreContextFile ), gwac.getEnvironment( ) )
+                : null;
+        AotContextRegistrars registrars = AppPropertiesService.getPropertyBoolean( PROPERTY_AOT_ENABLED, false )
+                ? AotContextRegistrars.load( Thread.currentThread( ).getContextClassLoader( ) )
+                : null;
+
+        if ( registrars != null && registrars.isEmpty( ) )
+        {
+            registrars = null;
+        }
+
+        StagedContextLoader stagedLoader = ( bParallel || bPluginContexts || snapshot != null || registrars != null )
+                ? new StagedContextLoader( gwac, bParallel ? getParallelLoadingThreads( ) : 1, snapshot, registrars )
+                : null;
+
+        XmlBeanDefinitionReader xmlReader = new XmlBeanDefinitionReader( gwac );
+
+        if ( stagedLoader != null )
+        {
+            stagedLoader.loadContext( strCoreContextFile );
+        }
+        else
+        {
+            long lFileStart = StartupRecorder.begin( );
+            xmlReader.loadBeanDefinitions( PROTOCOL_FILE + strCoreContextFile );
+            StartupRecorder.recordContextFile( strCoreContextFile, lFileStart );
+            AppLogService.info( "Context file loaded : {}", FILE_CORE_CONTEXT );
+        }
+
+        // Load all context files found in the web conf resources
+        // Files are loaded separately with an individual try/catch block
+        // to avoid stopping the process in case of a failure
+        // The global context generation will fail if a bean in any file cannot be
+        // built.
+        // Files are sorted by path so that bean overriding is deterministic
+        Set<String> xmlFilePaths = WebConfResourceLocator.getPathXmlFile( );
+        Set<String> filesContext = new TreeSet<>( );
+        for ( String xmlFilePath : xmlFilePaths )
+        {
+            if ( xmlFilePath.endsWith( SUFFIX_CONTEXT_FILE ) )
+            {
+                filesContext.add( Thread.currentThread( ).getContextClassLoader( ).getResource( xmlFilePath ).getPath( ) );
+            }
+        }
+
+        PluginContextRegistry pluginContexts = null;
+
+        if ( bPluginContexts )
+        {
+            // Each plugin context file is loaded into its own child context, unless its beans are referenced by other files
+            pluginContexts = new PluginContextRegistry( gwac, getReloadCloseDelay( ), isTypeIndexEnabled( ) );
+            Map<String, StagingBeanDefinitionRegistry> mapStaged = stagedLoader.stageContexts( filesContext );
+            Set<String> setSharedFiles = PluginContextRegistry.getSharedContextFiles( gwac, mapStaged );
+
+            for ( Map.Entry<String, StagingBeanDefinitionRegistry> entry : mapStaged.entrySet( ) )
+            {
+                try
+                {
+                    if ( setSharedFiles.contains( entry.getKey( ) ) )
+                    {
+                        entry.getValue( ).copyTo( gwac );
+                        AppLogService.info( "Context file loaded into the core context, its beans being referenced by other context files : {}",
+                                entry.getKey( ) );
+                    }
+                    else
+                    {
+                        pluginContexts.register( PluginContextRegistry.getPluginName( entry.getKey( ), SUFFIX_CONTEXT_FILE ), entry.getKey( ),
+                                entry.getValue( ) );
+                    }
+                }
+                catch( Exception e )
+                {
+                    AppLogService.error( "Unable to load Spring context file : {} - cause :  {}", entry.getKey( ), e.getMessage( ), e );
+                }
+            }
+
+            stagedLoader.complete( );
+        }
+        else
+            if ( stagedLoader != null )
+            {
+                stagedLoader.loadContexts( filesContext );
+                stagedLoader.complete( );
+            }
+            else
+                if ( !filesContext.isEmpty( ) )
+                {
+                    SpringContextService.loadContexts( filesContext, xmlReader );
+                }
+
+        StartupRecorder.recordPhase( StartupRecorder.PHASE_LOAD_CONTEXTS, lStart );
+
+        return new ParentContextDefinitions( gwac, pluginContexts, filesContext );
+    }
+
+    /**
+     * Gets the path of the bean definition snapshot file. Defaults to the work directory of the webapp.
+     * 
+     * @param strCoreContextFile
+     *            the path of the core context file
+     * @return the snapshot file path
+     */
+    private static Path getSnapshotPath( String strCoreContextFile )
+    {
+        String strSnapshotFile = AppPropertiesService.getProperty( PROPERTY_SNAPSHOT_FILE );
+
+        if ( StringUtils.isNotBlank( strSnapshotFile ) )
+        {
+            return Paths.get( strSnapshotFile );
+        }
+
+        return Paths.get( strCoreContextFile ).resolveSibling( PATH_SNAPSHOT_FILE ).normalize( );
+    }
+
+    /**
+     * Gets the path of the startup report file. Defaults to the work directory of the webapp.
+     * 
+     * @return the report file path
+     */
+    private static Path getStartupReportPath( )
+    {
+        String strReportFile = AppPropertiesService.getProperty( PROPERTY_STARTUP_REPORT_FILE );
+
+        if ( StringUtils.isNotBlank( strReportFile ) )
+        {
+            return Paths.get( strReportFile );
+        }
+
+        return Paths.get( Thread.currentThread( ).getContextClassLoader( ).getResource( PATH_CONF + FILE_CORE_CONTEXT ).getPath( ) )
+                .resolveSibling( PATH_STARTUP_REPORT_FILE ).normalize( );
+    }
+
+    /**
+     * Indicates whether the beans are indexed by type once the contexts are refreshed
+     * 
+     * @return true if the type index is enabled
+     */
+    private static boolean isTypeIndexEnabled( )
+    {
+        return AppPropertiesService.getPropertyBoolean( PROPERTY_TYPE_INDEX_ENABLED, false );
+    }
+
+    /**
+     * Builds the type index of the context, chained to the index of the parent context when the context is a distinct child
+     * 
+     * @return the index
+     */
+    private static BeanTypeIndex buildTypeIndex( )
+    {
+        BeanTypeIndex parentIndex = ( _parentcontext != null && _parentcontext != _context )
+                ? BeanTypeIndex.build( ( (GenericApplicationContext) _parentcontext ).getBeanFactory( ), null )
+                : null;
+
+        return BeanTypeIndex.build( ( (GenericApplicationContext) _context ).getBeanFactory( ), parentIndex );
+    }
+
+    /**
+     * Gets the number of getBeansOfType calls served from the cache
+     * 
+     * @return the number of hits
+     */
+    public static long getBeansOfTypeCacheHits( )
+    {
+        return _beansOfTypeCache.getHits( );
+    }
+
+    /**
+     * Gets the number of getBeansOfType calls for a type not yet cached
+     * 
+     * @return the number of misses
+     */
+    public static long getBeansOfTypeCacheMisses( )
+    {
+        return _beansOfTypeCache.getMisses( );
+    }
+
+    /**
+     * Gets the number of getBeansOfType calls that rebuilt a list invalidated by a plugin change
+     * 
+     * @return the number of rebuilds
+     */
+    public static long getBeansOfTypeCacheRebuilds( )
+    {
+        return _beansOfTypeCache.getRebuilds( );
+    }
+
+    /**
+     * Gets the names of the beans created eagerly when the lazy initialization mode is enabled
+     * 
+     * @return the bean names
+     */
+    private static Set<String> getLazyInitExcludes( )
+    {
+        Set<String> setExcludes = new HashSet<>( );
+
+        for ( String strBeanName : StringUtils.split( AppPropertiesService.getProperty( PROPERTY_LAZY_INIT_EXCLUDES, "" ), ',' ) )
+        {
+            if ( StringUtils.isNotBlank( strBeanName ) )
+            {
+                setExcludes.add( strBeanName.trim( ) );
+            }
+        }
+
+        return setExcludes;
+    }
+
+    /**
+     * Gets the delay before a replaced plugin context is closed
+     * 
+     * @return the delay in seconds
+     */
+    private static long getReloadCloseDelay( )
+    {
+        return AppPropertiesService.getPropertyInt( PROPERTY_RELOAD_CLOSE_DELAY, 60 );
+    }
+
+    /**
+     * Starts watching the plugin context files. A failure does not prevent the context from being used.
+     */
+    private static void startContextFileWatcher( )
+    {
+        try
+        {
+            _contextFileWatcher = new ContextFileWatcher( _setContextFiles, SpringContextService::reloadContextFile );
+            _contextFileWatcher.start( );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Unable to watch Spring context files - cause : {}", e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Gets the number of worker threads used to parse the context files when parallel loading is enabled
+     * 
+     * @return the number of threads, defaults to the number of available processors
+     */
+    private static int getParallelLoadingThreads( )
+    {
+        int nThreads = AppPropertiesService.getPropertyInt( PROPERTY_PARALLEL_LOADING_THREADS, 0 );
+
+        return ( nThreads > 0 ) ? nThreads : Runtime.getRuntime( ).availableProcessors( );
+    }
+
+    /**
+     * Gets the number of threads resolving the bean classes when the singletons are created following their dependency graph
+     * 
+     * @return the number of threads, defaults to the number of available processors
+     */
+    private static int getOrderedCreationThreads( )
+    {
+        int nThreads = AppPropertiesService.getPropertyInt( PROPERTY_ORDERED_CREATION_THREADS, 0 );
+
+        return ( nThreads > 0 ) ? nThreads : Runtime.getRuntime( ).availableProcessors( );
+    }
+
+    /**
+     * Definitions of the parent context, loaded but not refreshed
+     */
+    private static final class ParentContextDefinitions
+    {
+        private final GenericWebApplicationContext _context;
+        private final PluginContextRegistry _pluginContexts;
+        private final Set<String> _setContextFiles;
+
+        /**
+         * Constructor
+         * 
+         * @param context
+         *            the parent context holding the definitions
+         * @param pluginContexts
+         *            the plugin contexts, or <code>null</code> if plugin contexts are not enabled
+         * @param setContextFiles
+         *            the plugin context files
+         */
+        ParentContextDefinitions( GenericWebApplicationContext context, PluginContextRegistry pluginContexts, Set<String> setContextFiles )
+        {
+            _context = context;
+            _pluginContexts = pluginContexts;
+            _setContextFiles = setContextFiles;
+        }
+    }
 }
@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.parsing.EmptyReaderEventListener;
+import org.springframework.beans.factory.parsing.ImportDefinition;
+import org.springframework.beans.factory.xml.DefaultNamespaceHandlerResolver;
+import org.springframework.beans.factory.xml.NamespaceHandlerResolver;
+import org.springframework.beans.factory.xml.ResourceEntityResolver;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.Environment;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Loads context files through per-file staging registries. Each file is either staged by its build time registrar, decoded from the bean definition
+ * snapshot or parsed into its own {@link StagingBeanDefinitionRegistry}, possibly on a worker pool, then the staged definitions are merged into the target
+ * context on the calling thread, in the iteration order of the given files. A plugin file that cannot be staged or merged is skipped without affecting the
+ * other files.
+ */
+final class StagedContextLoader
+{
+    private static final String THREAD_NAME_PREFIX = "spring-context-loader-";
+
+    private final GenericApplicationContext _context;
+    private final int _nThreads;
+    private final BeanDefinitionSnapshot _snapshot;
+    private final AotContextRegistrars _registrars;
+    private final Environment _environment;
+    private final NamespaceHandlerResolver _namespaceHandlerResolver;
+    private final ResourceEntityResolver _entityResolver;
+    private final long _lStartTime = System.currentTimeMillis( );
+
+    /**
+     * Constructor
+     * 
+     * @param context
+     *            the target context
+     * @param nThreads
+     *            the maximum number of worker threads, 1 to stage the files on the calling thread
+     * @param snapshot
+     *            the bean definition snapshot, or <code>null</code> to always parse the files
+     * @param registrars
+     *            the build time registrars, or <code>null</code> to ignore them
+     */
+    StagedContextLoader( GenericApplicationContext context, int nThreads, BeanDefinitionSnapshot snapshot, AotContextRegistrars registrars )
+    {
+        _context = context;
+        _nThreads = nThreads;
+        _snapshot = snapshot;
+        _registrars = registrars;
+
+        // Shared, thread-safe parsing infrastructure
+        _environment = context.getEnvironment( );
+        _namespaceHandlerResolver = new DefaultNamespaceHandlerResolver( context.getClassLoader( ) );
+        _entityResolver = new ResourceEntityResolver( context );
+    }
+
+    /**
+     * Loads a mandatory context file. Any failure is propagated to the caller.
+     * 
+     * @param fileContext
+     *            the context file path
+     * @throws Exception
+     *             if the file cannot be loaded
+     */
+    void loadContext( String fileContext ) throws Exception
+    {
+        stage( fileContext ).copyTo( _context );
+        AppLogService.info( "Context file loaded : {}", fileContext );
+    }
+
+    /**
+     * Loads the given context files into the context
+     * 
+     * @param filesContext
+     *            the context files paths, in merge order
+     */
+    void loadContexts( Collection<String> filesContext )
+    {
+        for ( Map.Entry<String, StagingBeanDefinitionRegistry> entry : stageContexts( filesContext ).entrySet( ) )
+        {
+            // Safe merging of plugin context file
+            try
+            {
+                entry.getValue( ).copyTo( _context );
+                AppLogService.info( "Context file loaded : {}", entry.getKey( ) );
+            }
+            catch( Exception e )
+            {
+                AppLogService.error( "Unable to load Spring context file : {} - cause :  {}", entry.getKey( ), e.getMessage( ), e );
+            }
+        }
+    }
+
+    /**
+     * Stages the given context files without merging them. A file that cannot be staged is logged and left out of the result.
+     * 
+     * @param filesContext
+     *            the context files paths
+     * @return the staged definitions by context file path, in the iteration order of the given files
+     */
+    Map<String, StagingBeanDefinitionRegistry> stageContexts( Collection<String> filesContext )
+    {
+        List<String> listFiles = new ArrayList<>( filesContext );
+        Map<String, StagingBeanDefinitionRegistry> mapStaged = new LinkedHashMap<>( );
+
+        if ( listFiles.isEmpty( ) )
+        {
+            return mapStaged;
+        }
+
+        ExecutorService executor = null;
+        List<Future<StagingBeanDefinitionRegistry>> listFutures = new ArrayList<>( listFiles.size( ) );
+
+        if ( _nThreads > 1 )
+        {
+            executor = Executors.newFixedThreadPool( Math.min( _nThreads, listFiles.size( ) ),
+                    new LoaderThreadFactory( Thread.currentThread( ).getContextClassLoader( ) ) );
+
+            for ( String fileContext : listFiles )
+            {
+                listFutures.add( executor.submit( ( ) -> stage( fileContext ) ) );
+            }
+        }
+
+        try
+        {
+            for ( int i = 0; i < listFiles.size( ); i++ )
+            {
+                String fileContext = listFiles.get( i );
+
+                // Safe loading of plugin context file
+                try
+                {
+                    mapStaged.put( fileContext, ( executor != null ) ? listFutures.get( i ).get( ) : stage( fileContext ) );
+                }
+                catch( ExecutionException e )
+                {
+                    AppLogService.error( "Unable to load Spring context file : {} - cause :  {}", fileContext, e.getCause( ).getMessage( ), e.getCause( ) );
+                }
+                catch( InterruptedException e )
+                {
+                    Thread.currentThread( ).interrupt( );
+                    AppLogService.error( "Interrupted while loading Spring context file : {}", fileContext, e );
+
+                    break;
+                }
+                catch( Exception e )
+                {
+                    AppLogService.error( "Unable to load Spring context file : {} - cause :  {}", fileContext, e.getMessage( ), e );
+                }
+            }
+        }
+        finally
+        {
+            if ( executor != null )
+            {
+                executor.shutdownNow( );
+            }
+        }
+
+        return mapStaged;
+    }
+
+    /**
+     * Completes the loading : applies the bean factory settings that namespace handlers cannot apply through a staging registry, then saves the snapshot.
+     */
+    void complete( )
+    {
+        // <context:annotation-config/> only registers its processors in a staging registry : the dependency comparator and
+        // the autowire candidate resolver must be set on the bean factory itself
+        if ( _context.containsBeanDefinition( AnnotationConfigUtils.AUTOWIRED_ANNOTATION_PROCESSOR_BEAN_NAME ) )
+        {
+            AnnotationConfigUtils.registerAnnotationConfigProcessors( _context );
+        }
+
+        if ( _snapshot != null )
+        {
+            _snapshot.save( );
+            AppLogService.info( "Spring context snapshot : {} hit(s), {} miss(es), definitions loaded in {} ms", _snapshot.getHits( ), _snapshot.getMisses( ),
+                    System.currentTimeMillis( ) - _lStartTime );
+        }
+    }
+
+    /**
+     * Stages a context file, from its registrar if one was generated at build time, from the snapshot if it holds an up to date copy, from the XML file
+     * otherwise
+     * 
+     * @param fileContext
+     *            the context file path
+     * @return the staged definitions
+     * @throws Exception
+     *             if the file cannot be read or parsed
+     */
+    private StagingBeanDefinitionRegistry stage( String fileContext ) throws Exception
+    {
+        long lStart = StartupRecorder.begin( );
+        StagingBeanDefinitionRegistry staging = readDefinitions( fileContext );
+        StartupRecorder.recordContextFile( fileContext, lStart );
+
+        return staging;
+    }
+
+    /**
+     * Reads the definitions of a context file from its registrar, from the snapshot or from the XML file
+     * 
+     * @param fileContext
+     *            the context file path
+     * @return the staged definitions
+     * @throws Exception
+     *             if the file cannot be read or parsed
+     */
+    private StagingBeanDefinitionRegistry readDefinitions( String fileContext ) throws Exception
+    {
+        byte [ ] hash = ( _registrars != null || _snapshot != null ) ? BeanDefinitionSnapshot.hash( fileContext ) : null;
+
+        if ( _registrars != null )
+        {
+            StagingBeanDefinitionRegistry staging = _registrars.stage( fileContext, hash );
+
+            if ( staging != null )
+            {
+                return staging;
+            }
+        }
+
+        if ( _snapshot != null )
+        {
+            StagingBeanDefinitionRegistry staging = _snapshot.load( fileContext, hash );
+
+            if ( staging != null )
+            {
+                return staging;
+            }
+        }
+
+        StagingBeanDefinitionRegistry staging = new StagingBeanDefinitionRegistry( );
+        ImportDetector importDetector = new ImportDetector( );
+        XmlBeanDefinitionReader xmlReader = new XmlBeanDefinitionReader( staging );
+        xmlReader.setEnvironment( _environment );
+        xmlReader.setResourceLoader( _context );
+        xmlReader.setEntityResolver( _entityResolver );
+        xmlReader.setNamespaceHandlerResolver( _namespaceHandlerResolver );
+        xmlReader.setEventListener( importDetector );
+        xmlReader.loadBeanDefinitions( SpringContextService.PROTOCOL_FILE + fileContext );
+
+        // The hash only covers the file itself : a file importing other resources would not be parsed again when an imported resource changes
+        if ( _snapshot != null )
+        {
+            if ( importDetector._bImport )
+            {
+                AppLogService.debug( "Context file {} imports other resources, it is not stored in the Spring context snapshot", fileContext );
+            }
+            else
+            {
+                _snapshot.store( fileContext, hash, staging );
+            }
+        }
+
+        return staging;
+    }
+
+    /**
+     * Reader event listener detecting the import of other resources
+     */
+    private static class ImportDetector extends EmptyReaderEventListener
+    {
+        private boolean _bImport;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void importProcessed( ImportDefinition importDefinition )
+        {
+            _bImport = true;
+        }
+    }
+
+    /**
+     * Thread factory for the loader workers. Workers are daemon threads using the class loader of the thread that started the loading.
+     */
+    private static class LoaderThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger _nThreadCount = new AtomicInteger( );
+        private final ClassLoader _classLoader;
+
+        /**
+         * Constructor
+         * 
+         * @param classLoader
+         *            the context class loader of the workers
+         */
+        LoaderThreadFactory( ClassLoader classLoader )
+        {
+            _classLoader = classLoader;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Thread newThread( Runnable runnable )
+        {
+            Thread thread = new Thread( runnable, THREAD_NAME_PREFIX + _nThreadCount.incrementAndGet( ) );
+            thread.setDaemon( true );
+            thread.setContextClassLoader( _classLoader );
+
+            return thread;
+        }
+    }
+}
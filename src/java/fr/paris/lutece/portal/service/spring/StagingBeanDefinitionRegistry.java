@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionReaderUtils;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.SimpleBeanDefinitionRegistry;
+
+/**
+ * Bean definition registry used to parse a single context file in isolation. Definitions and aliases are recorded in registration order so that they can
+ * be copied afterwards into the target registry exactly as a direct parse would have registered them.
+ * <p>
+ * The names generated for anonymous beans (<code>ClassName#0</code>) are only unique within the staged file : they are generated again against the target
+ * registry when the definitions are copied, and the class name alias of such a bean is only kept if the class name is not in use yet, as a direct parse of
+ * the files in sequence does.
+ */
+class StagingBeanDefinitionRegistry extends SimpleBeanDefinitionRegistry
+{
+    private final List<String> _listBeanNames = new ArrayList<>( );
+    private final List<String [ ]> _listAliases = new ArrayList<>( );
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void registerBeanDefinition( String strBeanName, BeanDefinition beanDefinition )
+    {
+        super.registerBeanDefinition( strBeanName, beanDefinition );
+        _listBeanNames.remove( strBeanName );
+        _listBeanNames.add( strBeanName );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeBeanDefinition( String strBeanName )
+    {
+        super.removeBeanDefinition( strBeanName );
+        _listBeanNames.remove( strBeanName );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void registerAlias( String strName, String strAlias )
+    {
+        super.registerAlias( strName, strAlias );
+        _listAliases.add( new String [ ] {
+                strName, strAlias
+        } );
+    }
+
+    /**
+     * Gets the names of the staged bean definitions in registration order
+     * 
+     * @return the bean names
+     */
+    List<String> getOrderedBeanNames( )
+    {
+        return _listBeanNames;
+    }
+
+    /**
+     * Gets the staged aliases in registration order
+     * 
+     * @return a list of { name, alias } pairs
+     */
+    List<String [ ]> getOrderedAliases( )
+    {
+        return _listAliases;
+    }
+
+    /**
+     * Copies the staged bean definitions and aliases into the given registry
+     * 
+     * @param registry
+     *            the target registry
+     */
+    void copyTo( BeanDefinitionRegistry registry )
+    {
+        Map<String, String> mapGeneratedNames = new HashMap<>( );
+
+        for ( String strBeanName : _listBeanNames )
+        {
+            BeanDefinition beanDefinition = getBeanDefinition( strBeanName );
+            String strTargetName = strBeanName;
+
+            if ( isGeneratedName( strBeanName, beanDefinition ) )
+            {
+                strTargetName = BeanDefinitionReaderUtils.generateBeanName( beanDefinition, registry );
+                mapGeneratedNames.put( strBeanName, strTargetName );
+            }
+
+            registry.registerBeanDefinition( strTargetName, beanDefinition );
+        }
+
+        for ( String [ ] alias : _listAliases )
+        {
+            String strTargetName = mapGeneratedNames.get( alias [0] );
+
+            if ( strTargetName == null )
+            {
+                registry.registerAlias( alias [0], alias [1] );
+            }
+            else
+                if ( !registry.isBeanNameInUse( alias [1] ) )
+                {
+                    registry.registerAlias( strTargetName, alias [1] );
+                }
+        }
+    }
+
+    /**
+     * Indicates if a bean name has been generated by the reader for an anonymous bean, with the scheme of
+     * {@link BeanDefinitionReaderUtils#generateBeanName(BeanDefinition, BeanDefinitionRegistry)}
+     * 
+     * @param strBeanName
+     *            the bean name
+     * @param beanDefinition
+     *            the bean definition
+     * @return true if the name is a generated name
+     */
+    private static boolean isGeneratedName( String strBeanName, BeanDefinition beanDefinition )
+    {
+        String strPrefix = beanDefinition.getBeanClassName( );
+
+        if ( strPrefix == null )
+        {
+            if ( beanDefinition.getParentName( ) != null )
+            {
+                strPrefix = beanDefinition.getParentName( ) + "$child";
+            }
+            else
+                if ( beanDefinition.getFactoryBeanName( ) != null )
+                {
+                    strPrefix = beanDefinition.getFactoryBeanName( ) + "$created";
+                }
+                else
+                {
+                    return false;
+                }
+        }
+
+        strPrefix += BeanDefinitionReaderUtils.GENERATED_BEAN_NAME_SEPARATOR;
+
+        return strBeanName.length( ) > strPrefix.length( ) && strBeanName.startsWith( strPrefix )
+                && strBeanName.substring( strPrefix.length( ) ).chars( ).allMatch( Character::isDigit );
+    }
+}
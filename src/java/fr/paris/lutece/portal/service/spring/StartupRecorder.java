@@ -0,0 +1,543 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.metrics.ApplicationStartup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Records the startup timeline of the Spring integration : the main initialization phases, the loading time of each context file, the creation time of
+ * each bean and the registration time of each bean in the CDI container. Once the initialization is completed, the critical path of the singletons
+ * creation is computed and the timeline is written to a JSON report. The recorder is also exposed as a JMX MBean.
+ * <p>
+ * When the recorder is disabled, the recording methods only read a static field : <code>begin</code> returns 0 and the other methods return immediately.
+ */
+public final class StartupRecorder implements StartupRecorderMBean
+{
+    /** Initialization phases */
+    public static final String PHASE_LOAD_CONTEXTS = "loadContexts";
+    public static final String PHASE_INIT_PARENT_CONTEXT = "initParentContext";
+    public static final String PHASE_ADD_SPRING_BEANS_TO_CDI = "addSpringBeansToCdi";
+    public static final String PHASE_INIT = "init";
+
+    private static final String PROPERTY_RECORDER_ENABLED = "spring-extension.startup.recorder.enabled";
+    private static final String OBJECT_NAME = "fr.paris.lutece.portal.service.spring:type=StartupRecorder";
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final String KEY_NAME = "name";
+    private static final String KEY_START = "startMs";
+    private static final String KEY_DURATION = "durationMs";
+    private static final String KEY_SELF_DURATION = "selfDurationMs";
+    private static final String KEY_BEANS = "beans";
+    private static volatile StartupRecorder _recorder;
+    private static boolean _bStarted;
+
+    private final long _lStartTime = System.nanoTime( );
+    private final long _lStartDate = System.currentTimeMillis( );
+    private final Queue<TimelineEntry> _queuePhases = new ConcurrentLinkedQueue<>( );
+    private final Queue<TimelineEntry> _queueContextFiles = new ConcurrentLinkedQueue<>( );
+    private final Queue<TimelineEntry> _queueBeans = new ConcurrentLinkedQueue<>( );
+    private final Queue<TimelineEntry> _queueCdiRegistrations = new ConcurrentLinkedQueue<>( );
+    private final RecordingApplicationStartup _applicationStartup = new RecordingApplicationStartup( this );
+    private volatile long _lEndTime;
+    private volatile List<String> _listCriticalPath = Collections.emptyList( );
+
+    /**
+     * Private constructor
+     */
+    private StartupRecorder( )
+    {
+    }
+
+    /**
+     * Starts the recording if the recorder is enabled. Only the first call has an effect.
+     */
+    public static synchronized void start( )
+    {
+        if ( _bStarted )
+        {
+            return;
+        }
+
+        _bStarted = true;
+
+        if ( AppPropertiesService.getPropertyBoolean( PROPERTY_RECORDER_ENABLED, false ) )
+        {
+            StartupRecorder recorder = new StartupRecorder( );
+            recorder.register( );
+            _recorder = recorder;
+            AppLogService.info( "Spring startup recorder started" );
+        }
+    }
+
+    /**
+     * Stops the recording and unregisters the MBean
+     */
+    public static synchronized void stop( )
+    {
+        StartupRecorder recorder = _recorder;
+        _recorder = null;
+
+        if ( recorder != null )
+        {
+            recorder.unregister( );
+        }
+    }
+
+    /**
+     * Gets the start time of a recorded operation
+     * 
+     * @return the current time in nanoseconds, 0 if the recorder is disabled
+     */
+    public static long begin( )
+    {
+        return ( _recorder != null ) ? System.nanoTime( ) : 0L;
+    }
+
+    /**
+     * Records an initialization phase
+     * 
+     * @param strPhase
+     *            the phase name
+     * @param lStart
+     *            the start time returned by {@link #begin()}
+     */
+    public static void recordPhase( String strPhase, long lStart )
+    {
+        StartupRecorder recorder = _recorder;
+
+        if ( recorder != null )
+        {
+            recorder._queuePhases.add( recorder.newEntry( strPhase, lStart ) );
+        }
+    }
+
+    /**
+     * Records the loading of a context file
+     * 
+     * @param strContextFile
+     *            the context file
+     * @param lStart
+     *            the start time returned by {@link #begin()}
+     */
+    public static void recordContextFile( String strContextFile, long lStart )
+    {
+        StartupRecorder recorder = _recorder;
+
+        if ( recorder != null )
+        {
+            recorder._queueContextFiles.add( recorder.newEntry( strContextFile, lStart ) );
+        }
+    }
+
+    /**
+     * Records the registration of a Spring bean in the CDI container
+     * 
+     * @param strBeanName
+     *            the bean name
+     * @param lStart
+     *            the start time returned by {@link #begin()}
+     */
+    public static void recordCdiRegistration( String strBeanName, long lStart )
+    {
+        StartupRecorder recorder = _recorder;
+
+        if ( recorder != null )
+        {
+            recorder._queueCdiRegistrations.add( recorder.newEntry( strBeanName, lStart ) );
+        }
+    }
+
+    /**
+     * Gets the application startup recording the creation of the beans of a context
+     * 
+     * @return the application startup, null if the recorder is disabled
+     */
+    static ApplicationStartup getApplicationStartup( )
+    {
+        StartupRecorder recorder = _recorder;
+
+        return ( recorder != null ) ? recorder._applicationStartup : null;
+    }
+
+    /**
+     * Completes the recording : computes the critical path of the singletons creation and writes the report
+     * 
+     * @param beanFactory
+     *            the bean factory of the parent context, may be null
+     * @param pathReport
+     *            the report file
+     */
+    static void complete( DefaultListableBeanFactory beanFactory, Path pathReport )
+    {
+        StartupRecorder recorder = _recorder;
+
+        if ( recorder == null )
+        {
+            return;
+        }
+
+        recorder._lEndTime = System.nanoTime( );
+
+        if ( beanFactory != null )
+        {
+            recorder._listCriticalPath = SingletonDependencyGraph.build( beanFactory ).getCriticalPath( recorder.getSelfDurations( ) );
+        }
+
+        try
+        {
+            Files.createDirectories( pathReport.getParent( ) );
+            Files.write( pathReport, recorder.getReport( ).getBytes( StandardCharsets.UTF_8 ) );
+            AppLogService.info( "Spring startup report written to {} ({} ms elapsed, critical path : {} ms)", pathReport, recorder.getElapsedTime( ),
+                    recorder.getCriticalPathTime( ) );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Unable to write the Spring startup report {} - cause : {}", pathReport, e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Records the creation of a bean
+     * 
+     * @param strBeanName
+     *            the bean name
+     * @param lStart
+     *            the start time in nanoseconds
+     * @param lDuration
+     *            the creation time in nanoseconds
+     * @param lSelfDuration
+     *            the creation time in nanoseconds, excluding the creation of the dependencies
+     */
+    void recordBeanCreation( String strBeanName, long lStart, long lDuration, long lSelfDuration )
+    {
+        _queueBeans.add( new TimelineEntry( strBeanName, lStart - _lStartTime, lDuration, lSelfDuration ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getElapsedTime( )
+    {
+        long lEndTime = _lEndTime;
+
+        return ( ( ( lEndTime != 0 ) ? lEndTime : System.nanoTime( ) ) - _lStartTime ) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getContextFileCount( )
+    {
+        return _queueContextFiles.size( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getContextFilesLoadingTime( )
+    {
+        return getTotalDuration( _queueContextFiles ) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getBeanCount( )
+    {
+        return _queueBeans.size( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBeansCreationTime( )
+    {
+        return _queueBeans.stream( ).mapToLong( entry -> entry._lSelfDuration ).sum( ) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCdiRegistrationTime( )
+    {
+        return getTotalDuration( _queueCdiRegistrations ) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String [ ] getCriticalPath( )
+    {
+        return _listCriticalPath.toArray( new String [ 0] );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getReport( )
+    {
+        Map<String, Object> mapReport = new LinkedHashMap<>( );
+        mapReport.put( "startDate", _lStartDate );
+        mapReport.put( "elapsedMs", getElapsedTime( ) );
+        mapReport.put( "phases", toList( _queuePhases, false ) );
+        mapReport.put( "contextFiles", toList( _queueContextFiles, false ) );
+        mapReport.put( KEY_BEANS, toList( _queueBeans, true ) );
+        mapReport.put( "cdiRegistrations", toList( _queueCdiRegistrations, false ) );
+
+        Map<String, Object> mapCriticalPath = new LinkedHashMap<>( );
+        mapCriticalPath.put( KEY_DURATION, getCriticalPathTime( ) );
+        mapCriticalPath.put( KEY_BEANS, _listCriticalPath );
+        mapReport.put( "criticalPath", mapCriticalPath );
+
+        try
+        {
+            // The report is built on demand only : the mapper is not kept so that Jackson is not loaded during the startup it measures
+            return new ObjectMapper( ).writerWithDefaultPrettyPrinter( ).writeValueAsString( mapReport );
+        }
+        catch( JsonProcessingException e )
+        {
+            AppLogService.error( "Unable to build the Spring startup report - cause : {}", e.getMessage( ), e );
+
+            return "{}";
+        }
+    }
+
+    /**
+     * Gets the cumulated creation time of the singletons of the critical path
+     * 
+     * @return the time in milliseconds
+     */
+    private long getCriticalPathTime( )
+    {
+        Map<String, Long> mapSelfDurations = getSelfDurations( );
+
+        return _listCriticalPath.stream( ).mapToLong( strBeanName -> mapSelfDurations.getOrDefault( strBeanName, 0L ) ).sum( ) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Gets the creation time of each bean, excluding the creation of its dependencies
+     * 
+     * @return the times in nanoseconds by bean name
+     */
+    private Map<String, Long> getSelfDurations( )
+    {
+        Map<String, Long> mapSelfDurations = new HashMap<>( );
+
+        for ( TimelineEntry entry : _queueBeans )
+        {
+            mapSelfDurations.merge( entry._strName, entry._lSelfDuration, Long::sum );
+        }
+
+        return mapSelfDurations;
+    }
+
+    /**
+     * Creates a timeline entry ending now
+     * 
+     * @param strName
+     *            the entry name
+     * @param lStart
+     *            the start time in nanoseconds
+     * @return the entry
+     */
+    private TimelineEntry newEntry( String strName, long lStart )
+    {
+        long lDuration = System.nanoTime( ) - lStart;
+
+        return new TimelineEntry( strName, lStart - _lStartTime, lDuration, lDuration );
+    }
+
+    /**
+     * Registers the MBean
+     */
+    private void register( )
+    {
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer( );
+            ObjectName objectName = new ObjectName( OBJECT_NAME );
+
+            // A previous deployment of the webapp in the same JVM may not have been stopped
+            if ( server.isRegistered( objectName ) )
+            {
+                server.unregisterMBean( objectName );
+            }
+
+            server.registerMBean( this, objectName );
+        }
+        catch( JMException e )
+        {
+            AppLogService.error( "Unable to register the Spring startup recorder MBean - cause : {}", e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Unregisters the MBean
+     */
+    private void unregister( )
+    {
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer( );
+            ObjectName objectName = new ObjectName( OBJECT_NAME );
+
+            if ( server.isRegistered( objectName ) )
+            {
+                server.unregisterMBean( objectName );
+            }
+        }
+        catch( JMException e )
+        {
+            AppLogService.error( "Unable to unregister the Spring startup recorder MBean - cause : {}", e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Gets the cumulated duration of timeline entries
+     * 
+     * @param queueEntries
+     *            the entries
+     * @return the duration in nanoseconds
+     */
+    private static long getTotalDuration( Queue<TimelineEntry> queueEntries )
+    {
+        return queueEntries.stream( ).mapToLong( entry -> entry._lDuration ).sum( );
+    }
+
+    /**
+     * Converts timeline entries for the report
+     * 
+     * @param queueEntries
+     *            the entries
+     * @param bSelfDuration
+     *            true to include the duration excluding the dependencies
+     * @return the converted entries
+     */
+    private static List<Map<String, Object>> toList( Queue<TimelineEntry> queueEntries, boolean bSelfDuration )
+    {
+        List<Map<String, Object>> listEntries = new ArrayList<>( );
+
+        for ( TimelineEntry entry : queueEntries )
+        {
+            Map<String, Object> mapEntry = new LinkedHashMap<>( );
+            mapEntry.put( KEY_NAME, entry._strName );
+            mapEntry.put( KEY_START, toMillis( entry._lStart ) );
+            mapEntry.put( KEY_DURATION, toMillis( entry._lDuration ) );
+
+            if ( bSelfDuration )
+            {
+                mapEntry.put( KEY_SELF_DURATION, toMillis( entry._lSelfDuration ) );
+            }
+
+            listEntries.add( mapEntry );
+        }
+
+        return listEntries;
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds, keeping three decimals
+     * 
+     * @param lNanos
+     *            the time in nanoseconds
+     * @return the time in milliseconds
+     */
+    private static double toMillis( long lNanos )
+    {
+        return ( lNanos / 1000L ) / 1000.0;
+    }
+
+    /**
+     * Entry of the timeline. Times are in nanoseconds, relative to the start of the recording.
+     */
+    private static final class TimelineEntry
+    {
+        private final String _strName;
+        private final long _lStart;
+        private final long _lDuration;
+        private final long _lSelfDuration;
+
+        /**
+         * Constructor
+         * 
+         * @param strName
+         *            the entry name
+         * @param lStart
+         *            the start time
+         * @param lDuration
+         *            the duration
+         * @param lSelfDuration
+         *            the duration excluding the nested operations
+         */
+        TimelineEntry( String strName, long lStart, long lDuration, long lSelfDuration )
+        {
+            _strName = strName;
+            _lStart = lStart;
+            _lDuration = lDuration;
+            _lSelfDuration = lSelfDuration;
+        }
+    }
+}
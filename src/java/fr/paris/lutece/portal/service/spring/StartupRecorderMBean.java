@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+/**
+ * JMX interface of the {@link StartupRecorder}. Durations are in milliseconds.
+ */
+public interface StartupRecorderMBean
+{
+    /**
+     * Gets the time elapsed between the start of the recording and the end of the Spring initialization
+     * 
+     * @return the elapsed time, or the time elapsed so far if the initialization is not completed
+     */
+    long getElapsedTime( );
+
+    /**
+     * Gets the number of context files loaded
+     * 
+     * @return the number of context files
+     */
+    int getContextFileCount( );
+
+    /**
+     * Gets the cumulated loading time of the context files
+     * 
+     * @return the loading time
+     */
+    long getContextFilesLoadingTime( );
+
+    /**
+     * Gets the number of beans created
+     * 
+     * @return the number of beans
+     */
+    int getBeanCount( );
+
+    /**
+     * Gets the cumulated creation time of the beans, excluding the creation of their dependencies
+     * 
+     * @return the creation time
+     */
+    long getBeansCreationTime( );
+
+    /**
+     * Gets the cumulated registration time of the Spring beans in the CDI container
+     * 
+     * @return the registration time
+     */
+    long getCdiRegistrationTime( );
+
+    /**
+     * Gets the critical path of the singletons creation
+     * 
+     * @return the names of the singletons of the critical path, dependencies first
+     */
+    String [ ] getCriticalPath( );
+
+    /**
+     * Gets the full timeline as a JSON report
+     * 
+     * @return the JSON report
+     */
+    String getReport( );
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.spring.extension.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import jakarta.enterprise.context.spi.CreationalContext;
+import jakarta.enterprise.inject.spi.BeanManager;
+import jakarta.enterprise.inject.spi.InjectionTarget;
+
+/**
+ * SpringBeanLifecycle Test Class
+ */
+public class SpringBeanLifecycleTest
+{
+    private final List<Object> _listInjected = new ArrayList<>( );
+    private final List<CreationalContext<?>> _listInjectionContexts = new ArrayList<>( );
+    private final List<RecordingCreationalContext> _listCreatedContexts = new ArrayList<>( );
+    private final List<Object> _listDestroyed = new ArrayList<>( );
+    private Object _instance = new Object( );
+
+    /**
+     * A singleton is injected once per Spring instance, with a creational context of the lifecycle released when the instance is replaced
+     */
+    @Test
+    public void testSingletonInjectedOncePerInstance( )
+    {
+        SpringBeanLifecycle lifecycle = createLifecycle( true, false );
+        RecordingCreationalContext creationalContext = new RecordingCreationalContext( );
+
+        Object instance = lifecycle.create( creationalContext );
+        lifecycle.create( new RecordingCreationalContext( ) );
+
+        assertEquals( 1, _listInjected.size( ) );
+        assertEquals( 1, _listCreatedContexts.size( ) );
+        assertSame( _listCreatedContexts.get( 0 ), _listInjectionContexts.get( 0 ) );
+
+        lifecycle.destroy( instance, creationalContext );
+
+        assertEquals( 1, creationalContext._nReleases );
+        assertEquals( 0, _listCreatedContexts.get( 0 )._nReleases );
+        assertTrue( _listDestroyed.isEmpty( ) );
+
+        _instance = new Object( );
+        lifecycle.create( new RecordingCreationalContext( ) );
+
+        assertEquals( 2, _listInjected.size( ) );
+        assertSame( _instance, _listInjected.get( 1 ) );
+        assertEquals( 1, _listCreatedContexts.get( 0 )._nReleases );
+        assertSame( _listCreatedContexts.get( 1 ), _listInjectionContexts.get( 1 ) );
+    }
+
+    /**
+     * The instances of a request or session scoped bean are injected with the creational context of their CDI instance, and left to Spring when disposed
+     */
+    @Test
+    public void testScopedBeanInjectedWithCdiContext( )
+    {
+        SpringBeanLifecycle lifecycle = createLifecycle( false, false );
+        RecordingCreationalContext creationalFirst = new RecordingCreationalContext( );
+        Object instanceFirst = lifecycle.create( creationalFirst );
+
+        _instance = new Object( );
+        RecordingCreationalContext creationalSecond = new RecordingCreationalContext( );
+        Object instanceSecond = lifecycle.create( creationalSecond );
+
+        assertEquals( 2, _listInjected.size( ) );
+        assertSame( instanceFirst, _listInjected.get( 0 ) );
+        assertSame( instanceSecond, _listInjected.get( 1 ) );
+        assertSame( creationalFirst, _listInjectionContexts.get( 0 ) );
+        assertSame( creationalSecond, _listInjectionContexts.get( 1 ) );
+        assertTrue( _listCreatedContexts.isEmpty( ) );
+
+        lifecycle.destroy( instanceFirst, creationalFirst );
+
+        assertEquals( 1, creationalFirst._nReleases );
+        assertEquals( 0, creationalSecond._nReleases );
+        assertTrue( _listDestroyed.isEmpty( ) );
+    }
+
+    /**
+     * A prototype is injected on each creation and destroyed by Spring when disposed
+     */
+    @Test
+    public void testPrototypeDestroyedBySpring( )
+    {
+        SpringBeanLifecycle lifecycle = createLifecycle( false, true );
+        RecordingCreationalContext creationalContext = new RecordingCreationalContext( );
+
+        Object instance = lifecycle.create( creationalContext );
+        lifecycle.create( new RecordingCreationalContext( ) );
+
+        assertEquals( 2, _listInjected.size( ) );
+        assertSame( creationalContext, _listInjectionContexts.get( 0 ) );
+        assertTrue( _listCreatedContexts.isEmpty( ) );
+
+        lifecycle.destroy( instance, creationalContext );
+
+        assertEquals( 1, _listDestroyed.size( ) );
+        assertSame( instance, _listDestroyed.get( 0 ) );
+        assertEquals( 1, creationalContext._nReleases );
+    }
+
+    /**
+     * Creates a lifecycle returning the current instance, recording the injections and the destructions
+     * 
+     * @param bSingleton
+     *            true for a singleton
+     * @param bPrototype
+     *            true for a prototype
+     * @return the lifecycle
+     */
+    @SuppressWarnings( "unchecked" )
+    private SpringBeanLifecycle createLifecycle( boolean bSingleton, boolean bPrototype )
+    {
+        InjectionTarget<Object> injectionTarget = (InjectionTarget<Object>) Proxy.newProxyInstance( getClass( ).getClassLoader( ), new Class<?> [ ] {
+                InjectionTarget.class
+        }, ( proxy, method, args ) -> {
+            if ( "inject".equals( method.getName( ) ) )
+            {
+                _listInjected.add( args [0] );
+                _listInjectionContexts.add( (CreationalContext<?>) args [1] );
+            }
+
+            return null;
+        } );
+
+        BeanManager beanManager = (BeanManager) Proxy.newProxyInstance( getClass( ).getClassLoader( ), new Class<?> [ ] {
+                BeanManager.class
+        }, ( proxy, method, args ) -> {
+            if ( "createCreationalContext".equals( method.getName( ) ) )
+            {
+                RecordingCreationalContext creationalContext = new RecordingCreationalContext( );
+                _listCreatedContexts.add( creationalContext );
+
+                return creationalContext;
+            }
+
+            throw new UnsupportedOperationException( method.getName( ) );
+        } );
+
+        return new SpringBeanLifecycle( "bean", Object.class, injectionTarget, bSingleton, bPrototype, beanManager )
+        {
+            @Override
+            Object getInstance( )
+            {
+                return _instance;
+            }
+
+            @Override
+            void destroyInstance( Object instance )
+            {
+                _listDestroyed.add( instance );
+            }
+        };
+    }
+
+    /**
+     * Creational context recording its releases
+     */
+    private static final class RecordingCreationalContext implements CreationalContext<Object>
+    {
+        private int _nReleases;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void push( Object incompleteInstance )
+        {
+            // Nothing to record
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void release( )
+        {
+            _nReleases++;
+        }
+    }
+}
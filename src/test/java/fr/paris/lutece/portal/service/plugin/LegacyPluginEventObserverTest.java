@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * LegacyPluginEventObserver Test Class
+ */
+public class LegacyPluginEventObserverTest
+{
+    private static final int GC_ATTEMPTS = 50;
+
+    private final LegacyPluginEventObserver _observer = new LegacyPluginEventObserver( );
+
+    /**
+     * Disables the asynchronous dispatch : the events are delivered before observePluginEvent returns
+     */
+    @BeforeEach
+    public void setUp( )
+    {
+        LegacyPluginEventObserver.shutdown( );
+    }
+
+    /**
+     * A listener only referenced by the registry is garbage collected and stops receiving events
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    @Test
+    public void testWeaklyHeldListenerCollected( ) throws InterruptedException
+    {
+        List<PluginEvent> listReceived = Collections.synchronizedList( new ArrayList<>( ) );
+        RecordingListener listener = new RecordingListener( listReceived );
+        WeakReference<RecordingListener> reference = new WeakReference<>( listener );
+        LegacyPluginEventObserver.registerPluginEventListener( listener );
+
+        PluginEvent event = new PluginEvent( PluginEventPipelineTest.createPlugin( "weak" ), PluginEvent.PLUGIN_INSTALLED );
+        _observer.observePluginEvent( event );
+        assertEquals( Arrays.asList( event ), listReceived );
+
+        listener = null;
+
+        for ( int i = 0; i < GC_ATTEMPTS && reference.get( ) != null; i++ )
+        {
+            System.gc( );
+            Thread.sleep( 10 );
+        }
+
+        assertNull( reference.get( ) );
+        _observer.observePluginEvent( new PluginEvent( PluginEventPipelineTest.createPlugin( "weak" ), PluginEvent.PLUGIN_UNINSTALLED ) );
+        assertEquals( Arrays.asList( event ), listReceived );
+    }
+
+    /**
+     * A listener only receives the events of its plugin and of the event types it registered for
+     */
+    @Test
+    public void testFilterByPluginAndEventType( )
+    {
+        RecordingListener listener = new RecordingListener( );
+        RecordingListener listenerGlobal = new RecordingListener( );
+        Plugin plugin = PluginEventPipelineTest.createPlugin( "filtered" );
+        Plugin pluginOther = PluginEventPipelineTest.createPlugin( "unfiltered" );
+        PluginEvent eventInstalled = new PluginEvent( plugin, PluginEvent.PLUGIN_INSTALLED );
+        PluginEvent eventUninstalled = new PluginEvent( plugin, PluginEvent.PLUGIN_UNINSTALLED );
+        PluginEvent eventPoolChanged = new PluginEvent( plugin, PluginEvent.PLUGIN_POOL_CHANGED );
+        PluginEvent eventOther = new PluginEvent( pluginOther, PluginEvent.PLUGIN_INSTALLED );
+
+        try
+        {
+            LegacyPluginEventObserver.registerPluginEventListener( listener, "filtered", PluginEvent.PLUGIN_INSTALLED, PluginEvent.PLUGIN_UNINSTALLED );
+            LegacyPluginEventObserver.registerPluginEventListener( listenerGlobal, null, PluginEvent.PLUGIN_POOL_CHANGED );
+
+            _observer.observePluginEvent( eventInstalled );
+            _observer.observePluginEvent( eventPoolChanged );
+            _observer.observePluginEvent( eventOther );
+            _observer.observePluginEvent( eventUninstalled );
+
+            assertEquals( Arrays.asList( eventInstalled, eventUninstalled ), listener._listReceived );
+            assertEquals( Arrays.asList( eventPoolChanged ), listenerGlobal._listReceived );
+        }
+        finally
+        {
+            LegacyPluginEventObserver.unregisterPluginEventListener( listener );
+            LegacyPluginEventObserver.unregisterPluginEventListener( listenerGlobal );
+        }
+    }
+
+    /**
+     * Registering a listener again replaces its filter, as a transaction manager does when its plugin name is set
+     */
+    @Test
+    public void testRegisterAgainReplacesFilter( )
+    {
+        RecordingListener listener = new RecordingListener( );
+        PluginEvent eventFirst = new PluginEvent( PluginEventPipelineTest.createPlugin( "first" ), PluginEvent.PLUGIN_INSTALLED );
+        PluginEvent eventSecond = new PluginEvent( PluginEventPipelineTest.createPlugin( "second" ), PluginEvent.PLUGIN_INSTALLED );
+
+        try
+        {
+            // Same sequence as DAOUtilTransactionManager : registered for all the plugins, then for its own plugin
+            LegacyPluginEventObserver.registerPluginEventListener( listener );
+            LegacyPluginEventObserver.registerPluginEventListener( listener, "second", PluginEvent.PLUGIN_INSTALLED, PluginEvent.PLUGIN_UNINSTALLED,
+                    PluginEvent.PLUGIN_POOL_CHANGED );
+
+            _observer.observePluginEvent( eventFirst );
+            _observer.observePluginEvent( eventSecond );
+
+            assertEquals( Arrays.asList( eventSecond ), listener._listReceived );
+
+            LegacyPluginEventObserver.unregisterPluginEventListener( listener );
+            _observer.observePluginEvent( eventSecond );
+
+            assertEquals( Arrays.asList( eventSecond ), listener._listReceived );
+        }
+        finally
+        {
+            LegacyPluginEventObserver.unregisterPluginEventListener( listener );
+        }
+    }
+
+    /**
+     * Listener recording the events it receives
+     */
+    private static final class RecordingListener implements PluginEventListener
+    {
+        private final List<PluginEvent> _listReceived;
+
+        /**
+         * Constructor
+         */
+        RecordingListener( )
+        {
+            this( Collections.synchronizedList( new ArrayList<>( ) ) );
+        }
+
+        /**
+         * Constructor
+         * 
+         * @param listReceived
+         *            the list the received events are added to
+         */
+        RecordingListener( List<PluginEvent> listReceived )
+        {
+            _listReceived = listReceived;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void processPluginEvent( PluginEvent event )
+        {
+            _listReceived.add( event );
+        }
+    }
+}
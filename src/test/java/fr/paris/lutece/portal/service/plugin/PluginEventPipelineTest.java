@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * PluginEventPipeline Test Class
+ */
+public class PluginEventPipelineTest
+{
+    private static final long WINDOW = 200;
+    private static final long TIMEOUT = 5000;
+
+    /**
+     * A burst of events fired within the window is delivered in a single call, in firing order
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    @Test
+    public void testBurstCoalesced( ) throws InterruptedException
+    {
+        PluginEventPipeline pipeline = new PluginEventPipeline( WINDOW, false );
+        RecordingListener listener = new RecordingListener( 1 );
+        LegacyPluginEventObserver.ListenerReference reference = new LegacyPluginEventObserver.ListenerReference( listener, null, -1 );
+        Plugin plugin = createPlugin( "first" );
+        Plugin pluginOther = createPlugin( "second" );
+        List<PluginEvent> listFired = Arrays.asList( new PluginEvent( plugin, PluginEvent.PLUGIN_INSTALLED ),
+                new PluginEvent( pluginOther, PluginEvent.PLUGIN_INSTALLED ), new PluginEvent( plugin, PluginEvent.PLUGIN_UNINSTALLED ),
+                new PluginEvent( plugin, PluginEvent.PLUGIN_INSTALLED ) );
+
+        try
+        {
+            for ( PluginEvent event : listFired )
+            {
+                pipeline.enqueue( reference, event );
+            }
+
+            assertTrue( listener._latch.await( TIMEOUT, TimeUnit.MILLISECONDS ) );
+            assertEquals( 1, listener._listBatches.size( ) );
+            assertEquals( listFired, listener._listBatches.get( 0 ) );
+            assertEquals( 1, pipeline.getBatchCount( ) );
+            assertEquals( 4, pipeline.getEventCount( ) );
+        }
+        finally
+        {
+            pipeline.stop( );
+        }
+    }
+
+    /**
+     * The pipeline does not keep a listener alive : the events of a collected listener are dropped
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    @Test
+    public void testCollectedListenerDropped( ) throws InterruptedException
+    {
+        PluginEventPipeline pipeline = new PluginEventPipeline( WINDOW, false );
+        LegacyPluginEventObserver.ListenerReference reference = new LegacyPluginEventObserver.ListenerReference( new RecordingListener( 1 ), null, -1 );
+
+        try
+        {
+            pipeline.enqueue( reference, new PluginEvent( createPlugin( "first" ), PluginEvent.PLUGIN_INSTALLED ) );
+            // Simulates the collection of the listener
+            reference.clear( );
+
+            long lEnd = System.currentTimeMillis( ) + TIMEOUT;
+
+            while ( pipeline.getQueueDepth( ) > 0 && System.currentTimeMillis( ) < lEnd )
+            {
+                Thread.sleep( 10 );
+            }
+
+            assertEquals( 0, pipeline.getQueueDepth( ) );
+            assertEquals( 0, pipeline.getBatchCount( ) );
+        }
+        finally
+        {
+            pipeline.stop( );
+        }
+    }
+
+    /**
+     * Creates a plugin
+     * 
+     * @param strName
+     *            the plugin name
+     * @return the plugin
+     */
+    static Plugin createPlugin( String strName )
+    {
+        Plugin plugin = new PluginDefaultImplementation( );
+        plugin.setName( strName );
+
+        return plugin;
+    }
+
+    /**
+     * Listener recording the bursts it receives
+     */
+    private static final class RecordingListener implements BatchPluginEventListener
+    {
+        private final List<List<PluginEvent>> _listBatches = Collections.synchronizedList( new ArrayList<>( ) );
+        private final CountDownLatch _latch;
+
+        /**
+         * Constructor
+         * 
+         * @param nBatches
+         *            the number of bursts to wait for
+         */
+        RecordingListener( int nBatches )
+        {
+            _latch = new CountDownLatch( nBatches );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void processPluginEvents( List<PluginEvent> listEvents )
+        {
+            _listBatches.add( new ArrayList<>( listEvents ) );
+            _latch.countDown( );
+        }
+    }
+}
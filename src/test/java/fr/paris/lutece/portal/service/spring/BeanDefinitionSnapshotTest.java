@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.support.ManagedList;
+import org.springframework.beans.factory.support.ManagedMap;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * BeanDefinitionSnapshot Test Class
+ */
+public class BeanDefinitionSnapshotTest
+{
+    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<beans xmlns=\"http://www.springframework.org/schema/beans\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n"
+            + "       xsi:schemaLocation=\"http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans.xsd\">\n";
+    private static final String XML_FOOTER = "</beans>\n";
+    private static final String XML_BEANS = "<bean id=\"service\" class=\"java.util.HashMap\" scope=\"prototype\" lazy-init=\"true\" depends-on=\"list\""
+            + " init-method=\"clear\" destroy-method=\"clear\">\n"
+            + "  <constructor-arg index=\"0\" value=\"16\" type=\"int\"/>\n"
+            + "  <constructor-arg ref=\"list\"/>\n"
+            + "  <property name=\"text\" value=\"hello\"/>\n"
+            + "  <property name=\"number\"><value type=\"java.lang.Integer\">42</value></property>\n"
+            + "  <property name=\"reference\" ref=\"list\"/>\n"
+            + "  <property name=\"nested\"><bean class=\"java.util.ArrayList\"><property name=\"inner\" value=\"value\"/></bean></property>\n"
+            + "  <property name=\"items\"><list><value>a</value><ref bean=\"list\"/><null/></list></property>\n"
+            + "  <property name=\"entries\"><map><entry key=\"key\" value=\"value\"/><entry key=\"ref\" value-ref=\"list\"/></map></property>\n"
+            + "  <property name=\"set\"><set value-type=\"java.lang.String\"><value>x</value></set></property>\n"
+            + "  <property name=\"props\"><props><prop key=\"name\">value</prop></props></property>\n"
+            + "  <property name=\"names\"><array><idref bean=\"list\"/></array></property>\n"
+            + "</bean>\n"
+            + "<bean id=\"list\" name=\"items,elements\" class=\"java.util.ArrayList\"/>\n"
+            + "<bean class=\"java.util.LinkedList\"/>\n"
+            + "<alias name=\"service\" alias=\"main\"/>\n";
+    private static final String XML_PROFILES = "<beans profile=\"dev\"><bean id=\"devBean\" class=\"java.util.ArrayList\"/></beans>\n";
+
+    @TempDir
+    Path _pathTemp;
+
+    /**
+     * The definitions and aliases of a context file are the same once decoded from a reopened snapshot
+     * 
+     * @throws IOException
+     *             if a file cannot be written
+     */
+    @Test
+    public void testRoundTrip( ) throws IOException
+    {
+        Environment environment = new StandardEnvironment( );
+        String strFile = writeContext( "roundtrip_context.xml", XML_BEANS );
+        StagingBeanDefinitionRegistry parsed = stage( strFile, environment );
+        Path pathSnapshot = _pathTemp.resolve( "spring-context.snapshot" );
+
+        BeanDefinitionSnapshot snapshot = BeanDefinitionSnapshot.open( pathSnapshot, environment );
+        assertNull( snapshot.load( strFile, BeanDefinitionSnapshot.hash( strFile ) ) );
+        snapshot.store( strFile, BeanDefinitionSnapshot.hash( strFile ), parsed );
+        snapshot.save( );
+
+        BeanDefinitionSnapshot reopened = BeanDefinitionSnapshot.open( pathSnapshot, environment );
+        StagingBeanDefinitionRegistry decoded = reopened.load( strFile, BeanDefinitionSnapshot.hash( strFile ) );
+
+        assertNotNull( decoded );
+        assertEquals( parsed.getOrderedBeanNames( ), decoded.getOrderedBeanNames( ) );
+
+        for ( String strBeanName : parsed.getOrderedBeanNames( ) )
+        {
+            assertEquals( parsed.getBeanDefinition( strBeanName ), decoded.getBeanDefinition( strBeanName ), strBeanName );
+        }
+
+        List<String [ ]> listParsedAliases = parsed.getOrderedAliases( );
+        List<String [ ]> listDecodedAliases = decoded.getOrderedAliases( );
+        assertEquals( listParsedAliases.size( ), listDecodedAliases.size( ) );
+
+        for ( int i = 0; i < listParsedAliases.size( ); i++ )
+        {
+            assertArrayEquals( listParsedAliases.get( i ), listDecodedAliases.get( i ) );
+        }
+
+        BeanDefinition service = decoded.getBeanDefinition( "service" );
+        assertEquals( 1, service.getConstructorArgumentValues( ).getIndexedArgumentValues( ).size( ) );
+        assertEquals( 1, service.getConstructorArgumentValues( ).getGenericArgumentValues( ).size( ) );
+        assertTrue( service.getPropertyValues( ).getPropertyValue( "reference" ).getValue( ) instanceof RuntimeBeanReference );
+        assertTrue( service.getPropertyValues( ).getPropertyValue( "nested" ).getValue( ) instanceof BeanDefinitionHolder );
+        assertTrue( service.getPropertyValues( ).getPropertyValue( "items" ).getValue( ) instanceof ManagedList );
+        assertTrue( service.getPropertyValues( ).getPropertyValue( "entries" ).getValue( ) instanceof ManagedMap );
+    }
+
+    /**
+     * A snapshot written with other profiles is discarded, since the parser filters the definitions with them
+     * 
+     * @throws IOException
+     *             if a file cannot be written
+     */
+    @Test
+    public void testProfilesChangeDiscardsSnapshot( ) throws IOException
+    {
+        StandardEnvironment environment = new StandardEnvironment( );
+        environment.setActiveProfiles( "dev" );
+
+        String strFile = writeContext( "profiles_context.xml", XML_PROFILES );
+        Path pathSnapshot = _pathTemp.resolve( "spring-context.snapshot" );
+
+        BeanDefinitionSnapshot snapshot = BeanDefinitionSnapshot.open( pathSnapshot, environment );
+        StagingBeanDefinitionRegistry staging = stage( strFile, environment );
+        assertTrue( staging.containsBeanDefinition( "devBean" ) );
+        snapshot.store( strFile, BeanDefinitionSnapshot.hash( strFile ), staging );
+        snapshot.save( );
+
+        StandardEnvironment environmentSameProfiles = new StandardEnvironment( );
+        environmentSameProfiles.setActiveProfiles( "dev" );
+        assertNotNull( BeanDefinitionSnapshot.open( pathSnapshot, environmentSameProfiles ).load( strFile, BeanDefinitionSnapshot.hash( strFile ) ) );
+
+        StandardEnvironment environmentOtherProfiles = new StandardEnvironment( );
+        environmentOtherProfiles.setActiveProfiles( "prod" );
+        assertNull( BeanDefinitionSnapshot.open( pathSnapshot, environmentOtherProfiles ).load( strFile, BeanDefinitionSnapshot.hash( strFile ) ) );
+    }
+
+    /**
+     * Entries of context files that are not loaded anymore are dropped when the snapshot is rewritten
+     * 
+     * @throws IOException
+     *             if a file cannot be written
+     */
+    @Test
+    public void testSavePrunesFilesNotLoaded( ) throws IOException
+    {
+        Environment environment = new StandardEnvironment( );
+        String strKept = writeContext( "kept_context.xml", "<bean id=\"kept\" class=\"java.util.ArrayList\"/>\n" );
+        String strRemoved = writeContext( "removed_context.xml", "<bean id=\"removed\" class=\"java.util.ArrayList\"/>\n" );
+        Path pathSnapshot = _pathTemp.resolve( "spring-context.snapshot" );
+
+        BeanDefinitionSnapshot snapshot = BeanDefinitionSnapshot.open( pathSnapshot, environment );
+        snapshot.store( strKept, BeanDefinitionSnapshot.hash( strKept ), stage( strKept, environment ) );
+        snapshot.store( strRemoved, BeanDefinitionSnapshot.hash( strRemoved ), stage( strRemoved, environment ) );
+        snapshot.save( );
+
+        // Next boot only loads the first file
+        snapshot = BeanDefinitionSnapshot.open( pathSnapshot, environment );
+        assertNotNull( snapshot.load( strKept, BeanDefinitionSnapshot.hash( strKept ) ) );
+        snapshot.save( );
+
+        snapshot = BeanDefinitionSnapshot.open( pathSnapshot, environment );
+        assertNotNull( snapshot.load( strKept, BeanDefinitionSnapshot.hash( strKept ) ) );
+        assertNull( snapshot.load( strRemoved, BeanDefinitionSnapshot.hash( strRemoved ) ) );
+        assertEquals( 1, snapshot.getHits( ) );
+        assertEquals( 1, snapshot.getMisses( ) );
+    }
+
+    /**
+     * Parses a context file in its own staging registry
+     * 
+     * @param strFile
+     *            the context file
+     * @param environment
+     *            the environment the profiles are read from
+     * @return the staging registry
+     */
+    private static StagingBeanDefinitionRegistry stage( String strFile, Environment environment )
+    {
+        StagingBeanDefinitionRegistry staging = new StagingBeanDefinitionRegistry( );
+        XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader( staging );
+        reader.setEnvironment( environment );
+        reader.loadBeanDefinitions( new FileSystemResource( strFile ) );
+
+        return staging;
+    }
+
+    /**
+     * Writes a context file
+     * 
+     * @param strFileName
+     *            the file name
+     * @param strBeans
+     *            the bean elements
+     * @return the file path
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private String writeContext( String strFileName, String strBeans ) throws IOException
+    {
+        return Files.writeString( _pathTemp.resolve( strFileName ), XML_HEADER + strBeans + XML_FOOTER ).toString( );
+    }
+}
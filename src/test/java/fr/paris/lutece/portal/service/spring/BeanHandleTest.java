@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+
+import fr.paris.lutece.portal.service.plugin.PluginEvent;
+
+/**
+ * BeanHandle Test Class
+ */
+public class BeanHandleTest
+{
+    private static final String BEAN_SINGLETON = "handleSingleton";
+    private static final String BEAN_PROTOTYPE = "handlePrototype";
+
+    private GenericApplicationContext _context;
+
+    /**
+     * Sets up a main context holding a singleton and a prototype
+     */
+    @BeforeEach
+    public void setUp( )
+    {
+        _context = new GenericApplicationContext( );
+        _context.registerBeanDefinition( BEAN_SINGLETON, new RootBeanDefinition( ArrayList.class ) );
+
+        RootBeanDefinition prototype = new RootBeanDefinition( ArrayList.class );
+        prototype.setScope( RootBeanDefinition.SCOPE_PROTOTYPE );
+        _context.registerBeanDefinition( BEAN_PROTOTYPE, prototype );
+        _context.refresh( );
+        SpringContextService.setContexts( _context, null );
+    }
+
+    /**
+     * Releases the main context
+     */
+    @AfterEach
+    public void tearDown( )
+    {
+        SpringContextService.setContexts( null, null );
+        _context.close( );
+    }
+
+    /**
+     * The singleton is kept while the generation of the contexts is unchanged, even if the context now holds another instance
+     */
+    @Test
+    public void testSingletonCachedWithinGeneration( )
+    {
+        BeanHandle<Object> handle = SpringContextService.getBeanHandle( BEAN_SINGLETON, Object.class );
+        Object bean = handle.get( );
+
+        replaceSingleton( );
+
+        assertSame( bean, handle.get( ) );
+        assertNotSame( bean, _context.getBean( BEAN_SINGLETON ) );
+    }
+
+    /**
+     * The singleton is resolved again once the generation of the contexts has changed
+     */
+    @Test
+    public void testSingletonResolvedAgainOnNewGeneration( )
+    {
+        BeanHandle<Object> handle = SpringContextService.getBeanHandle( BEAN_SINGLETON, Object.class );
+        Object bean = handle.get( );
+        long lGeneration = SpringContextService.getGeneration( );
+
+        replaceSingleton( );
+        SpringContextService.getPluginEventListener( ).processPluginEvents( Arrays.asList( new PluginEvent(
+                SpringContextServiceTest.createPlugin( "handlegeneration" ), PluginEvent.PLUGIN_INSTALLED ) ) );
+
+        assertEquals( lGeneration + 1, SpringContextService.getGeneration( ) );
+        assertSame( _context.getBean( BEAN_SINGLETON ), handle.get( ) );
+        assertNotSame( bean, handle.get( ) );
+    }
+
+    /**
+     * A prototype is requested from its context on each call
+     */
+    @Test
+    public void testPrototypeRequestedOnEachCall( )
+    {
+        BeanHandle<Object> handle = SpringContextService.getBeanHandle( BEAN_PROTOTYPE, Object.class );
+
+        assertNotSame( handle.get( ), handle.get( ) );
+        assertEquals( BEAN_PROTOTYPE, handle.getBeanName( ) );
+    }
+
+    /**
+     * Replaces the definition of the singleton, which destroys the current instance
+     */
+    private void replaceSingleton( )
+    {
+        _context.removeBeanDefinition( BEAN_SINGLETON );
+        _context.registerBeanDefinition( BEAN_SINGLETON, new RootBeanDefinition( ArrayList.class ) );
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Serializable;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * BeanTypeClosure Test Class
+ */
+public class BeanTypeClosureTest
+{
+    /**
+     * The closure holds the superclasses, the interfaces of the superclasses and their super-interfaces
+     */
+    @Test
+    public void testGetClasses( )
+    {
+        Set<Class<?>> setClasses = BeanTypeClosure.getClasses( StringService.class );
+
+        assertEquals( new HashSet<>( Arrays.asList( StringService.class, AbstractService.class, Repository.class, Named.class, Serializable.class,
+                Runnable.class, Object.class ) ), setClasses );
+        assertEquals( StringService.class, setClasses.iterator( ).next( ) );
+    }
+
+    /**
+     * A generic superclass is included both as declared and as a raw class
+     */
+    @Test
+    public void testGetTypesGenericSuperclass( )
+    {
+        Set<Type> setTypes = BeanTypeClosure.getTypes( StringService.class );
+
+        assertTrue( setTypes.contains( AbstractService.class ) );
+        assertTrue( setTypes.contains( Repository.class ) );
+        assertTrue( setTypes.contains( Named.class ) );
+        assertTrue( setTypes.stream( ).anyMatch( type -> isParameterized( type, AbstractService.class, String.class ) ) );
+        assertTrue( setTypes.stream( )
+                .anyMatch( type -> type instanceof ParameterizedType && ( (ParameterizedType) type ).getRawType( ) == Repository.class ) );
+    }
+
+    /**
+     * The closure is computed once per class
+     */
+    @Test
+    public void testMemoized( )
+    {
+        assertSame( BeanTypeClosure.getTypes( StringService.class ), BeanTypeClosure.getTypes( StringService.class ) );
+        assertSame( BeanTypeClosure.getClasses( StringService.class ), BeanTypeClosure.getClasses( StringService.class ) );
+    }
+
+    /**
+     * Checks whether a type is a parameterized type
+     * 
+     * @param type
+     *            the type
+     * @param rawType
+     *            the expected raw type
+     * @param argument
+     *            the expected type argument
+     * @return true if the type matches
+     */
+    private static boolean isParameterized( Type type, Class<?> rawType, Type argument )
+    {
+        return type instanceof ParameterizedType && ( (ParameterizedType) type ).getRawType( ) == rawType
+                && Arrays.asList( ( (ParameterizedType) type ).getActualTypeArguments( ) ).equals( Arrays.asList( argument ) );
+    }
+
+    /**
+     * Super-interface, only reached through another interface
+     */
+    interface Named
+    {
+    }
+
+    /**
+     * Generic interface
+     * 
+     * @param <T>
+     *            the entity type
+     */
+    interface Repository<T> extends Named
+    {
+    }
+
+    /**
+     * Generic superclass
+     * 
+     * @param <T>
+     *            the entity type
+     */
+    abstract static class AbstractService<T> implements Repository<T>, Serializable
+    {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Bean class
+     */
+    static class StringService extends AbstractService<String> implements Runnable
+    {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run( )
+        {
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+
+/**
+ * BeanTypeIndex Test Class
+ */
+public class BeanTypeIndexTest
+{
+    private static final Class<?> [ ] TYPES = {
+            Object.class, Collection.class, List.class, AbstractList.class, RandomAccess.class, ArrayList.class, LinkedList.class, Map.class, String.class,
+            CharSequence.class, FactoryBean.class
+    };
+
+    /**
+     * The index finds the same beans as the bean factory, in definition order
+     */
+    @Test
+    public void testGetBeanNamesForType( )
+    {
+        DefaultListableBeanFactory beanFactory = createBeanFactory( );
+        BeanTypeIndex index = BeanTypeIndex.build( beanFactory, null );
+
+        for ( Class<?> type : TYPES )
+        {
+            assertEquals( Arrays.asList( beanFactory.getBeanNamesForType( type ) ), index.getBeanNamesForType( type ), type.getName( ) );
+        }
+
+        assertEquals( Arrays.asList( "array", "linked" ), index.getBeanNamesForType( List.class ) );
+        assertEquals( Arrays.asList( "&factory" ), index.getBeanNamesForType( FactoryBean.class ) );
+        assertEquals( Arrays.asList( "factory", "registered" ), index.getBeanNamesForType( String.class ) );
+    }
+
+    /**
+     * Beans of a parent factory are found unless a local bean has the same name
+     */
+    @Test
+    public void testGetBeansOfTypeIncludingAncestors( )
+    {
+        DefaultListableBeanFactory parentFactory = createBeanFactory( );
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory( parentFactory );
+        beanFactory.registerBeanDefinition( "array", new RootBeanDefinition( LinkedList.class ) );
+        beanFactory.registerBeanDefinition( "child", new RootBeanDefinition( ArrayList.class ) );
+        beanFactory.preInstantiateSingletons( );
+
+        BeanTypeIndex index = BeanTypeIndex.build( beanFactory, BeanTypeIndex.build( parentFactory, null ) );
+
+        for ( Class<?> type : TYPES )
+        {
+            assertEquals( BeanFactoryUtils.beansOfTypeIncludingAncestors( beanFactory, type ), index.getBeansOfType( type ), type.getName( ) );
+        }
+
+        assertEquals( Arrays.asList( "child" ), index.getBeanNamesForType( ArrayList.class ) );
+        assertEquals( Arrays.asList( "array", "child", "linked" ), index.getBeanNamesForTypeIncludingAncestors( List.class ) );
+        assertSame( beanFactory.getBean( "array" ), index.getBeansOfType( List.class ).get( "array" ) );
+    }
+
+    /**
+     * Creates a refreshed bean factory
+     * 
+     * @return the bean factory
+     */
+    private static DefaultListableBeanFactory createBeanFactory( )
+    {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory( );
+        RootBeanDefinition abstractDefinition = new RootBeanDefinition( ArrayList.class );
+        abstractDefinition.setAbstract( true );
+        beanFactory.registerBeanDefinition( "abstract", abstractDefinition );
+        beanFactory.registerBeanDefinition( "array", new RootBeanDefinition( ArrayList.class ) );
+        beanFactory.registerBeanDefinition( "map", new RootBeanDefinition( HashMap.class ) );
+        beanFactory.registerBeanDefinition( "factory", new RootBeanDefinition( StringFactoryBean.class ) );
+        beanFactory.registerBeanDefinition( "linked", new RootBeanDefinition( LinkedList.class ) );
+        beanFactory.registerSingleton( "registered", "registered" );
+        beanFactory.preInstantiateSingletons( );
+
+        return beanFactory;
+    }
+
+    /**
+     * Factory bean creating a string
+     */
+    public static class StringFactoryBean implements FactoryBean<String>
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getObject( )
+        {
+            return "factory";
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Class<?> getObjectType( )
+        {
+            return String.class;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * BeansOfTypeCache Test Class
+ */
+public class BeansOfTypeCacheTest
+{
+    /**
+     * A cached list is returned until the cache is invalidated, then rebuilt once
+     */
+    @Test
+    public void testInvalidateRebuilds( )
+    {
+        BeansOfTypeCache cache = new BeansOfTypeCache( );
+        AtomicInteger nBuilds = new AtomicInteger( );
+
+        List<String> listFirst = cache.get( String.class, type -> Arrays.asList( "build" + nBuilds.incrementAndGet( ) ) );
+        List<String> listHit = cache.get( String.class, type -> Arrays.asList( "build" + nBuilds.incrementAndGet( ) ) );
+
+        assertSame( listFirst, listHit );
+        assertEquals( 1, nBuilds.get( ) );
+        assertEquals( 0, cache.getGeneration( ) );
+
+        cache.invalidate( );
+        List<String> listRebuilt = cache.get( String.class, type -> Arrays.asList( "build" + nBuilds.incrementAndGet( ) ) );
+
+        assertEquals( 1, cache.getGeneration( ) );
+        assertEquals( Arrays.asList( "build2" ), listRebuilt );
+        assertSame( listRebuilt, cache.get( String.class, type -> Arrays.asList( "build" + nBuilds.incrementAndGet( ) ) ) );
+        assertEquals( 2, nBuilds.get( ) );
+        assertEquals( 1, cache.getMisses( ) );
+        assertEquals( 1, cache.getRebuilds( ) );
+        assertEquals( 2, cache.getHits( ) );
+    }
+
+    /**
+     * A value built while the cache is invalidated is returned but not kept
+     */
+    @Test
+    public void testInvalidateDuringBuild( )
+    {
+        BeansOfTypeCache cache = new BeansOfTypeCache( );
+        AtomicInteger nBuilds = new AtomicInteger( );
+
+        Integer nValue = cache.getValue( Integer.class, type -> {
+            cache.invalidate( );
+
+            return nBuilds.incrementAndGet( );
+        } );
+
+        assertEquals( 1, (int) nValue );
+        assertEquals( 2, (int) cache.getValue( Integer.class, type -> nBuilds.incrementAndGet( ) ) );
+        assertEquals( 2, (int) cache.getValue( Integer.class, type -> nBuilds.incrementAndGet( ) ) );
+        assertEquals( 1, cache.getHits( ) );
+    }
+
+    /**
+     * Cached lists are immutable copies of the built lists
+     */
+    @Test
+    public void testListsAreImmutableCopies( )
+    {
+        BeansOfTypeCache cache = new BeansOfTypeCache( );
+        List<String> listBuilt = new ArrayList<>( Arrays.asList( "bean" ) );
+
+        List<String> listCached = cache.get( String.class, type -> listBuilt );
+        listBuilt.add( "other" );
+
+        assertEquals( Arrays.asList( "bean" ), listCached );
+        assertThrows( UnsupportedOperationException.class, ( ) -> listCached.add( "other" ) );
+    }
+}
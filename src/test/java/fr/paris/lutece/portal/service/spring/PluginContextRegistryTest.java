@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * PluginContextRegistry Test Class
+ */
+public class PluginContextRegistryTest
+{
+    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<beans xmlns=\"http://www.springframework.org/schema/beans\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n"
+            + "       xsi:schemaLocation=\"http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans.xsd\">\n";
+    private static final String XML_FOOTER = "</beans>\n";
+    private static final String CLASS_BEAN = "java.util.ArrayList";
+
+    @TempDir
+    Path _pathTemp;
+
+    /**
+     * A file whose beans are referenced by another file is shared, the referencing file is not
+     * 
+     * @throws IOException
+     *             if a context file cannot be written
+     */
+    @Test
+    public void testGetSharedContextFilesReferencedByModule( ) throws IOException
+    {
+        Map<String, StagingBeanDefinitionRegistry> mapStaged = new LinkedHashMap<>( );
+        stage( mapStaged, "plugin_context.xml", "<bean id=\"plugin.dao\" class=\"" + CLASS_BEAN + "\"/>\n" );
+        stage( mapStaged, "module_context.xml", "<bean id=\"module.service\" class=\"" + CLASS_BEAN + "\">\n"
+                + "<constructor-arg><list><ref bean=\"plugin.dao\"/></list></constructor-arg>\n</bean>\n" );
+        stage( mapStaged, "other_context.xml", "<bean id=\"other.service\" class=\"" + CLASS_BEAN + "\"/>\n" );
+
+        Set<String> setShared = PluginContextRegistry.getSharedContextFiles( new DefaultListableBeanFactory( ), mapStaged );
+
+        assertEquals( Set.of( path( "plugin_context.xml" ) ), setShared );
+    }
+
+    /**
+     * Files referenced by the core context, through aliases or parent definitions are shared, local references are not
+     * 
+     * @throws IOException
+     *             if a context file cannot be written
+     */
+    @Test
+    public void testGetSharedContextFilesOtherReferences( ) throws IOException
+    {
+        Map<String, StagingBeanDefinitionRegistry> mapStaged = new LinkedHashMap<>( );
+        stage( mapStaged, "core_referenced_context.xml", "<bean id=\"referenced\" class=\"" + CLASS_BEAN + "\"/>\n" );
+        stage( mapStaged, "parent_context.xml", "<bean id=\"parent\" abstract=\"true\" class=\"" + CLASS_BEAN + "\"/>\n" );
+        stage( mapStaged, "child_context.xml", "<bean id=\"child\" parent=\"parent\"/>\n" );
+        stage( mapStaged, "alias_context.xml", "<bean id=\"aliased\" class=\"" + CLASS_BEAN + "\"/>\n<alias name=\"aliased\" alias=\"shortName\"/>\n" );
+        stage( mapStaged, "local_context.xml", "<bean id=\"local\" class=\"" + CLASS_BEAN + "\"/>\n"
+                + "<bean id=\"user\" class=\"" + CLASS_BEAN + "\" depends-on=\"local,shortName\"/>\n" );
+
+        DefaultListableBeanFactory core = new DefaultListableBeanFactory( );
+        Path pathCore = writeContext( "core_context.xml", "<bean id=\"core\" class=\"" + CLASS_BEAN + "\" depends-on=\"referenced\"/>\n" );
+        new XmlBeanDefinitionReader( core ).loadBeanDefinitions( new FileSystemResource( pathCore ) );
+
+        Set<String> setShared = PluginContextRegistry.getSharedContextFiles( core, mapStaged );
+
+        assertEquals( 3, setShared.size( ) );
+        assertTrue( setShared.contains( path( "core_referenced_context.xml" ) ) );
+        assertTrue( setShared.contains( path( "parent_context.xml" ) ) );
+        assertTrue( setShared.contains( path( "alias_context.xml" ) ) );
+    }
+
+    /**
+     * Writes and stages a context file
+     * 
+     * @param mapStaged
+     *            the staged definitions by context file path
+     * @param strFileName
+     *            the file name
+     * @param strBeans
+     *            the bean elements
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private void stage( Map<String, StagingBeanDefinitionRegistry> mapStaged, String strFileName, String strBeans ) throws IOException
+    {
+        Path pathContext = writeContext( strFileName, strBeans );
+        StagingBeanDefinitionRegistry staging = new StagingBeanDefinitionRegistry( );
+        new XmlBeanDefinitionReader( staging ).loadBeanDefinitions( new FileSystemResource( pathContext ) );
+        mapStaged.put( pathContext.toString( ), staging );
+    }
+
+    /**
+     * Writes a context file
+     * 
+     * @param strFileName
+     *            the file name
+     * @param strBeans
+     *            the bean elements
+     * @return the file path
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private Path writeContext( String strFileName, String strBeans ) throws IOException
+    {
+        return Files.writeString( _pathTemp.resolve( strFileName ), XML_HEADER + strBeans + XML_FOOTER );
+    }
+
+    /**
+     * Gets the path of a context file
+     * 
+     * @param strFileName
+     *            the file name
+     * @return the file path
+     */
+    private String path( String strFileName )
+    {
+        return _pathTemp.resolve( strFileName ).toString( );
+    }
+}
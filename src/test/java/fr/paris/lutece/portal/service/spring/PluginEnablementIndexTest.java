@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * PluginEnablementIndex Test Class. The plugin states are set before the lookups, so that the plugin service is not called.
+ */
+public class PluginEnablementIndexTest
+{
+    /**
+     * Beans without a plugin prefix are always enabled
+     */
+    @Test
+    public void testBeansWithoutPlugin( )
+    {
+        PluginEnablementIndex index = new PluginEnablementIndex( );
+
+        assertTrue( index.isBeanEnabled( "bean" ) );
+        assertTrue( index.isBeanEnabled( ".bean" ) );
+        assertNull( index.getPluginName( "bean" ) );
+        assertNull( index.getPluginName( ".bean" ) );
+    }
+
+    /**
+     * The plugin of a bean is the prefix of its name
+     */
+    @Test
+    public void testGetPluginName( )
+    {
+        PluginEnablementIndex index = new PluginEnablementIndex( );
+        index.addBeanNames( new String [ ] {
+                "first.bean", "second.dao.bean"
+        } );
+
+        assertEquals( "first", index.getPluginName( "first.bean" ) );
+        assertEquals( "second", index.getPluginName( "second.dao.bean" ) );
+        assertEquals( "first", index.getPluginName( "first.other" ) );
+    }
+
+    /**
+     * Plugin events update the state of the beans already mapped to their plugin, each plugin having its own state
+     */
+    @Test
+    public void testSetPluginEnabled( )
+    {
+        PluginEnablementIndex index = new PluginEnablementIndex( );
+        index.setPluginEnabled( "first", true );
+        index.setPluginEnabled( "second", false );
+        index.addBeanNames( new String [ ] {
+                "first.bean", "second.bean"
+        } );
+
+        assertTrue( index.isBeanEnabled( "first.bean" ) );
+        assertFalse( index.isBeanEnabled( "second.bean" ) );
+        assertTrue( index.isPluginEnabled( "first" ) );
+        assertFalse( index.isPluginEnabled( "second" ) );
+
+        index.setPluginEnabled( "first", false );
+        index.setPluginEnabled( "second", true );
+
+        assertFalse( index.isBeanEnabled( "first.bean" ) );
+        assertTrue( index.isBeanEnabled( "second.bean" ) );
+
+        index.setPluginEnabled( "first", true );
+
+        assertTrue( index.isBeanEnabled( "first.bean" ) );
+        assertTrue( index.isBeanEnabled( "first.other" ) );
+    }
+
+    /**
+     * Clearing the bean names forgets them but keeps the plugin states : the names are mapped again on their next lookup
+     */
+    @Test
+    public void testClearBeanNames( )
+    {
+        PluginEnablementIndex index = new PluginEnablementIndex( );
+        index.setPluginEnabled( "first", true );
+        index.setPluginEnabled( "second", false );
+        index.addBeanNames( new String [ ] {
+                "first.bean", "second.bean", "bean"
+        } );
+
+        assertEquals( 3, index.getBeanNameCount( ) );
+
+        index.clearBeanNames( );
+
+        assertEquals( 0, index.getBeanNameCount( ) );
+        assertTrue( index.isBeanEnabled( "first.bean" ) );
+        assertFalse( index.isBeanEnabled( "second.bean" ) );
+        assertEquals( 2, index.getBeanNameCount( ) );
+    }
+
+    /**
+     * Plugins numerous enough to span several words of the bitsets keep their own state
+     */
+    @Test
+    public void testManyPlugins( )
+    {
+        PluginEnablementIndex index = new PluginEnablementIndex( );
+
+        for ( int i = 0; i < 200; i++ )
+        {
+            index.setPluginEnabled( "plugin" + i, i % 3 == 0 );
+        }
+
+        for ( int i = 0; i < 200; i++ )
+        {
+            assertEquals( i % 3 == 0, index.isBeanEnabled( "plugin" + i + ".bean" ), "plugin" + i );
+        }
+    }
+}
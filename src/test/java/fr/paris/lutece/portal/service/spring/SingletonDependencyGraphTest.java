@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.ManagedList;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+
+/**
+ * SingletonDependencyGraph and DependencyOrderedBeanFactory Test Class
+ */
+public class SingletonDependencyGraphTest
+{
+    private static final String BEAN_TOP = "top";
+    private static final String BEAN_LEFT = "left";
+    private static final String BEAN_RIGHT = "right";
+    private static final String BEAN_BOTTOM = "bottom";
+    private static final String BEAN_LATE = "late";
+    private static final String BEAN_LAZY = "lazy";
+    private static final String ALIAS_BOTTOM = "base";
+
+    /**
+     * A diamond and a depends-on edge are sorted by levels, lazy singletons are left out
+     */
+    @Test
+    public void testLevels( )
+    {
+        SingletonDependencyGraph graph = SingletonDependencyGraph.build( createDiamond( new DefaultListableBeanFactory( ) ) );
+
+        assertEquals( 5, graph.size( ) );
+        assertEquals( Arrays.asList( Arrays.asList( BEAN_BOTTOM ), Arrays.asList( BEAN_LEFT, BEAN_RIGHT ), Arrays.asList( BEAN_TOP ),
+                Arrays.asList( BEAN_LATE ) ), graph.getLevels( ) );
+    }
+
+    /**
+     * The critical path follows the slowest branch of the diamond
+     */
+    @Test
+    public void testCriticalPath( )
+    {
+        SingletonDependencyGraph graph = SingletonDependencyGraph.build( createDiamond( new DefaultListableBeanFactory( ) ) );
+
+        assertEquals( Arrays.asList( BEAN_BOTTOM, BEAN_RIGHT, BEAN_TOP, BEAN_LATE ),
+                graph.getCriticalPath( Map.of( BEAN_BOTTOM, 10L, BEAN_LEFT, 5L, BEAN_RIGHT, 20L, BEAN_TOP, 1L, BEAN_LATE, 2L ) ) );
+        assertEquals( Arrays.asList( BEAN_BOTTOM, BEAN_LEFT, BEAN_TOP, BEAN_LATE ),
+                graph.getCriticalPath( Map.of( BEAN_BOTTOM, 10L, BEAN_LEFT, 30L, BEAN_RIGHT, 20L, BEAN_TOP, 1L, BEAN_LATE, 2L ) ) );
+    }
+
+    /**
+     * A graph with circular references has no levels and no critical path
+     */
+    @Test
+    public void testCycle( )
+    {
+        SingletonDependencyGraph graph = SingletonDependencyGraph.build( createCycle( new DefaultListableBeanFactory( ) ) );
+
+        assertNull( graph.getLevels( ) );
+        assertTrue( graph.getCriticalPath( Collections.emptyMap( ) ).isEmpty( ) );
+    }
+
+    /**
+     * The factory creates the singletons level by level, even when the dependencies are only referenced by properties
+     */
+    @Test
+    public void testOrderedCreation( )
+    {
+        List<String> listCreated = Node.startRecording( );
+        createDiamond( new DependencyOrderedBeanFactory( 2 ) ).preInstantiateSingletons( );
+
+        assertEquals( Arrays.asList( BEAN_BOTTOM, BEAN_LEFT, BEAN_RIGHT, BEAN_TOP, BEAN_LATE ), listCreated );
+    }
+
+    /**
+     * The factory falls back to the standard creation when the graph contains circular references
+     */
+    @Test
+    public void testCycleFallsBackToStandardCreation( )
+    {
+        List<String> listCreated = Node.startRecording( );
+        DefaultListableBeanFactory beanFactory = createCycle( new DependencyOrderedBeanFactory( 2 ) );
+        beanFactory.preInstantiateSingletons( );
+
+        assertEquals( 2, listCreated.size( ) );
+        assertTrue( beanFactory.containsSingleton( "first" ) );
+        assertTrue( beanFactory.containsSingleton( "second" ) );
+    }
+
+    /**
+     * Registers a diamond : top references left and right, which both reference bottom, and late depends on top. The beans are registered dependents
+     * first, and the references are properties so that the standard creation would create them in that order.
+     * 
+     * @param beanFactory
+     *            the bean factory
+     * @return the bean factory
+     */
+    private static DefaultListableBeanFactory createDiamond( DefaultListableBeanFactory beanFactory )
+    {
+        RootBeanDefinition late = createNode( BEAN_LATE );
+        late.setDependsOn( BEAN_TOP );
+        beanFactory.registerBeanDefinition( BEAN_LATE, late );
+        beanFactory.registerBeanDefinition( BEAN_TOP, createNode( BEAN_TOP, BEAN_LEFT, BEAN_RIGHT ) );
+        beanFactory.registerBeanDefinition( BEAN_LEFT, createNode( BEAN_LEFT, ALIAS_BOTTOM ) );
+        beanFactory.registerBeanDefinition( BEAN_RIGHT, createNode( BEAN_RIGHT, BEAN_BOTTOM ) );
+        beanFactory.registerBeanDefinition( BEAN_BOTTOM, createNode( BEAN_BOTTOM ) );
+        beanFactory.registerAlias( BEAN_BOTTOM, ALIAS_BOTTOM );
+
+        RootBeanDefinition lazy = createNode( BEAN_LAZY, BEAN_TOP );
+        lazy.setLazyInit( true );
+        beanFactory.registerBeanDefinition( BEAN_LAZY, lazy );
+
+        return beanFactory;
+    }
+
+    /**
+     * Registers two singletons referencing each other
+     * 
+     * @param beanFactory
+     *            the bean factory
+     * @return the bean factory
+     */
+    private static DefaultListableBeanFactory createCycle( DefaultListableBeanFactory beanFactory )
+    {
+        beanFactory.registerBeanDefinition( "first", createNode( "first", "second" ) );
+        beanFactory.registerBeanDefinition( "second", createNode( "second", "first" ) );
+
+        return beanFactory;
+    }
+
+    /**
+     * Creates the definition of a node
+     * 
+     * @param strName
+     *            the node name
+     * @param strDependencies
+     *            the names of the referenced beans
+     * @return the definition
+     */
+    private static RootBeanDefinition createNode( String strName, String... strDependencies )
+    {
+        RootBeanDefinition definition = new RootBeanDefinition( Node.class );
+        definition.getConstructorArgumentValues( ).addIndexedArgumentValue( 0, strName );
+
+        if ( strDependencies.length > 0 )
+        {
+            ManagedList<RuntimeBeanReference> listReferences = new ManagedList<>( );
+
+            for ( String strDependency : strDependencies )
+            {
+                listReferences.add( new RuntimeBeanReference( strDependency ) );
+            }
+
+            definition.getPropertyValues( ).add( "dependencies", listReferences );
+        }
+
+        return definition;
+    }
+
+    /**
+     * Bean recording the order of creation
+     */
+    public static class Node
+    {
+        private static List<String> _listCreated = new ArrayList<>( );
+        private List<Node> _listDependencies;
+
+        /**
+         * Constructor
+         * 
+         * @param strName
+         *            the node name
+         */
+        public Node( String strName )
+        {
+            _listCreated.add( strName );
+        }
+
+        /**
+         * Starts recording the creations
+         * 
+         * @return the names of the created nodes, in creation order
+         */
+        static synchronized List<String> startRecording( )
+        {
+            _listCreated = Collections.synchronizedList( new ArrayList<>( ) );
+
+            return _listCreated;
+        }
+
+        /**
+         * Sets the referenced nodes
+         * 
+         * @param listDependencies
+         *            the nodes
+         */
+        public void setDependencies( List<Node> listDependencies )
+        {
+            _listDependencies = listDependencies;
+        }
+
+        /**
+         * Gets the referenced nodes
+         * 
+         * @return the nodes
+         */
+        public List<Node> getDependencies( )
+        {
+            return _listDependencies;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.plugin.PluginDefaultImplementation;
+import fr.paris.lutece.portal.service.plugin.PluginEvent;
+
+/**
+ * SpringContextService Test Class
+ */
+public class SpringContextServiceTest
+{
+    /**
+     * A burst of plugin events invalidates the lookups once, and the events of each plugin are applied in order
+     */
+    @Test
+    public void testPluginEventsBurst( )
+    {
+        Plugin plugin = createPlugin( "burst" );
+        Plugin pluginOther = createPlugin( "burstother" );
+        long lGeneration = SpringContextService.getGeneration( );
+
+        SpringContextService.getPluginEventListener( ).processPluginEvents( Arrays.asList( new PluginEvent( plugin, PluginEvent.PLUGIN_INSTALLED ),
+                new PluginEvent( pluginOther, PluginEvent.PLUGIN_INSTALLED ), new PluginEvent( plugin, PluginEvent.PLUGIN_UNINSTALLED ),
+                new PluginEvent( pluginOther, PluginEvent.PLUGIN_UNINSTALLED ), new PluginEvent( pluginOther, PluginEvent.PLUGIN_INSTALLED ) ) );
+
+        assertEquals( lGeneration + 1, SpringContextService.getGeneration( ) );
+        assertFalse( SpringContextService.isBeanEnabled( "burst.bean" ) );
+        assertTrue( SpringContextService.isBeanEnabled( "burstother.bean" ) );
+    }
+
+    /**
+     * Events not changing the installation of a plugin leave the lookups untouched
+     */
+    @Test
+    public void testPoolChangedKeepsLookups( )
+    {
+        long lGeneration = SpringContextService.getGeneration( );
+
+        SpringContextService.getPluginEventListener( ).processPluginEvents( Arrays.asList( new PluginEvent( createPlugin( "pool" ),
+                PluginEvent.PLUGIN_POOL_CHANGED ) ) );
+
+        assertEquals( lGeneration, SpringContextService.getGeneration( ) );
+    }
+
+    /**
+     * A missing bean is cached until the lookups are invalidated, which happens when the plugin context defining the bean is activated by the installation
+     * of its plugin
+     */
+    @Test
+    public void testMissingBeanCachedUntilPluginInstalled( )
+    {
+        String strPluginName = "missing";
+        String strBeanName = strPluginName + ".service";
+        GenericApplicationContext context = new GenericApplicationContext( );
+        context.refresh( );
+
+        PluginContextRegistry pluginContexts = new PluginContextRegistry( context, 0, false );
+        StagingBeanDefinitionRegistry staging = new StagingBeanDefinitionRegistry( );
+        staging.registerBeanDefinition( strBeanName, new RootBeanDefinition( ArrayList.class ) );
+        pluginContexts.register( strPluginName, strPluginName + "_context.xml", staging );
+
+        try
+        {
+            SpringContextService.setContexts( context, pluginContexts );
+            SpringContextService.getPluginEventListener( ).processPluginEvents( Arrays.asList( new PluginEvent( createPlugin( strPluginName ),
+                    PluginEvent.PLUGIN_UNINSTALLED ) ) );
+
+            assertFalse( SpringContextService.findBean( strBeanName ).isPresent( ) );
+
+            // The plugin context is started behind the service's back : the miss is still cached
+            pluginContexts.activate( strPluginName );
+            assertFalse( SpringContextService.findBean( strBeanName ).isPresent( ) );
+
+            SpringContextService.getPluginEventListener( ).processPluginEvents( Arrays.asList( new PluginEvent( createPlugin( strPluginName ),
+                    PluginEvent.PLUGIN_INSTALLED ) ) );
+            assertTrue( SpringContextService.findBean( strBeanName ).isPresent( ) );
+            assertTrue( SpringContextService.findBean( strBeanName, ArrayList.class ).isPresent( ) );
+        }
+        finally
+        {
+            SpringContextService.setContexts( null, null );
+            pluginContexts.close( );
+            context.close( );
+        }
+    }
+
+    /**
+     * Creates a plugin
+     * 
+     * @param strName
+     *            the plugin name
+     * @return the plugin
+     */
+    static Plugin createPlugin( String strName )
+    {
+        Plugin plugin = new PluginDefaultImplementation( );
+        plugin.setName( strName );
+
+        return plugin;
+    }
+}
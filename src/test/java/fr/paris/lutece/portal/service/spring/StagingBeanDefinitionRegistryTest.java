@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.portal.service.spring;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * StagingBeanDefinitionRegistry Test Class
+ */
+public class StagingBeanDefinitionRegistryTest
+{
+    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<beans xmlns=\"http://www.springframework.org/schema/beans\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n"
+            + "       xsi:schemaLocation=\"http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans.xsd\">\n";
+    private static final String XML_FOOTER = "</beans>\n";
+    private static final String CLASS_ANONYMOUS = "java.util.ArrayList";
+    private static final String CLASS_OTHER = "java.util.HashMap";
+
+    @TempDir
+    Path _pathTemp;
+
+    /**
+     * Anonymous beans of several files are named as a direct parse of the files in sequence names them
+     * 
+     * @throws IOException
+     *             if a context file cannot be written
+     */
+    @Test
+    public void testCopyToRenamesGeneratedNames( ) throws IOException
+    {
+        Path pathFirst = writeContext( "first_context.xml", "<bean class=\"" + CLASS_ANONYMOUS + "\"/>\n<bean id=\"first\" class=\"" + CLASS_OTHER + "\"/>\n" );
+        Path pathSecond = writeContext( "second_context.xml",
+                "<bean class=\"" + CLASS_ANONYMOUS + "\"/>\n<bean class=\"" + CLASS_ANONYMOUS + "\"/>\n<bean id=\"second\" class=\"" + CLASS_OTHER + "\"/>\n" );
+
+        DefaultListableBeanFactory serial = new DefaultListableBeanFactory( );
+        XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader( serial );
+        reader.loadBeanDefinitions( new FileSystemResource( pathFirst ) );
+        reader.loadBeanDefinitions( new FileSystemResource( pathSecond ) );
+
+        DefaultListableBeanFactory staged = new DefaultListableBeanFactory( );
+        stage( pathFirst ).copyTo( staged );
+        stage( pathSecond ).copyTo( staged );
+
+        assertEquals( 5, staged.getBeanDefinitionCount( ) );
+        assertArrayEquals( sorted( serial.getBeanDefinitionNames( ) ), sorted( staged.getBeanDefinitionNames( ) ) );
+        assertArrayEquals( sorted( serial.getAliases( CLASS_ANONYMOUS + "#0" ) ), sorted( staged.getAliases( CLASS_ANONYMOUS + "#0" ) ) );
+        assertArrayEquals( new String [ ] {
+                CLASS_ANONYMOUS
+        }, staged.getAliases( CLASS_ANONYMOUS + "#0" ) );
+        assertEquals( 0, staged.getAliases( CLASS_ANONYMOUS + "#1" ).length );
+        assertEquals( 0, staged.getAliases( CLASS_ANONYMOUS + "#2" ).length );
+    }
+
+    /**
+     * Names given in the files are kept, even if they look like generated names of another class
+     * 
+     * @throws IOException
+     *             if a context file cannot be written
+     */
+    @Test
+    public void testCopyToKeepsExplicitNames( ) throws IOException
+    {
+        Path pathFirst = writeContext( "first_context.xml", "<bean class=\"" + CLASS_ANONYMOUS + "\"/>\n" );
+        Path pathSecond = writeContext( "second_context.xml", "<bean id=\"" + CLASS_ANONYMOUS + "#0x\" class=\"" + CLASS_ANONYMOUS + "\"/>\n"
+                + "<bean id=\"" + CLASS_OTHER + "#0\" class=\"" + CLASS_ANONYMOUS + "\"/>\n" );
+
+        DefaultListableBeanFactory staged = new DefaultListableBeanFactory( );
+        stage( pathFirst ).copyTo( staged );
+        stage( pathSecond ).copyTo( staged );
+
+        assertArrayEquals( sorted( new String [ ] {
+                CLASS_ANONYMOUS + "#0", CLASS_ANONYMOUS + "#0x", CLASS_OTHER + "#0"
+        } ), sorted( staged.getBeanDefinitionNames( ) ) );
+    }
+
+    /**
+     * Parses a context file in its own staging registry
+     * 
+     * @param pathContext
+     *            the context file
+     * @return the staging registry
+     */
+    private static StagingBeanDefinitionRegistry stage( Path pathContext )
+    {
+        StagingBeanDefinitionRegistry staging = new StagingBeanDefinitionRegistry( );
+        new XmlBeanDefinitionReader( staging ).loadBeanDefinitions( new FileSystemResource( pathContext ) );
+
+        return staging;
+    }
+
+    /**
+     * Writes a context file
+     * 
+     * @param strFileName
+     *            the file name
+     * @param strBeans
+     *            the bean elements
+     * @return the file path
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private Path writeContext( String strFileName, String strBeans ) throws IOException
+    {
+        return Files.writeString( _pathTemp.resolve( strFileName ), XML_HEADER + strBeans + XML_FOOTER );
+    }
+
+    /**
+     * Sorts names
+     * 
+     * @param names
+     *            the names
+     * @return the sorted names
+     */
+    private static String [ ] sorted( String [ ] names )
+    {
+        String [ ] sortedNames = names.clone( );
+        Arrays.sort( sortedNames );
+
+        return sortedNames;
+    }
+}